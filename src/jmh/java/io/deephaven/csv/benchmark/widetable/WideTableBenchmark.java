@@ -0,0 +1,74 @@
+package io.deephaven.csv.benchmark.widetable;
+
+import io.deephaven.csv.benchmark.util.BenchmarkResult;
+import io.deephaven.csv.benchmark.util.TableMaker;
+import io.deephaven.csv.benchmark.util.Util;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads tables of narrow int columns, from a handful up to a thousand of them. With many columns each column's parser
+ * does little work per block, so this mostly measures the cost of handing blocks from the tokenizer to the parsers.
+ * Run it against two builds to compare handoff implementations.
+ */
+@Fork(value = 2, jvmArgs = {"-Xms32G", "-Xmx32G"})
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class WideTableBenchmark {
+    /** The number of cells in each table. The number of rows depends on the number of columns. */
+    public static final int CELLS = 4_000_000;
+
+    @State(Scope.Benchmark)
+    public static class InputProvider {
+        @Param({"8", "128", "1024"})
+        public int cols;
+
+        public int rows;
+        public TableMaker<int[]> tableMaker;
+
+        @Setup
+        public void setup() {
+            rows = CELLS / cols;
+            final Random rng = new Random(31337);
+            // Small values keep the cells narrow, which is the hard case for the handoff.
+            tableMaker = new TableMaker<>(rng, rows, cols, int[]::new, int[][]::new,
+                    (r, col, begin, end) -> {
+                        while (begin != end) {
+                            col[begin++] = r.nextInt(100);
+                        }
+                    },
+                    (sb, col, rowIndex) -> sb.append(col[rowIndex]));
+        }
+    }
+
+    /**
+     * For the purpose of benchmarking, we reuse the same storage because we're trying to focus on the cost of parsing,
+     * not allocating storage.
+     */
+    @State(Scope.Thread)
+    public static class ReusableStorage {
+        public int[][] output;
+
+        @Setup
+        public void setup(final InputProvider input) {
+            output = Util.makeArray(input.rows, input.cols, int[]::new, int[][]::new);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public BenchmarkResult<int[]> deephavenSingle(final InputProvider input, final ReusableStorage storage)
+            throws Exception {
+        return WideTableDeephaven.read(input.tableMaker.makeStream(), storage.output, false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public BenchmarkResult<int[]> deephaven(final InputProvider input, final ReusableStorage storage) throws Exception {
+        return WideTableDeephaven.read(input.tableMaker.makeStream(), storage.output, true);
+    }
+}
@@ -0,0 +1,28 @@
+package io.deephaven.csv.benchmark.widetable;
+
+import io.deephaven.csv.CsvSpecs;
+import io.deephaven.csv.benchmark.util.BenchmarkResult;
+import io.deephaven.csv.benchmark.util.SinkFactories;
+import io.deephaven.csv.parsers.Parsers;
+import io.deephaven.csv.reading.CsvReader;
+import io.deephaven.csv.sinks.SinkFactory;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+public final class WideTableDeephaven {
+    public static BenchmarkResult<int[]> read(final InputStream in, final int[][] storage, boolean concurrent)
+            throws Exception {
+        final SinkFactory sinkFactory = SinkFactories.makeRecyclingSinkFactory(null, storage, null, null, null, null);
+        final CsvSpecs specs = CsvSpecs.builder()
+                .parsers(Collections.singleton(Parsers.INT))
+                .hasHeaderRow(true)
+                .concurrent(concurrent)
+                .build();
+        final CsvReader.Result result = CsvReader.read(specs, in, sinkFactory);
+        final int[][] data = Arrays.stream(result.columns())
+                .map(col -> ((int[]) col.data())).toArray(int[][]::new);
+        return BenchmarkResult.of(result.numRows(), data);
+    }
+}
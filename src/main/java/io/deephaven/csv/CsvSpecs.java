@@ -1,8 +1,13 @@
 package io.deephaven.csv;
 
 import io.deephaven.csv.annotations.BuildableStyle;
+import io.deephaven.csv.densestorage.DenseStorageAllocator;
+import io.deephaven.csv.densestorage.DenseStorageConstants;
+import io.deephaven.csv.densestorage.DenseStorageGeometry;
+import io.deephaven.csv.parsers.ChunkPool;
 import io.deephaven.csv.parsers.Parser;
 import io.deephaven.csv.parsers.Parsers;
+import io.deephaven.csv.reading.ProgressListener;
 import io.deephaven.csv.tokenization.JdkDoubleParser;
 import io.deephaven.csv.tokenization.Tokenizer;
 import io.deephaven.csv.tokenization.Tokenizer.CustomDoubleParser;
@@ -12,7 +17,10 @@ import org.immutables.value.Value.Default;
 import org.immutables.value.Value.Immutable;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -39,6 +47,23 @@ public abstract class CsvSpecs {
          */
         Builder putHeaderForIndex(int index, String header);
 
+        /**
+         * Restricts the read to the columns with these names (as they appear in the input, before any
+         * {@link #headerLegalizer}). Columns that are not selected, either here or by {@link #includedColumnIndices},
+         * are tokenized only far enough to find where they end: their text is not stored, no type inference is done
+         * for them, no sinks are created for them, and they do not appear in the result. If both this and
+         * {@link #includedColumnIndices} are empty (the default), all columns are read. It is an error to name a
+         * column that does not exist.
+         */
+        Builder includedColumnNames(Iterable<String> elements);
+
+        /**
+         * Restricts the read to the columns with these 0-based indices. See {@link #includedColumnNames} for details.
+         * The sinks of the selected columns are created with their original column index. It is an error to specify an
+         * index that is out of range.
+         */
+        Builder includedColumnIndices(Iterable<Integer> elements);
+
         /**
          * The parsers that the user wants to participate in type inference. Note that the order that the parsers in
          * this list matters only for custom parsers. In particular:
@@ -233,6 +258,222 @@ public abstract class CsvSpecs {
          */
         Builder concurrent(boolean async);
 
+        /**
+         * The number of threads to use to tokenize the input. Defaults to 1. When this is greater than 1, the input is
+         * split into byte ranges of {@link #tokenizerChunkSize} bytes which are broken into cells concurrently and then
+         * stitched back together in order. A range boundary may fall inside a quoted cell; such ranges are detected and
+         * tokenized again from the correct starting point, so the result is always identical to that of a serial read.
+         * In fixed-width mode there is no quoting, so the ranges are always split correctly, and the lines are also
+         * sliced into cells concurrently. The ranges are tokenized on the {@link #executor}, if one is set, and the
+         * reader tokenizes any range that it needs before a thread has got to it. This option only takes effect when
+         * reading an uncompressed file via a {@code Path} overload of {@code CsvReader.read}, with {@link #concurrent}
+         * set.
+         */
+        Builder tokenizerThreads(int tokenizerThreads);
+
+        /**
+         * The size in bytes of the ranges that the input is split into when {@link #tokenizerThreads} is greater than
+         * 1. Defaults to 4 MiB.
+         */
+        Builder tokenizerChunkSize(int tokenizerChunkSize);
+
+        /**
+         * Whether to scan the input for delimiters, line terminators, and quotes using the Vector API. Defaults to
+         * {@code false}. Each time the tokenizer looks for the end of a field (or the next quote in a quoted field), it
+         * tests a vector's worth of bytes at once rather than the eight at a time of the portable scanner; the
+         * tokenizer is otherwise unchanged. This pays off for long fields, but costs a little for short ones, as each
+         * search loads a whole vector. This requires JDK 17 or later with the incubating {@code jdk.incubator.vector}
+         * module added to the JVM (e.g. via {@code --add-modules jdk.incubator.vector}). When these requirements are
+         * not met, the portable scanner is used instead; call
+         * {@link io.deephaven.csv.reading.cells.DelimitedCellGrabber#vectorApiAvailable()} to find out whether they
+         * are. The result of the parse is the same either way.
+         */
+        Builder vectorizedTokenizer(boolean vectorizedTokenizer);
+
+        /**
+         * The number of buffers to read ahead into. Defaults to 0, which disables read-ahead. Otherwise this must be at
+         * least 2. When enabled (and {@link #concurrent} is set), a background thread reads the input into a ring of
+         * this many buffers, each of {@link #readAheadBufferSize} bytes, while the tokenizer consumes the buffers
+         * already filled. This lets I/O latency overlap with tokenizing, which is helpful for slow sources such as
+         * network filesystems and decompressing streams. The read then closes the input stream when it is done, as
+         * that is what stops a background read that is still blocked on it.
+         */
+        Builder readAheadBuffers(int readAheadBuffers);
+
+        /**
+         * The size in bytes of each read-ahead buffer. Defaults to 1 MiB. See {@link #readAheadBuffers}.
+         */
+        Builder readAheadBufferSize(int readAheadBufferSize);
+
+        /**
+         * Whether the input is gzip-compressed. Defaults to {@code false}. When set, the reader decompresses the input
+         * itself. When {@link #concurrent} is set, decompression runs on its own pipeline thread, and self-delimiting
+         * members (such as the blocks of a BGZF file) are additionally inflated in parallel on
+         * {@link #decompressionThreads} threads. The read then closes the input stream when it is done, as
+         * {@link #readAheadBuffers} does. Otherwise the input is decompressed inline on the calling thread.
+         */
+        Builder gzipInput(boolean gzipInput);
+
+        /**
+         * The number of threads to use to inflate self-delimiting gzip members in parallel. Defaults to 1. With an
+         * {@link #executor}, the members are inflated on its threads instead. Either way, the tokenizer inflates any
+         * member that it needs before one of those threads has got to it. See {@link #gzipInput}.
+         */
+        Builder decompressionThreads(int decompressionThreads);
+
+        /**
+         * Where to keep the text of the cells between tokenizing and parsing. Defaults to
+         * {@link DenseStorageAllocator#heap()}, for which each read recycles blocks through a pool of its own.
+         * {@link DenseStorageAllocator#pooledHeap(long)} does the same with a pool that can be shared across reads.
+         * {@link DenseStorageAllocator#offHeap(long)} keeps the text outside the Java heap instead, which can
+         * substantially reduce garbage collection activity when reading large files. An allocator may be shared across
+         * reads.
+         */
+        Builder denseStorageAllocator(DenseStorageAllocator denseStorageAllocator);
+
+        /**
+         * The most memory, in bytes, that a read may use to hold cell text between tokenizing and parsing. Defaults to
+         * {@link Long#MAX_VALUE}, meaning no limit. When the limit is exceeded, the oldest text (typically text held
+         * for the second pass of type inference) is spilled to a temporary file in {@link #spillDirectory}, and read
+         * back from there when it is needed. This lets files larger than memory be read without giving up type
+         * inference. See {@link io.deephaven.csv.densestorage.SpillingAllocator}.
+         */
+        Builder denseStorageMemoryBudget(long denseStorageMemoryBudget);
+
+        /**
+         * The directory in which to create spill files. Defaults to null, meaning the default temporary-file directory.
+         * See {@link #denseStorageMemoryBudget}.
+         */
+        Builder spillDirectory(Path spillDirectory);
+
+        /**
+         * The most cell text, in bytes, that the tokenizer may get ahead of the parsers, summed across all columns.
+         * Defaults to {@link Long#MAX_VALUE}, meaning no limit (though each column is still individually limited).
+         * When the limit is exceeded, the tokenizer waits until the parsers have caught up halfway. This only applies
+         * when {@link #concurrent} is set. Text that is kept for the second pass of type inference doesn't count
+         * against this limit once the parser has read it; see {@link #denseStorageMemoryBudget} to bound that.
+         */
+        Builder denseStorageInFlightLimit(long denseStorageInFlightLimit);
+
+        /**
+         * The number of cells in each block of a column's control queue, which records the size of each cell. Defaults
+         * to {@link DenseStorageConstants#CONTROL_QUEUE_SIZE}. With {@link #adaptiveDenseStorage} this is the most a
+         * block may hold. See {@link DenseStorageGeometry}.
+         */
+        Builder denseStorageControlBlockSize(int denseStorageControlBlockSize);
+
+        /**
+         * The size in bytes of the blocks that each column packs the text of its small cells into. Defaults to
+         * {@link DenseStorageConstants#PACKED_QUEUE_SIZE}. Must be at least {@link #denseStorageLargeThreshold}. With
+         * {@link #adaptiveDenseStorage} this is the largest a block may be. See {@link DenseStorageGeometry}.
+         */
+        Builder denseStoragePackedBlockSize(int denseStoragePackedBlockSize);
+
+        /**
+         * Cells whose text is at least this many bytes are kept in arrays of their own rather than packed into blocks.
+         * Defaults to {@link DenseStorageConstants#LARGE_THRESHOLD}. Files with many large text cells may benefit from
+         * raising this together with {@link #denseStoragePackedBlockSize}.
+         */
+        Builder denseStorageLargeThreshold(int denseStorageLargeThreshold);
+
+        /**
+         * The most blocks that the tokenizer may get ahead of the parser of each column. Defaults to
+         * {@link DenseStorageConstants#MAX_UNOBSERVED_BLOCKS}. This only applies when {@link #concurrent} is set.
+         */
+        Builder denseStorageMaxUnobservedBlocks(int denseStorageMaxUnobservedBlocks);
+
+        /**
+         * Whether to size the dense storage blocks to suit the file. Defaults to {@code false}. When set, blocks get
+         * smaller as the number of columns grows, so that a file with thousands of columns doesn't need gigabytes for
+         * them, and the size of each column's packed blocks follows the widths of its cells. The block sizes set on
+         * this builder act as upper limits. See {@link DenseStorageGeometry#forColumns}.
+         */
+        Builder adaptiveDenseStorage(boolean adaptiveDenseStorage);
+
+        /**
+         * Whether to compress cell text that is being kept for another pass over a column. Defaults to {@code false}.
+         * When type inference needs a second pass, the text of the column is retained until the second pass is done;
+         * CSV text typically compresses several times over, so this can greatly reduce the memory a read needs, at the
+         * cost of some time on the parser threads. The text is compressed when type inference finds that the column
+         * needs a second pass and goes on to try another parser: what the first pass has read by then is compressed
+         * while that parser runs. Nothing is compressed before that is known, so text that is parsed in one pass never
+         * is. See {@link io.deephaven.csv.densestorage.SpillingAllocator}.
+         */
+        Builder compressRetainedDenseStorage(boolean compressRetainedDenseStorage);
+
+        /**
+         * Whether to dictionary encode the text of columns with few distinct values. Each column starts out encoded,
+         * storing each distinct value once and referring to it thereafter; a column whose first block of cells turns
+         * out not to repeat much goes back to storing its cells in full. This saves memory on categorical columns, and
+         * lets the String parser decode each distinct value only once.
+         */
+        Builder dictionaryEncodeDenseStorage(boolean dictionaryEncodeDenseStorage);
+
+        /**
+         * The {@link Executor} to run the tokenizer and the column parsers on when {@link #concurrent} is set. Defaults
+         * to null, meaning that each read creates a thread pool of its own, with a thread for the tokenizer and one for
+         * every column. An executor may be shared across reads, and may have any number of threads, even one: a column
+         * parser gives up its thread whenever it has caught up with the tokenizer, and is put back on the executor once
+         * the tokenizer has written more of its text, so every column keeps reading its text as it is written and none
+         * of it is held for a column that is waiting for a thread. Rather than wait for a parser that is waiting for a
+         * thread, the tokenizer runs it itself. Reads are fastest when there are enough threads for the tokenizer and
+         * all the columns to run at once. A read that fails cancels its remaining tasks.
+         * {@link io.deephaven.csv.reading.CsvReader#readAsync} runs the read itself on the executor too, whether or not
+         * it is concurrent.
+         */
+        Builder executor(Executor executor);
+
+        /**
+         * Whether to run the tokenizer and the column parsers on virtual threads when {@link #concurrent} is set and no
+         * {@link #executor} has been supplied. Defaults to {@code false}. This requires JDK 21 or later; on earlier
+         * JDKs this option is silently ignored and each read gets a pool of platform threads, one for the tokenizer
+         * and one for every column. Since the parsers spend much of their time waiting for the tokenizer, virtual
+         * threads let very wide files be read without an operating system thread per column.
+         */
+        Builder virtualThreads(boolean virtualThreads);
+
+        /**
+         * A pool to take the parsers' value and null chunks from, and to give them back to once each column is done.
+         * Defaults to null, meaning that each column allocates its own. A pool may be shared across reads. See
+         * {@link ChunkPool}.
+         */
+        Builder parserChunkPool(ChunkPool parserChunkPool);
+
+        /**
+         * Roughly the most memory, in bytes, that the parsers' scratch chunks may take up, summed across the columns
+         * being parsed at once (all of them when {@link #concurrent} is set, otherwise one). Defaults to 256 MiB. The
+         * size of the chunks is chosen for each read from this, the number of columns, and (where it can be told) the
+         * number of rows, up to {@link Parser#CHUNK_SIZE} elements. Smaller chunks only mean that the parsers hand
+         * their values to the sinks more often; the result is the same.
+         */
+        Builder parserChunkMemoryBudget(long parserChunkMemoryBudget);
+
+        /**
+         * The number of threads that parse the columns when {@link #concurrent} is set and there is no
+         * {@link #executor}. Defaults to 0, meaning a thread for every column. Otherwise the columns share this many
+         * threads, so a read needs only this many (plus one for the tokenizer) however many columns it has. A column
+         * gives up its thread whenever it has parsed all the text the tokenizer has written to it so far, and gets one
+         * back once there is more, so every column keeps reading its text as it is written, and none of it is held for
+         * a column that is waiting for a thread. This suits files with many columns, most of which spend much of their
+         * time waiting for the tokenizer. With an {@link #executor}, the columns share its threads instead.
+         */
+        Builder parserThreads(int parserThreads);
+
+        /**
+         * How long a read may take. Defaults to null, meaning no limit. A read that is still running when its time is
+         * up is cancelled: the tokenizer and the parsers stop at their next block boundary, the read's storage is
+         * freed, and the read fails with a {@link io.deephaven.csv.util.CsvReaderException} caused by a
+         * {@link java.util.concurrent.TimeoutException}. A tokenizer that is blocked reading its input stream only
+         * notices once the read returns.
+         */
+        Builder timeout(Duration timeout);
+
+        /**
+         * A listener to tell about the progress of each read. Defaults to null, meaning none. See
+         * {@link ProgressListener}.
+         */
+        Builder progressListener(ProgressListener progressListener);
+
         CsvSpecs build();
     }
 
@@ -255,6 +496,35 @@ public abstract class CsvSpecs {
         checkNonnegative("skipRows", skipRows(), problems);
         checkNonnegative("skipHeaderRows", skipHeaderRows(), problems);
         checkNonnegative("numRows", numRows(), problems);
+        checkPositive("tokenizerThreads", tokenizerThreads(), problems);
+        checkPositive("tokenizerChunkSize", tokenizerChunkSize(), problems);
+        checkNonnegative("readAheadBuffers", readAheadBuffers(), problems);
+        if (readAheadBuffers() == 1) {
+            problems.add("readAheadBuffers is set to 1, but is required to be 0 (disabled) or at least 2");
+        }
+        checkPositive("readAheadBufferSize", readAheadBufferSize(), problems);
+        checkPositive("decompressionThreads", decompressionThreads(), problems);
+        checkNonnegative("denseStorageMemoryBudget", denseStorageMemoryBudget(), problems);
+        checkPositive("denseStorageInFlightLimit", denseStorageInFlightLimit(), problems);
+        checkPositive("denseStorageControlBlockSize", denseStorageControlBlockSize(), problems);
+        checkPositive("denseStoragePackedBlockSize", denseStoragePackedBlockSize(), problems);
+        checkPositive("denseStorageLargeThreshold", denseStorageLargeThreshold(), problems);
+        checkPositive("denseStorageMaxUnobservedBlocks", denseStorageMaxUnobservedBlocks(), problems);
+        checkPositive("parserChunkMemoryBudget", parserChunkMemoryBudget(), problems);
+        checkNonnegative("parserThreads", parserThreads(), problems);
+        if (timeout() != null && (timeout().isNegative() || timeout().isZero())) {
+            problems.add(String.format("timeout (%s) is not positive", timeout()));
+        }
+        if (denseStorageLargeThreshold() > denseStoragePackedBlockSize()) {
+            problems.add(String.format(
+                    "denseStorageLargeThreshold (%d) is larger than denseStoragePackedBlockSize (%d)",
+                    denseStorageLargeThreshold(), denseStoragePackedBlockSize()));
+        }
+        for (final Integer index : includedColumnIndices()) {
+            if (index < 0) {
+                problems.add(String.format("Included column index %d is invalid", index));
+            }
+        }
         if (!hasHeaderRow() && skipHeaderRows() > 0) {
             problems.add("skipHeaderRows != 0 but hasHeaderRow is not set");
         }
@@ -328,6 +598,16 @@ public abstract class CsvSpecs {
      */
     public abstract Map<Integer, String> headerForIndex();
 
+    /**
+     * See {@link Builder#includedColumnNames}.
+     */
+    public abstract Set<String> includedColumnNames();
+
+    /**
+     * See {@link Builder#includedColumnIndices}.
+     */
+    public abstract Set<Integer> includedColumnIndices();
+
     /**
      * See {@link Builder#parsers}.
      */
@@ -535,6 +815,211 @@ public abstract class CsvSpecs {
         return true;
     }
 
+    /**
+     * See {@link Builder#tokenizerThreads}.
+     */
+    @Default
+    public int tokenizerThreads() {
+        return 1;
+    }
+
+    /**
+     * See {@link Builder#tokenizerChunkSize}.
+     */
+    @Default
+    public int tokenizerChunkSize() {
+        return 4 << 20;
+    }
+
+    /**
+     * See {@link Builder#vectorizedTokenizer}.
+     */
+    @Default
+    public boolean vectorizedTokenizer() {
+        return false;
+    }
+
+    /**
+     * See {@link Builder#readAheadBuffers}.
+     */
+    @Default
+    public int readAheadBuffers() {
+        return 0;
+    }
+
+    /**
+     * See {@link Builder#readAheadBufferSize}.
+     */
+    @Default
+    public int readAheadBufferSize() {
+        return 1 << 20;
+    }
+
+    /**
+     * See {@link Builder#gzipInput}.
+     */
+    @Default
+    public boolean gzipInput() {
+        return false;
+    }
+
+    /**
+     * See {@link Builder#decompressionThreads}.
+     */
+    @Default
+    public int decompressionThreads() {
+        return 1;
+    }
+
+    /**
+     * See {@link Builder#denseStorageAllocator}.
+     */
+    @Default
+    public DenseStorageAllocator denseStorageAllocator() {
+        return DenseStorageAllocator.heap();
+    }
+
+    /**
+     * See {@link Builder#denseStorageMemoryBudget}.
+     */
+    @Default
+    public long denseStorageMemoryBudget() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * See {@link Builder#spillDirectory}.
+     */
+    @Default
+    @Nullable
+    public Path spillDirectory() {
+        return null;
+    }
+
+    /**
+     * See {@link Builder#denseStorageInFlightLimit}.
+     */
+    @Default
+    public long denseStorageInFlightLimit() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * See {@link Builder#denseStorageControlBlockSize}.
+     */
+    @Default
+    public int denseStorageControlBlockSize() {
+        return DenseStorageConstants.CONTROL_QUEUE_SIZE;
+    }
+
+    /**
+     * See {@link Builder#denseStoragePackedBlockSize}.
+     */
+    @Default
+    public int denseStoragePackedBlockSize() {
+        return DenseStorageConstants.PACKED_QUEUE_SIZE;
+    }
+
+    /**
+     * See {@link Builder#denseStorageLargeThreshold}.
+     */
+    @Default
+    public int denseStorageLargeThreshold() {
+        return DenseStorageConstants.LARGE_THRESHOLD;
+    }
+
+    /**
+     * See {@link Builder#denseStorageMaxUnobservedBlocks}.
+     */
+    @Default
+    public int denseStorageMaxUnobservedBlocks() {
+        return DenseStorageConstants.MAX_UNOBSERVED_BLOCKS;
+    }
+
+    /**
+     * See {@link Builder#adaptiveDenseStorage}.
+     */
+    @Default
+    public boolean adaptiveDenseStorage() {
+        return false;
+    }
+
+    /**
+     * See {@link Builder#compressRetainedDenseStorage}.
+     */
+    @Default
+    public boolean compressRetainedDenseStorage() {
+        return false;
+    }
+
+    /**
+     * See {@link Builder#dictionaryEncodeDenseStorage}.
+     */
+    @Default
+    public boolean dictionaryEncodeDenseStorage() {
+        return false;
+    }
+
+    /**
+     * See {@link Builder#executor}.
+     */
+    @Default
+    @Nullable
+    public Executor executor() {
+        return null;
+    }
+
+    /**
+     * See {@link Builder#virtualThreads}.
+     */
+    @Default
+    public boolean virtualThreads() {
+        return false;
+    }
+
+    /**
+     * See {@link Builder#parserChunkPool}.
+     */
+    @Default
+    @Nullable
+    public ChunkPool parserChunkPool() {
+        return null;
+    }
+
+    /**
+     * See {@link Builder#parserChunkMemoryBudget}.
+     */
+    @Default
+    public long parserChunkMemoryBudget() {
+        return 256L << 20;
+    }
+
+    /**
+     * See {@link Builder#parserThreads}.
+     */
+    @Default
+    public int parserThreads() {
+        return 0;
+    }
+
+    /**
+     * See {@link Builder#timeout}.
+     */
+    @Default
+    @Nullable
+    public Duration timeout() {
+        return null;
+    }
+
+    /**
+     * See {@link Builder#progressListener}.
+     */
+    @Default
+    @Nullable
+    public ProgressListener progressListener() {
+        return null;
+    }
+
     private static void check7BitAscii(String what, char c, List<String> problems) {
         if (c > 0x7f) {
             final String message = String.format("%s is set to '%c' but is required to be 7-bit ASCII",
@@ -550,4 +1035,12 @@ public abstract class CsvSpecs {
             problems.add(message);
         }
     }
+
+    private static void checkPositive(String what, long value, List<String> problems) {
+        if (value <= 0) {
+            final String message = String.format("%s is set to %d, but is required to be positive",
+                    what, value);
+            problems.add(message);
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package io.deephaven.csv.densestorage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A block of storage for one of the queues inside {@link DenseStorageWriter} and {@link DenseStorageReader}, obtained
+ * from a {@link DenseStorageAllocator}. A block may be backed by an ordinary Java array, in which case
+ * {@link #array()} returns that array and the queue code reads and writes it directly. Otherwise (for example if the
+ * block lives off-heap), {@link #array()} returns null and the queue code copies data in and out with {@link #put} and
+ * {@link #get}.
+ *
+ * <p>
+ * Blocks are reference counted. The {@link QueueWriter} holds a reference while it is filling the block, and each
+ * {@link QueueNode} that refers to the block holds one reference on behalf of each {@link QueueReader} that has not yet
+ * moved past it. When the last reference is released, {@link #free} is called, and the block's storage can be reused.
+ * Readers that are abandoned without being closed never release their references; in that case the block is simply
+ * left to the garbage collector.
+ *
+ * @param <TARRAY> The array type that this block holds data for, such as byte[] or int[].
+ */
+public abstract class Block<TARRAY> {
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    /** The number of elements the block can hold. */
+    public abstract int capacity();
+
+    /** If the block is backed by a Java array, that array. Otherwise, null. */
+    public abstract TARRAY array();
+
+    /** Copy {@code length} elements from {@code src} at {@code srcOffset} into the block at {@code offset}. */
+    public abstract void put(int offset, TARRAY src, int srcOffset, int length);
+
+    /** Copy {@code length} elements from the block at {@code offset} into {@code dest} at {@code destOffset}. */
+    public abstract void get(int offset, TARRAY dest, int destOffset, int length);
+
+    /**
+     * Called once the {@link QueueWriter} has finished writing the block. Its contents do not change after this point.
+     */
+    protected void sealed() {}
+
+    /**
+     * Called when a {@link QueueReader} that is behind another has said that it will read the block again, after the
+     * one ahead has moved past it (see {@link QueueReader#keepForSecondPass}). The block is then being kept only for
+     * that second pass, which makes this a good moment to shrink it. This may be called concurrently with, or after,
+     * {@link #free}.
+     */
+    protected void keptForSecondPass() {}
+
+    /**
+     * Called exactly once, when the last reference to the block has been released. Nothing will read or write the block
+     * after this point.
+     */
+    protected abstract void free();
+
+    final void retain(final int count) {
+        if (count != 0) {
+            refCount.addAndGet(count);
+        }
+    }
+
+    final void release() {
+        final int remaining = refCount.decrementAndGet();
+        if (remaining == 0) {
+            free();
+            return;
+        }
+        if (remaining < 0) {
+            throw new RuntimeException("Logic error: block released too many times");
+        }
+    }
+}
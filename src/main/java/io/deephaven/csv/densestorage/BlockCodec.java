@@ -0,0 +1,181 @@
+package io.deephaven.csv.densestorage;
+
+import java.util.Arrays;
+
+/**
+ * The compression used for retained blocks (see {@link SpillingAllocator}). Bytes are compressed with a simple LZ77
+ * scheme in the style of LZ4: a greedy matcher with a hash table of recent positions, emitting sequences of literals
+ * followed by a back-reference. It is nowhere near as thorough as general-purpose compressors, but it runs at memory
+ * speed, and CSV text, with its repeated digits, separators, and column values, suits it well. Ints (the cell sizes of
+ * the control queue) are first turned into bytes by delta and zigzag encoding them as varints, which makes runs of
+ * similar sizes into runs of identical small bytes, and then compressed the same way.
+ *
+ * <p>
+ * A sequence is a token byte, whose high nibble is the literal count and whose low nibble is the match length minus
+ * {@link #MIN_MATCH}; any further bytes of either count (when its nibble is 15); the literals; a two-byte little-endian
+ * offset back to the match; and any further bytes of the match length. The last sequence has literals only, and ends
+ * the input.
+ */
+final class BlockCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int HASH_LOG = 12;
+    /** A match may not start in the last few bytes, so that the matcher can always read a whole int. */
+    private static final int LAST_LITERALS = 5;
+
+    private BlockCodec() {}
+
+    /** The largest output {@link #compress} can produce for {@code length} bytes of input. */
+    static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /** Compress the first {@code length} bytes of {@code src}. */
+    static byte[] compress(final byte[] src, final int length) {
+        final byte[] dest = new byte[maxCompressedLength(length)];
+        final int[] table = new int[1 << HASH_LOG];
+        Arrays.fill(table, -1);
+        final int matchLimit = length - LAST_LITERALS;
+        int destPos = 0;
+        int anchor = 0;
+        int pos = 0;
+        int misses = 0;
+        while (pos < matchLimit) {
+            final int sequence = readInt(src, pos);
+            final int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+            final int ref = table[hash];
+            table[hash] = pos;
+            if (ref < 0 || pos - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                // Skip ahead faster through data that isn't matching.
+                pos += 1 + (misses++ >>> 6);
+                continue;
+            }
+            misses = 0;
+            int matchLength = MIN_MATCH;
+            while (pos + matchLength < length && src[ref + matchLength] == src[pos + matchLength]) {
+                ++matchLength;
+            }
+            destPos = writeSequence(src, anchor, pos - anchor, pos - ref, matchLength, dest, destPos);
+            pos += matchLength;
+            anchor = pos;
+        }
+        destPos = writeSequence(src, anchor, length - anchor, 0, 0, dest, destPos);
+        return Arrays.copyOf(dest, destPos);
+    }
+
+    /**
+     * Decompress {@code src} into the first {@code destLength} bytes of {@code dest}, which must be exactly the size of
+     * the original.
+     */
+    static void decompress(final byte[] src, final byte[] dest, final int destLength) {
+        int srcPos = 0;
+        int destPos = 0;
+        while (srcPos < src.length) {
+            final int token = src[srcPos++] & 0xff;
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    b = src[srcPos++] & 0xff;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, srcPos, dest, destPos, literalLength);
+            srcPos += literalLength;
+            destPos += literalLength;
+            if (srcPos == src.length) {
+                break;
+            }
+            final int offset = (src[srcPos] & 0xff) | ((src[srcPos + 1] & 0xff) << 8);
+            srcPos += 2;
+            int matchLength = token & 0xf;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src[srcPos++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            // The match may overlap what it is producing (that's how runs are encoded), so copy byte by byte.
+            for (int from = destPos - offset; matchLength != 0; --matchLength) {
+                dest[destPos++] = dest[from++];
+            }
+        }
+        if (destPos != destLength) {
+            throw new RuntimeException(String.format(
+                    "Logic error: compressed block decoded to %d bytes rather than %d", destPos, destLength));
+        }
+    }
+
+    /** Delta, zigzag, and varint encode the first {@code length} ints of {@code src}. */
+    static byte[] encodeInts(final int[] src, final int length) {
+        final byte[] dest = new byte[length * 5];
+        int destPos = 0;
+        int previous = 0;
+        for (int ii = 0; ii < length; ++ii) {
+            final int delta = src[ii] - previous;
+            previous = src[ii];
+            int zigzag = (delta << 1) ^ (delta >> 31);
+            while ((zigzag & ~0x7f) != 0) {
+                dest[destPos++] = (byte) ((zigzag & 0x7f) | 0x80);
+                zigzag >>>= 7;
+            }
+            dest[destPos++] = (byte) zigzag;
+        }
+        return Arrays.copyOf(dest, destPos);
+    }
+
+    /** The inverse of {@link #encodeInts}, decoding {@code length} ints into {@code dest}. */
+    static void decodeInts(final byte[] src, final int[] dest, final int length) {
+        int srcPos = 0;
+        int previous = 0;
+        for (int ii = 0; ii < length; ++ii) {
+            int zigzag = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = src[srcPos++];
+                zigzag |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            dest[ii] = previous;
+        }
+    }
+
+    private static int writeSequence(final byte[] src, final int literalStart, final int literalLength,
+            final int offset, final int matchLength, final byte[] dest, int destPos) {
+        final int literalNibble = Math.min(literalLength, 15);
+        final int matchNibble = matchLength == 0 ? 0 : Math.min(matchLength - MIN_MATCH, 15);
+        dest[destPos++] = (byte) ((literalNibble << 4) | matchNibble);
+        if (literalNibble == 15) {
+            destPos = writeLength(literalLength - 15, dest, destPos);
+        }
+        System.arraycopy(src, literalStart, dest, destPos, literalLength);
+        destPos += literalLength;
+        if (matchLength == 0) {
+            return destPos;
+        }
+        dest[destPos++] = (byte) offset;
+        dest[destPos++] = (byte) (offset >>> 8);
+        if (matchNibble == 15) {
+            destPos = writeLength(matchLength - MIN_MATCH - 15, dest, destPos);
+        }
+        return destPos;
+    }
+
+    private static int writeLength(int remaining, final byte[] dest, int destPos) {
+        while (remaining >= 255) {
+            dest[destPos++] = (byte) 255;
+            remaining -= 255;
+        }
+        dest[destPos++] = (byte) remaining;
+        return destPos;
+    }
+
+    private static int readInt(final byte[] src, final int pos) {
+        return (src[pos] & 0xff) | ((src[pos + 1] & 0xff) << 8) | ((src[pos + 2] & 0xff) << 16)
+                | ((src[pos + 3] & 0xff) << 24);
+    }
+}
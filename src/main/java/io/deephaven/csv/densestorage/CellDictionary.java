@@ -0,0 +1,95 @@
+package io.deephaven.csv.densestorage;
+
+import io.deephaven.csv.containers.ByteSlice;
+
+import java.util.Arrays;
+
+/**
+ * The distinct cell values of a column, as used by {@link DenseStorageWriter} for dictionary encoding. Each value is
+ * given the next id in sequence when it is added. This is a small open-addressing hash table, so that looking up a
+ * cell doesn't need to allocate.
+ */
+final class CellDictionary {
+    /** The values, indexed by id. */
+    private byte[][] values = new byte[16][];
+    /** The hash of each value, indexed by id. */
+    private int[] hashes = new int[16];
+    /** Open-addressing table of id + 1, with 0 meaning empty. Its size is a power of two. */
+    private int[] table = new int[32];
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    /** The id of the value with the contents of {@code bs}, or -1 if there is none. */
+    int find(final ByteSlice bs, final int hash) {
+        final int mask = table.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            final int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            final int id = entry - 1;
+            if (hashes[id] == hash && equals(values[id], bs)) {
+                return id;
+            }
+        }
+    }
+
+    /** Add the contents of {@code bs}, which must not already be present, and return its id. */
+    int add(final ByteSlice bs, final int hash) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        final byte[] value = new byte[bs.size()];
+        bs.copyTo(value, 0);
+        final int id = size++;
+        values[id] = value;
+        hashes[id] = hash;
+        if (size * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int ii = 0; ii < size; ++ii) {
+                insert(ii);
+            }
+        } else {
+            insert(id);
+        }
+        return id;
+    }
+
+    static int hash(final ByteSlice bs) {
+        final byte[] data = bs.data();
+        int result = 1;
+        for (int ii = bs.begin(); ii != bs.end(); ++ii) {
+            result = 31 * result + data[ii];
+        }
+        // Spread the bits, as the table uses the low ones.
+        return result ^ (result >>> 16);
+    }
+
+    private void insert(final int id) {
+        final int mask = table.length - 1;
+        int slot = hashes[id] & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private static boolean equals(final byte[] value, final ByteSlice bs) {
+        final int length = bs.size();
+        if (value.length != length) {
+            return false;
+        }
+        final byte[] data = bs.data();
+        final int begin = bs.begin();
+        for (int ii = 0; ii < length; ++ii) {
+            if (value[ii] != data[begin + ii]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package io.deephaven.csv.densestorage;
+
+/**
+ * Supplies the blocks that {@link DenseStorageWriter} packs cell text into. The default, {@link #heap()}, allocates
+ * ordinary Java arrays. {@link #offHeap(long)} keeps the text outside the Java heap, which relieves the garbage
+ * collector when reading large files.
+ *
+ * <p>
+ * Implementations must be thread-safe: blocks are allocated on the thread that tokenizes the input but are usually
+ * freed on the threads that parse the columns, and a single allocator may be shared by concurrent reads.
+ */
+public interface DenseStorageAllocator {
+    /**
+     * An allocator that allocates ordinary Java arrays and leaves their cleanup to the garbage collector. This is the
+     * default. Reads that use it get a pool of their own, though; see {@link #pooledHeap}.
+     */
+    static DenseStorageAllocator heap() {
+        return HeapAllocator.INSTANCE;
+    }
+
+    /**
+     * An allocator that allocates ordinary Java arrays, and keeps the arrays of freed blocks for reuse. Blocks are
+     * freed as soon as every reader has moved past them, so for columns that are parsed in one pass, this eliminates
+     * most of the short-lived allocation the queues would otherwise do. A single instance may be shared across reads,
+     * in which case the pool is process-wide. (Reads that use {@link #heap()} get a pool of their own, sized
+     * {@link DenseStorageConstants#MAX_POOLED_BYTES_PER_READ}.)
+     *
+     * @param maxCachedBytes The most memory the allocator will hold on to in free arrays, waiting to be reused. Arrays
+     *        freed beyond this limit are dropped and left to the garbage collector.
+     * @return The allocator.
+     */
+    static DenseStorageAllocator pooledHeap(final long maxCachedBytes) {
+        return new PooledHeapAllocator(maxCachedBytes);
+    }
+
+    /**
+     * An allocator that stores cell text and cell lengths off-heap, in direct buffers. (Cells too large to be packed,
+     * per {@link DenseStorageConstants#LARGE_THRESHOLD}, stay on the heap.) Blocks are returned to the allocator as
+     * soon as every reader has moved past them, and are kept for reuse rather than being handed back to the garbage
+     * collector.
+     *
+     * @param maxCachedBytes The most memory the allocator will hold on to in free blocks, waiting to be reused. Blocks
+     *        freed beyond this limit are dropped and left to the garbage collector.
+     * @return The allocator.
+     */
+    static DenseStorageAllocator offHeap(final long maxCachedBytes) {
+        return new OffHeapAllocator(maxCachedBytes);
+    }
+
+    /** Allocate a block of at least {@code capacity} bytes. */
+    Block<byte[]> allocateBytes(int capacity);
+
+    /** Allocate a block of at least {@code capacity} ints. */
+    Block<int[]> allocateInts(int capacity);
+
+    /** Allocate a block of at least {@code capacity} byte array references. */
+    Block<byte[][]> allocateByteArrays(int capacity);
+}
@@ -33,9 +33,48 @@ public class DenseStorageConstants {
      * rather its own byte array.
      */
     public static final int LARGE_BYTE_ARRAY_SENTINEL = -1;
+    /**
+     * Control values from this one down to {@code FIRST_DICTIONARY_ID - (MAX_DICTIONARY_SIZE - 1)} refer to a
+     * dictionary entry: the value {@code FIRST_DICTIONARY_ID - id} refers to the entry with that id.
+     */
+    public static final int FIRST_DICTIONARY_ID = -2;
+    /** The most values a column's dictionary may hold. Values beyond that are stored in the ordinary way. */
+    public static final int MAX_DICTIONARY_SIZE = 4096;
+    /**
+     * Control values below the dictionary ids define a new dictionary entry: the value
+     * {@code DICTIONARY_DEFINE_BASE - size} means that the next value has that size, its bytes are in the packed byte
+     * block as usual, and it gets the next dictionary id in sequence. (This is a single control value so that a
+     * definition can't be split across control blocks.)
+     */
+    public static final int DICTIONARY_DEFINE_BASE = FIRST_DICTIONARY_ID - MAX_DICTIONARY_SIZE;
+    /** The largest value that may be put in a dictionary, which keeps the definitions from overflowing an int. */
+    public static final int MAX_DICTIONARY_VALUE_SIZE = 1024;
+    /**
+     * A column keeps using its dictionary after its first control block only if the cells in that block repeated, on
+     * average, at least this many times.
+     */
+    public static final int MIN_DICTIONARY_REPEATS = 4;
     /**
      * The maximum number of data blocks that we allow to go unobserved before the blocking the QueueWriter. This is
      * only used when {@link CsvSpecs#concurrent()} is true.
      */
     public static final int MAX_UNOBSERVED_BLOCKS = 4;
+    /**
+     * When a read uses {@link DenseStorageAllocator#heap()}, the most memory its per-read pool (see
+     * {@link DenseStorageAllocator#pooledHeap}) holds on to in free arrays. Freed blocks are normally taken again
+     * almost immediately, so the pool doesn't need to be large; the limit just keeps a read that frees many blocks at
+     * once (say, at the end of a second pass) from holding on to them.
+     */
+    public static final long MAX_POOLED_BYTES_PER_READ = 64L << 20;
+    /**
+     * In adaptive mode (see {@link DenseStorageGeometry}), roughly how much memory one control block and one packed
+     * block of every column should add up to. The blocks of a narrow file are capped by the ordinary sizes above, so
+     * this only comes into play for files with more than a few dozen columns.
+     */
+    public static final long ADAPTIVE_BLOCK_BYTES_PER_READ = 64L << 20;
+    /**
+     * In adaptive mode, the fewest cells a control block (or large-cell block) may hold, however many columns there
+     * are. Smaller blocks would mean more time spent handing blocks from the tokenizer to the parsers than parsing.
+     */
+    public static final int MIN_ADAPTIVE_BLOCK_SIZE = 1024;
 }
@@ -0,0 +1,124 @@
+package io.deephaven.csv.densestorage;
+
+/**
+ * The sizes of the blocks that a {@link DenseStorageWriter} keeps cell text in, and how far it may get ahead of its
+ * readers. {@link #DEFAULT} has the sizes in {@link DenseStorageConstants}, which suit files of moderate width. For a
+ * very wide file those sizes multiply into a lot of memory (each column holds several blocks at once), so in adaptive
+ * mode {@link #forColumns} shrinks the blocks as the number of columns grows, and the writer then sizes each column's
+ * packed byte blocks from the widths of the cells it has seen. The sizes given to the constructor are the upper limits.
+ */
+public final class DenseStorageGeometry {
+    public static final DenseStorageGeometry DEFAULT = new DenseStorageGeometry(
+            DenseStorageConstants.CONTROL_QUEUE_SIZE, DenseStorageConstants.PACKED_QUEUE_SIZE,
+            DenseStorageConstants.ARRAY_QUEUE_SIZE, DenseStorageConstants.LARGE_THRESHOLD,
+            DenseStorageConstants.MAX_UNOBSERVED_BLOCKS, false);
+
+    private final int controlBlockSize;
+    private final int packedBlockSize;
+    private final int arrayBlockSize;
+    private final int largeThreshold;
+    private final int maxUnobservedBlocks;
+    private final boolean adaptive;
+    /** The size packed blocks may grow to when adapting to wide cells. */
+    private final int maxPackedBlockSize;
+
+    /**
+     * Constructor.
+     *
+     * @param controlBlockSize The number of cells in each block of the control queue.
+     * @param packedBlockSize The size in bytes of the blocks that small cells are packed into.
+     * @param arrayBlockSize The number of cells in each block of the queue of large cells.
+     * @param largeThreshold Cells this size or larger are stored in their own arrays rather than packed. Must be no
+     *        larger than {@code packedBlockSize}.
+     * @param maxUnobservedBlocks The most blocks a writer may get ahead of its readers, when they run concurrently.
+     * @param adaptive Whether to size the blocks from the number of columns and the widths of the cells.
+     */
+    public DenseStorageGeometry(final int controlBlockSize, final int packedBlockSize, final int arrayBlockSize,
+            final int largeThreshold, final int maxUnobservedBlocks, final boolean adaptive) {
+        this(controlBlockSize, packedBlockSize, arrayBlockSize, largeThreshold, maxUnobservedBlocks, adaptive,
+                packedBlockSize);
+    }
+
+    private DenseStorageGeometry(final int controlBlockSize, final int packedBlockSize, final int arrayBlockSize,
+            final int largeThreshold, final int maxUnobservedBlocks, final boolean adaptive,
+            final int maxPackedBlockSize) {
+        if (controlBlockSize < 1 || packedBlockSize < 1 || arrayBlockSize < 1 || largeThreshold < 1
+                || maxUnobservedBlocks < 1) {
+            throw new IllegalArgumentException("Block sizes, threshold, and unobserved block limit must be positive");
+        }
+        if (largeThreshold > packedBlockSize) {
+            throw new IllegalArgumentException(String.format(
+                    "largeThreshold (%d) must not be larger than packedBlockSize (%d)",
+                    largeThreshold, packedBlockSize));
+        }
+        this.controlBlockSize = controlBlockSize;
+        this.packedBlockSize = packedBlockSize;
+        this.arrayBlockSize = arrayBlockSize;
+        this.largeThreshold = largeThreshold;
+        this.maxUnobservedBlocks = maxUnobservedBlocks;
+        this.adaptive = adaptive;
+        this.maxPackedBlockSize = maxPackedBlockSize;
+    }
+
+    public int controlBlockSize() {
+        return controlBlockSize;
+    }
+
+    public int packedBlockSize() {
+        return packedBlockSize;
+    }
+
+    public int arrayBlockSize() {
+        return arrayBlockSize;
+    }
+
+    public int largeThreshold() {
+        return largeThreshold;
+    }
+
+    public int maxUnobservedBlocks() {
+        return maxUnobservedBlocks;
+    }
+
+    public boolean adaptive() {
+        return adaptive;
+    }
+
+    /**
+     * The geometry to use for a read of {@code numColumns} columns. If this geometry is not adaptive, that is this
+     * geometry. Otherwise the blocks are shrunk so that one control block and one packed block of every column add up
+     * to about {@link DenseStorageConstants#ADAPTIVE_BLOCK_BYTES_PER_READ}, but not below
+     * {@link DenseStorageConstants#MIN_ADAPTIVE_BLOCK_SIZE} cells (or {@link #largeThreshold()} bytes).
+     */
+    public DenseStorageGeometry forColumns(final int numColumns) {
+        if (!adaptive) {
+            return this;
+        }
+        final long share = DenseStorageConstants.ADAPTIVE_BLOCK_BYTES_PER_READ / Math.max(numColumns, 1);
+        // Half the share goes to the control block (at 4 bytes a cell) and half to the packed block.
+        final int control = clamp(share / 2 / Integer.BYTES, DenseStorageConstants.MIN_ADAPTIVE_BLOCK_SIZE,
+                controlBlockSize);
+        final int array = clamp(share / 2 / Long.BYTES, DenseStorageConstants.MIN_ADAPTIVE_BLOCK_SIZE,
+                arrayBlockSize);
+        final int packed = clamp(share / 2, largeThreshold, packedBlockSize);
+        return new DenseStorageGeometry(control, packed, array, largeThreshold, maxUnobservedBlocks, true,
+                maxPackedBlockSize);
+    }
+
+    /**
+     * In adaptive mode, the size to make the next packed block, given that {@code numBytes} bytes have been packed for
+     * {@code numCells} cells so far. The packed block is sized to fill up at about the same time as a control block,
+     * because each queue flushes the other when it fills up.
+     */
+    int packedBlockSizeFor(final long numCells, final long numBytes) {
+        if (numCells == 0) {
+            return packedBlockSize;
+        }
+        final long target = (numBytes * controlBlockSize + numCells - 1) / numCells;
+        return clamp(target, largeThreshold, maxPackedBlockSize);
+    }
+
+    private static int clamp(final long value, final int min, final int max) {
+        return (int) Math.max(Math.min(value, max), Math.min(min, max));
+    }
+}
@@ -4,6 +4,8 @@ import io.deephaven.csv.containers.ByteSlice;
 import io.deephaven.csv.util.CsvReaderException;
 import io.deephaven.csv.util.MutableInt;
 
+import java.util.ArrayList;
+
 /** Companion to the {@link DenseStorageWriter}. See the documentation there for details. */
 public final class DenseStorageReader {
     /** Control bytes (lengths, negated lengths, or sentinels). See DenseStorageWriter. */
@@ -14,20 +16,93 @@ public final class DenseStorageReader {
     private final QueueReader.ByteArrayReader largeByteArrayReader;
     /** For the "out" parameter of controlReader.tryGetInt() */
     private final MutableInt intHolder;
+    /** The dictionary entries defined so far, indexed by id, if the writer is dictionary encoding. */
+    private final ArrayList<byte[]> dictionary;
+    /** The dictionary id of the last slice, or -1 if it didn't come from the dictionary. */
+    private int lastDictionaryId;
 
     /** Constructor. */
     public DenseStorageReader(
             final QueueReader.IntReader controlReader,
             final QueueReader.ByteReader byteReader,
             final QueueReader.ByteArrayReader largeByteArrayReader) {
+        this(controlReader, byteReader, largeByteArrayReader, new ArrayList<>());
+    }
+
+    private DenseStorageReader(
+            final QueueReader.IntReader controlReader,
+            final QueueReader.ByteReader byteReader,
+            final QueueReader.ByteArrayReader largeByteArrayReader,
+            final ArrayList<byte[]> dictionary) {
         this.controlReader = controlReader;
         this.byteReader = byteReader;
         this.largeByteArrayReader = largeByteArrayReader;
         this.intHolder = new MutableInt();
+        this.dictionary = dictionary;
+        this.lastDictionaryId = -1;
     }
 
     public DenseStorageReader copy() {
-        return new DenseStorageReader(controlReader.copy(), byteReader.copy(), largeByteArrayReader.copy());
+        // The entries themselves are never modified, so they can be shared.
+        return new DenseStorageReader(controlReader.copy(), byteReader.copy(), largeByteArrayReader.copy(),
+                new ArrayList<>(dictionary));
+    }
+
+    /**
+     * The dictionary id of the slice most recently returned by {@link #tryGetNextSlice}, or -1 if it was not
+     * dictionary encoded. Slices with the same id have the same contents, so callers can use it to avoid repeating
+     * work on the same value.
+     */
+    public int lastDictionaryId() {
+        return lastDictionaryId;
+    }
+
+    /**
+     * Whether the writer may wait for this reader (and its copies) to catch up. See
+     * {@link QueueReader#setFlowControl}.
+     */
+    public void setFlowControl(final boolean enabled) {
+        controlReader.setFlowControl(enabled);
+        byteReader.setFlowControl(enabled);
+        largeByteArrayReader.setFlowControl(enabled);
+    }
+
+    /**
+     * Declare that this reader will go back over the data that {@code leader}, a copy of it that is further along,
+     * has moved past. See {@link QueueReader#keepForSecondPass}.
+     */
+    public void keepForSecondPass(final DenseStorageReader leader) {
+        controlReader.keepForSecondPass(leader.controlReader);
+        byteReader.keepForSecondPass(leader.byteReader);
+        largeByteArrayReader.keepForSecondPass(leader.largeByteArrayReader);
+    }
+
+    /**
+     * Stop reading, releasing our hold on the data we have not yet read. See {@link QueueReader#close()}.
+     */
+    public void close() {
+        controlReader.close();
+        byteReader.close();
+        largeByteArrayReader.close();
+    }
+
+    /**
+     * Whether {@link #tryGetNextSlice} would have to wait for the writer. The writer publishes the text of each cell
+     * before its control entry (see {@link DenseStorageWriter}), so it is enough to look at the control queue.
+     */
+    public boolean wouldWait() {
+        return controlReader.wouldWait(1);
+    }
+
+    /**
+     * Arrange for {@code task} to run, on the writer's thread, once the writer has published more data, rather than
+     * wait for it. The task should do no more than hand the work of reading on to some other thread. Only one reader
+     * of a list (that is, of this reader and its copies) may have a task waiting at a time.
+     *
+     * @return false, with nothing arranged, if {@link #tryGetNextSlice} no longer needs to wait. Otherwise true.
+     */
+    public boolean runWhenAvailable(final Runnable task) {
+        return controlReader.runWhenPublished(task);
     }
 
     /**
@@ -39,14 +114,36 @@ public final class DenseStorageReader {
      */
     public boolean tryGetNextSlice(final ByteSlice bs) throws CsvReaderException {
         if (!controlReader.tryGetInt(intHolder)) {
+            // The data readers may not have reached the ends of their queues, so release them explicitly.
+            close();
             return false;
         }
         final int control = intHolder.intValue();
+        lastDictionaryId = -1;
+        if (control >= 0) {
+            mustSucceed(byteReader.tryGetBytes(control, bs), "byteReader");
+            return true;
+        }
         if (control == DenseStorageConstants.LARGE_BYTE_ARRAY_SENTINEL) {
             mustSucceed(largeByteArrayReader.tryGetBytes(bs), "largeByteArrayReader");
             return true;
         }
-        mustSucceed(byteReader.tryGetBytes(control, bs), "byteReader");
+        if (control <= DenseStorageConstants.DICTIONARY_DEFINE_BASE) {
+            final int size = DenseStorageConstants.DICTIONARY_DEFINE_BASE - control;
+            mustSucceed(byteReader.tryGetBytes(size, bs), "byteReader");
+            final byte[] value = new byte[size];
+            bs.copyTo(value, 0);
+            lastDictionaryId = dictionary.size();
+            dictionary.add(value);
+            return true;
+        }
+        final int id = DenseStorageConstants.FIRST_DICTIONARY_ID - control;
+        if (id >= dictionary.size()) {
+            throw new CsvReaderException(String.format("Logic error: dictionary id %d is not defined", id));
+        }
+        final byte[] value = dictionary.get(id);
+        bs.reset(value, 0, value.length);
+        lastDictionaryId = id;
         return true;
     }
 
@@ -48,6 +48,9 @@ import io.deephaven.csv.util.Pair;
  * a reset method.
  * <li>Use a linked-list structure so that when all existing readers have move passed a block of data, that block can be
  * freed by the garbage collector without any explicit action taken by the reader.
+ * <li>Additionally count references to each block, so that when all existing readers have moved past it (or been
+ * closed), it is handed back to its {@link DenseStorageAllocator} right away. This matters for allocators like
+ * {@link DenseStorageAllocator#offHeap}, whose storage the garbage collector does not manage well.
  * </ol>
  *
  * If you are familiar with the structure of our inference, you may initially think that this reader-chasing-writer
@@ -81,14 +84,54 @@ import io.deephaven.csv.util.Pair;
 public final class DenseStorageWriter {
     /** Constructor */
     public static Pair<DenseStorageWriter, DenseStorageReader> create(final boolean concurrent) {
+        return create(concurrent, DenseStorageAllocator.heap());
+    }
+
+    /** Constructor, taking the storage for the queues from {@code allocator}. */
+    public static Pair<DenseStorageWriter, DenseStorageReader> create(final boolean concurrent,
+            final DenseStorageAllocator allocator) {
+        return create(concurrent, allocator, null);
+    }
+
+    /**
+     * Constructor, taking the storage for the queues from {@code allocator}, and reporting the data in flight to
+     * {@code governor}, if it is not null.
+     */
+    public static Pair<DenseStorageWriter, DenseStorageReader> create(final boolean concurrent,
+            final DenseStorageAllocator allocator, final MemoryGovernor governor) {
+        return create(concurrent, DenseStorageGeometry.DEFAULT, allocator, governor);
+    }
+
+    /**
+     * Constructor, with the block sizes given by {@code geometry}, taking the storage for the queues from
+     * {@code allocator}, and reporting the data in flight to {@code governor}, if it is not null.
+     */
+    public static Pair<DenseStorageWriter, DenseStorageReader> create(final boolean concurrent,
+            final DenseStorageGeometry geometry, final DenseStorageAllocator allocator,
+            final MemoryGovernor governor) {
+        return create(concurrent, geometry, allocator, governor, false);
+    }
+
+    /**
+     * Constructor, with the block sizes given by {@code geometry}, taking the storage for the queues from
+     * {@code allocator}, and reporting the data in flight to {@code governor}, if it is not null. If
+     * {@code dictionaryEncode} is set, repeated values are stored as references to a dictionary, as long as the column
+     * turns out to have few distinct values.
+     */
+    public static Pair<DenseStorageWriter, DenseStorageReader> create(final boolean concurrent,
+            final DenseStorageGeometry geometry, final DenseStorageAllocator allocator,
+            final MemoryGovernor governor, final boolean dictionaryEncode) {
+        final int maxUnobservedBlocks = concurrent ? geometry.maxUnobservedBlocks() : Integer.MAX_VALUE;
         final Pair<QueueWriter.IntWriter, QueueReader.IntReader> control =
-                QueueWriter.IntWriter.create(DenseStorageConstants.CONTROL_QUEUE_SIZE, concurrent);
+                QueueWriter.IntWriter.create(geometry.controlBlockSize(), maxUnobservedBlocks, allocator, governor);
         final Pair<QueueWriter.ByteWriter, QueueReader.ByteReader> bytes =
-                QueueWriter.ByteWriter.create(DenseStorageConstants.PACKED_QUEUE_SIZE, concurrent);
+                QueueWriter.ByteWriter.create(geometry.packedBlockSize(), maxUnobservedBlocks, allocator, governor);
         final Pair<QueueWriter.ByteArrayWriter, QueueReader.ByteArrayReader> byteArrays =
-                QueueWriter.ByteArrayWriter.create(DenseStorageConstants.ARRAY_QUEUE_SIZE, concurrent);
+                QueueWriter.ByteArrayWriter.create(geometry.arrayBlockSize(), maxUnobservedBlocks, allocator,
+                        governor);
 
-        final DenseStorageWriter writer = new DenseStorageWriter(control.first, bytes.first, byteArrays.first);
+        final DenseStorageWriter writer =
+                new DenseStorageWriter(geometry, dictionaryEncode, control.first, bytes.first, byteArrays.first);
         final DenseStorageReader reader = new DenseStorageReader(control.second, bytes.second, byteArrays.second);
         return new Pair<>(writer, reader);
     }
@@ -101,6 +144,10 @@ public final class DenseStorageWriter {
      * <li>&gt; 0: {@link DenseStorageWriter#byteWriter} (the number of chars is equal to this value)
      * <li>== 0: no bytes, so they're not stored anywhere. Will be interpreted as a ByteSlice with arbitrary byte data
      * and length 0.
+     * <li>&lt;= {@link DenseStorageConstants#FIRST_DICTIONARY_ID}, down to
+     * {@link DenseStorageConstants#DICTIONARY_DEFINE_BASE} (exclusive): a reference to a dictionary entry.
+     * <li>&lt;= {@link DenseStorageConstants#DICTIONARY_DEFINE_BASE}: a new dictionary entry, with its size encoded in
+     * the control value, and its bytes in {@link DenseStorageWriter#byteWriter}.
      * </ul>
      */
     private final QueueWriter.IntWriter controlWriter;
@@ -108,9 +155,34 @@ public final class DenseStorageWriter {
     private final QueueWriter.ByteWriter byteWriter;
     /** Byte sequences >= DENSE_THRESHOLD are stored here */
     private final QueueWriter.ByteArrayWriter largeByteArrayWriter;
+    /** The block sizes, and whether to adapt the packed block size to the cells we see. */
+    private final DenseStorageGeometry geometry;
+    /** Cached from {@link #geometry}. */
+    private final int largeThreshold;
+    /**
+     * The number of cells, other than large ones, appended so far. Used in adaptive mode. (These are not all packed
+     * into {@link #byteWriter}, as dictionary references aren't, but they all take a control entry.)
+     */
+    private long numSmallCells;
+    /** The number of bytes packed into {@link #byteWriter} so far. Used in adaptive mode. */
+    private long numPackedBytes;
+    /**
+     * The values we have given dictionary ids to, if we are dictionary encoding. Null if we are not, or have given up
+     * on it because the column has too many distinct values.
+     */
+    private CellDictionary dictionary;
+    /** The number of cells appended so far, until we have decided whether to keep the dictionary. */
+    private int numCellsBeforeDecision;
 
-    private DenseStorageWriter(QueueWriter.IntWriter controlWriter, QueueWriter.ByteWriter byteWriter,
+    private DenseStorageWriter(DenseStorageGeometry geometry, boolean dictionaryEncode,
+            QueueWriter.IntWriter controlWriter, QueueWriter.ByteWriter byteWriter,
             QueueWriter.ByteArrayWriter largeByteArrayWriter) {
+        this.geometry = geometry;
+        this.largeThreshold = geometry.largeThreshold();
+        this.dictionary = dictionaryEncode ? new CellDictionary() : null;
+        this.numCellsBeforeDecision = 0;
+        this.numSmallCells = 0;
+        this.numPackedBytes = 0;
         this.controlWriter = controlWriter;
         this.byteWriter = byteWriter;
         this.largeByteArrayWriter = largeByteArrayWriter;
@@ -121,45 +193,131 @@ public final class DenseStorageWriter {
      * queues, depending on its size.
      */
     public void append(final ByteSlice bs) {
-        final boolean fctrl, fdata;
+        final boolean fctrl;
+        boolean fbytes = false, farrays = false;
         final int size = bs.size();
-        if (size >= DenseStorageConstants.LARGE_THRESHOLD) {
+        if (size >= largeThreshold) {
             final byte[] data = new byte[size];
             bs.copyTo(data, 0);
-            fdata = largeByteArrayWriter.addByteArray(data);
+            farrays = largeByteArrayWriter.addByteArray(data);
+            flushDataIfControlFull();
             fctrl = controlWriter.addInt(DenseStorageConstants.LARGE_BYTE_ARRAY_SENTINEL);
         } else {
-            fdata = byteWriter.addBytes(bs);
-            fctrl = controlWriter.addInt(size);
+            numSmallCells++;
+            int id = -1;
+            int control = size;
+            if (dictionary != null && size != 0 && size <= DenseStorageConstants.MAX_DICTIONARY_VALUE_SIZE) {
+                final int hash = CellDictionary.hash(bs);
+                id = dictionary.find(bs, hash);
+                if (id >= 0) {
+                    control = DenseStorageConstants.FIRST_DICTIONARY_ID - id;
+                } else if (dictionary.size() < DenseStorageConstants.MAX_DICTIONARY_SIZE) {
+                    dictionary.add(bs, hash);
+                    control = DenseStorageConstants.DICTIONARY_DEFINE_BASE - size;
+                }
+                maybeAbandonDictionary();
+            }
+            if (id < 0) {
+                fbytes = byteWriter.addBytes(bs);
+                numPackedBytes += size;
+            }
+            flushDataIfControlFull();
+            fctrl = controlWriter.addInt(control);
         }
-        // If the control queue flushes, then flush the data queues, so the reader doesn't block for
-        // a long time waiting for some unflushed data queue. Conversely, if some data queue flushes, then
-        // flush the control queue for the same reasons. Importantly, we also want to do this because our
+        flushAfterAppend(fctrl, fbytes, farrays);
+    }
+
+    /**
+     * Once we have seen a control block's worth of cells, give up on the dictionary unless they repeated enough. Also
+     * give up as soon as it is clear that they won't have.
+     */
+    private void maybeAbandonDictionary() {
+        if (numCellsBeforeDecision < 0) {
+            return;
+        }
+        ++numCellsBeforeDecision;
+        final int blockSize = geometry.controlBlockSize();
+        final long distinctTimesRepeats = (long) dictionary.size() * DenseStorageConstants.MIN_DICTIONARY_REPEATS;
+        if (distinctTimesRepeats > blockSize
+                || (numCellsBeforeDecision >= blockSize && distinctTimesRepeats > numCellsBeforeDecision)) {
+            // The readers keep the entries they already have, which is harmless.
+            dictionary = null;
+        }
+        if (dictionary == null || numCellsBeforeDecision >= blockSize) {
+            numCellsBeforeDecision = -1;
+        }
+    }
+
+    /**
+     * If the control queue is about to flush (and so publish the control entries of the cells appended since it last
+     * did), publish those cells' text first. Readers rely on the text of every published control entry having been
+     * published already (see {@link DenseStorageReader#wouldWait()}).
+     */
+    private void flushDataIfControlFull() {
+        if (controlWriter.isFull()) {
+            byteWriter.flushWithoutWaiting();
+            largeByteArrayWriter.flushWithoutWaiting();
+        }
+    }
+
+    /** The flushing that {@link #append} does after writing to one or more of the queues. */
+    private void flushAfterAppend(final boolean fctrl, final boolean fbytes, final boolean farrays) {
+        // If any queue flushes, then flush the other queues, so the reader doesn't block for
+        // a long time waiting for some unflushed queue. Importantly, we also want to do this because our
         // flow control is based on limiting the number of data queue blocks outstanding
         // (per DenseStorageConstants.MAX_UNOBSERVED_BLOCKS). We want to flush the control queue every
         // time we fill a block on the data queue, so the consumer has a chance to consume the data. If we
         // did not do this, in some cases the data queue would run too far ahead, the flow control would be invoked
         // to block the writer, but the reader would also be blocked because it is still waiting on control queue
         // notifications, which haven't arrived because the latest control queue block isn't full and hasn't
-        // been flushed yet. See https://github.com/deephaven/deephaven-csv/issues/101.
+        // been flushed yet. See https://github.com/deephaven/deephaven-csv/issues/101. The same goes for the two
+        // data queues: if the packed queue filled several times while a large cell sat unflushed in the other
+        // one, the writer could block on the packed queue while the reader waited for the large cell. Flushing
+        // everything whenever anything flushes means that whatever the reader is waiting for was written after
+        // the last flush, so the nodes the writer is waiting on are ones the reader has already passed.
+        // That includes the queue that flushed: the add methods flush *before* writing, so the cell we just
+        // appended is not yet published there. If it were the control queue, this cell's bytes would be published
+        // without its control entry, and the reader could never get to them. And these flushes don't wait for the
+        // readers: a node published earlier in this same append may hold data whose control entries (or whose
+        // large arrays) are only published here, so the readers might not be able to get to it until we finish.
+        // The control queue goes last, so that a reader that finds a control entry can be sure that the text it
+        // refers to is there too, and so can tell whether it would have to wait by looking at the control queue
+        // alone. (See also flushDataIfControlFull.)
+        // The flow control happens in the flushes that fill a block, at the start of an append, which only wait on
+        // nodes published by earlier appends, and everything those nodes depend on was published along with them.
         // One might worry that it is inefficient to flush a queue that is not full, but (a) in practice it
         // doesn't happen very often and (b) in our queue code, partially-filled blocks can share
         // non-overlapping parts (slices) of their underlying storage array, so it's not particularly wasteful.
         // Put another way, flushing an empty queue does nothing; flushing a partially-filled queue allocates
         // a new QueueNode but not a new underlying data array; flushing a full queue will allocate a new
         // QueueNode and a new underlying data array (btw, that allocation is lazily deferred until the next write).
-        if (fctrl) {
-            byteWriter.flush();
-            largeByteArrayWriter.flush();
-        } else if (fdata) {
-            controlWriter.flush();
+        if (fctrl || fbytes || farrays) {
+            byteWriter.flushWithoutWaiting();
+            largeByteArrayWriter.flushWithoutWaiting();
+            controlWriter.flushWithoutWaiting();
+        }
+        if (fctrl && geometry.adaptive()) {
+            // A good moment to resize the packed blocks, as we have just started a control block.
+            byteWriter.setBlockSize(geometry.packedBlockSizeFor(numSmallCells, numPackedBytes));
         }
     }
 
+    /**
+     * Make everything appended so far available to the readers. This is done automatically as blocks fill up, but
+     * callers that are about to wait for the readers (see {@link MemoryGovernor#awaitCapacity()}) need to do it
+     * themselves.
+     */
+    public void flush() {
+        // The control queue goes last. See flushAfterAppend.
+        byteWriter.flush();
+        largeByteArrayWriter.flush();
+        controlWriter.flush();
+    }
+
     /** Call this method to indicate when you are finished writing to the queue. */
     public void finish() {
-        controlWriter.finish();
         byteWriter.finish();
         largeByteArrayWriter.finish();
+        controlWriter.finish();
     }
 }
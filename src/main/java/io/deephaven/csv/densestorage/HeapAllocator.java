@@ -0,0 +1,57 @@
+package io.deephaven.csv.densestorage;
+
+/** The default {@link DenseStorageAllocator}. See {@link DenseStorageAllocator#heap()}. */
+final class HeapAllocator implements DenseStorageAllocator {
+    static final HeapAllocator INSTANCE = new HeapAllocator();
+
+    private HeapAllocator() {}
+
+    @Override
+    public Block<byte[]> allocateBytes(final int capacity) {
+        return new HeapBlock<>(new byte[capacity], capacity);
+    }
+
+    @Override
+    public Block<int[]> allocateInts(final int capacity) {
+        return new HeapBlock<>(new int[capacity], capacity);
+    }
+
+    @Override
+    public Block<byte[][]> allocateByteArrays(final int capacity) {
+        return new HeapBlock<>(new byte[capacity][], capacity);
+    }
+
+    /** A {@link Block} backed by a Java array. Freeing it does nothing; the garbage collector reclaims it. */
+    static final class HeapBlock<TARRAY> extends Block<TARRAY> {
+        private final TARRAY array;
+        private final int capacity;
+
+        HeapBlock(final TARRAY array, final int capacity) {
+            this.array = array;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public TARRAY array() {
+            return array;
+        }
+
+        @Override
+        public void put(final int offset, final TARRAY src, final int srcOffset, final int length) {
+            System.arraycopy(src, srcOffset, array, offset, length);
+        }
+
+        @Override
+        public void get(final int offset, final TARRAY dest, final int destOffset, final int length) {
+            System.arraycopy(array, offset, dest, destOffset, length);
+        }
+
+        @Override
+        protected void free() {}
+    }
+}
@@ -0,0 +1,193 @@
+package io.deephaven.csv.densestorage;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps track of the memory used by all the {@link DenseStorageWriter}s of a read, and applies back-pressure to the
+ * tokenizer when it gets too far ahead of the parsers.
+ *
+ * <p>
+ * Two quantities are tracked. "In use" is the memory occupied by blocks that have been allocated and not yet freed or
+ * spilled (see {@link SpillingAllocator}); its peak is reported at the end of the read. "In flight" is the part of that
+ * data which has been handed to the readers but not yet reached by any of them. Back-pressure is based on the latter:
+ * the data that is kept for the second pass of type inference can't be released until its column has been parsed, so
+ * waiting for it to shrink could wait forever, whereas in-flight data is always eventually consumed as long as the
+ * tokenizer has flushed what it has written. (Keeping the former within bounds is the job of
+ * {@link SpillingAllocator}.)
+ *
+ * <p>
+ * The per-column limit of {@link DenseStorageConstants#MAX_UNOBSERVED_BLOCKS} still applies; this adds a limit across
+ * all the columns.
+ *
+ * <p>
+ * The in-flight count is updated on every block handoff of every column, so it is kept in an atomic rather than under
+ * a lock. Only the tokenizer's wait, which is rare, takes the lock. That is a {@link ReentrantLock} rather than a
+ * monitor, so that (on JDK 21+) a tokenizer running on a virtual thread doesn't pin its carrier thread while it waits.
+ *
+ * <p>
+ * As the one object shared by the tokenizer and every list of a read, the governor also carries the read's
+ * cancellation (see {@link #cancel}). The lists check for it whenever a block is handed over, in either direction. And
+ * it carries what the tokenizer may do instead of waiting for the parsers (see {@link #setHelper}).
+ */
+public final class MemoryGovernor {
+    private final long inFlightLimit;
+    /** Guarded by 'this'. */
+    private long bytesInUse = 0;
+    /** Guarded by 'this'. */
+    private long peakBytesInUse = 0;
+    private final AtomicLong bytesInFlight = new AtomicLong();
+    /**
+     * Set when {@link #bytesInFlight} exceeds the limit, and cleared by {@link #awaitCapacity()} once it has fallen to
+     * half the limit. The tokenizer checks it cheaply after every row.
+     */
+    private volatile boolean mustWait = false;
+    /** Guards the tokenizer's wait. */
+    private final ReentrantLock waitLock = new ReentrantLock();
+    /** Signalled when {@link #bytesInFlight} falls to half the limit. */
+    private final Condition hasCapacity = waitLock.newCondition();
+    /** Why the read was cancelled, or null if it hasn't been. */
+    private volatile Throwable cancellation = null;
+    /** See {@link #setHelper}. */
+    private volatile BooleanSupplier helper = null;
+
+    /**
+     * Constructor.
+     *
+     * @param inFlightLimit The most data, in bytes, that the tokenizer may write before the parsers have reached it.
+     *        Use {@link Long#MAX_VALUE} for no limit.
+     */
+    public MemoryGovernor(final long inFlightLimit) {
+        this.inFlightLimit = inFlightLimit;
+    }
+
+    /** Whether the tokenizer should call {@link #awaitCapacity()}. */
+    public boolean mustWait() {
+        return mustWait;
+    }
+
+    /**
+     * Wait until the in-flight data has fallen to half the limit. The caller must have flushed everything it has
+     * written, or else the readers may not be able to make the progress it is waiting for.
+     */
+    public void awaitCapacity() {
+        while (bytesInFlight.get() > inFlightLimit / 2 && help()) {
+            checkCancelled();
+        }
+        waitLock.lock();
+        try {
+            // We test the count itself rather than the flag, because the flag can be set just after a reader brought
+            // the count down (see #published).
+            while (bytesInFlight.get() > inFlightLimit / 2) {
+                checkCancelled();
+                try {
+                    hasCapacity.await();
+                } catch (InterruptedException ie) {
+                    checkCancelled();
+                    throw new RuntimeException("Thread interrupted", ie);
+                }
+            }
+            mustWait = false;
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Set what the tokenizer should do when it would otherwise wait for the parsers, either here or for a list that it
+     * is too far ahead on. {@code helper} should do some of the parsers' work on the calling thread, if there is any
+     * that is waiting for a thread, and return whether it did. This matters when the tokenizer holds a thread that the
+     * parsers might need: waiting for them could then wait forever.
+     */
+    public void setHelper(final BooleanSupplier helper) {
+        this.helper = helper;
+    }
+
+    /**
+     * Do some of the parsers' work on the calling thread, if there is a helper (see {@link #setHelper}) and it finds
+     * any. Called by the tokenizer in place of waiting for the parsers.
+     *
+     * @return Whether any work was done.
+     */
+    boolean help() {
+        final BooleanSupplier h = helper;
+        return h != null && h.getAsBoolean();
+    }
+
+    /**
+     * Cancel the read. From now on, {@link #checkCancelled()} throws, as do the tokenizer's and the readers' next block
+     * handoffs, and their waits for one another. This doesn't wake a thread that is parked waiting for a block; the
+     * caller should interrupt those. Only the first call has any effect.
+     *
+     * @param reason Why the read was cancelled. It becomes the cause of the exceptions thrown.
+     */
+    public void cancel(final Throwable reason) {
+        waitLock.lock();
+        try {
+            if (cancellation == null) {
+                cancellation = reason;
+            }
+            hasCapacity.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Throw a {@link CancellationException} if the read has been cancelled.
+     */
+    public void checkCancelled() {
+        final Throwable reason = cancellation;
+        if (reason != null) {
+            final CancellationException e = new CancellationException("Read cancelled");
+            e.initCause(reason);
+            throw e;
+        }
+    }
+
+    /** The memory, in bytes, occupied by blocks that have not been freed or spilled. */
+    public synchronized long bytesInUse() {
+        return bytesInUse;
+    }
+
+    /** The largest value {@link #bytesInUse()} has had. */
+    public synchronized long peakBytesInUse() {
+        return peakBytesInUse;
+    }
+
+    /** The data, in bytes, that has been written but not yet reached by a reader. */
+    public long bytesInFlight() {
+        return bytesInFlight.get();
+    }
+
+    synchronized void allocated(final long bytes) {
+        bytesInUse += bytes;
+        peakBytesInUse = Math.max(peakBytesInUse, bytesInUse);
+    }
+
+    synchronized void released(final long bytes) {
+        bytesInUse -= bytes;
+    }
+
+    void published(final long bytes) {
+        if (bytesInFlight.addAndGet(bytes) > inFlightLimit) {
+            mustWait = true;
+        }
+    }
+
+    void observed(final long bytes) {
+        // The flag is set before the tokenizer starts waiting, so if the tokenizer could be waiting for this
+        // decrement, we will see the flag set.
+        if (bytesInFlight.addAndGet(-bytes) <= inFlightLimit / 2 && mustWait) {
+            waitLock.lock();
+            try {
+                hasCapacity.signalAll();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+}
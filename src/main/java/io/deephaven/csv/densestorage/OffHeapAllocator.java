@@ -0,0 +1,149 @@
+package io.deephaven.csv.densestorage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link DenseStorageAllocator} whose byte and int blocks live in direct buffers. See
+ * {@link DenseStorageAllocator#offHeap(long)}.
+ *
+ * <p>
+ * Freed buffers are kept in free lists, keyed by size, up to {@link #maxCachedBytes} in total. Because the queues
+ * allocate blocks of only a few distinct sizes, nearly every allocation after the first few is satisfied from a free
+ * list rather than by allocating (and later garbage collecting) a new direct buffer.
+ */
+final class OffHeapAllocator implements DenseStorageAllocator {
+    private final long maxCachedBytes;
+    /** Free buffers, keyed by capacity in bytes. Guarded by 'this'. */
+    private final Map<Integer, ArrayDeque<ByteBuffer>> freeBuffers = new HashMap<>();
+    /** Total capacity of the buffers in {@link #freeBuffers}. Guarded by 'this'. */
+    private long cachedBytes = 0;
+
+    OffHeapAllocator(final long maxCachedBytes) {
+        if (maxCachedBytes < 0) {
+            throw new IllegalArgumentException("maxCachedBytes must be nonnegative, but is " + maxCachedBytes);
+        }
+        this.maxCachedBytes = maxCachedBytes;
+    }
+
+    @Override
+    public Block<byte[]> allocateBytes(final int capacity) {
+        return new DirectByteBlock(take(capacity), capacity);
+    }
+
+    @Override
+    public Block<int[]> allocateInts(final int capacity) {
+        return new DirectIntBlock(take(Math.multiplyExact(capacity, Integer.BYTES)), capacity);
+    }
+
+    @Override
+    public Block<byte[][]> allocateByteArrays(final int capacity) {
+        // Object references can't live off-heap. These blocks are small relative to the data they refer to anyway.
+        return HeapAllocator.INSTANCE.allocateByteArrays(capacity);
+    }
+
+    private ByteBuffer take(final int numBytes) {
+        synchronized (this) {
+            final ArrayDeque<ByteBuffer> free = freeBuffers.get(numBytes);
+            if (free != null && !free.isEmpty()) {
+                cachedBytes -= numBytes;
+                return free.pop();
+            }
+        }
+        return ByteBuffer.allocateDirect(numBytes).order(ByteOrder.nativeOrder());
+    }
+
+    private synchronized void give(final ByteBuffer buffer) {
+        final int numBytes = buffer.capacity();
+        if (cachedBytes + numBytes > maxCachedBytes) {
+            // Leave it to the garbage collector.
+            return;
+        }
+        freeBuffers.computeIfAbsent(numBytes, k -> new ArrayDeque<>()).push(buffer);
+        cachedBytes += numBytes;
+    }
+
+    private final class DirectByteBlock extends Block<byte[]> {
+        private final ByteBuffer buffer;
+        private final int capacity;
+
+        DirectByteBlock(final ByteBuffer buffer, final int capacity) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public byte[] array() {
+            return null;
+        }
+
+        @Override
+        public void put(final int offset, final byte[] src, final int srcOffset, final int length) {
+            // The writer and the readers use the block from different threads, so each access gets its own view
+            // (with its own position) of the buffer.
+            final ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.put(src, srcOffset, length);
+        }
+
+        @Override
+        public void get(final int offset, final byte[] dest, final int destOffset, final int length) {
+            final ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.get(dest, destOffset, length);
+        }
+
+        @Override
+        protected void free() {
+            give(buffer);
+        }
+    }
+
+    private final class DirectIntBlock extends Block<int[]> {
+        private final ByteBuffer buffer;
+        private final int capacity;
+
+        DirectIntBlock(final ByteBuffer buffer, final int capacity) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public int[] array() {
+            return null;
+        }
+
+        @Override
+        public void put(final int offset, final int[] src, final int srcOffset, final int length) {
+            final IntBuffer view = buffer.duplicate().order(ByteOrder.nativeOrder()).asIntBuffer();
+            view.position(offset);
+            view.put(src, srcOffset, length);
+        }
+
+        @Override
+        public void get(final int offset, final int[] dest, final int destOffset, final int length) {
+            final IntBuffer view = buffer.duplicate().order(ByteOrder.nativeOrder()).asIntBuffer();
+            view.position(offset);
+            view.get(dest, destOffset, length);
+        }
+
+        @Override
+        protected void free() {
+            give(buffer);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package io.deephaven.csv.densestorage;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link DenseStorageAllocator} that allocates Java arrays, like {@link HeapAllocator}, but keeps the arrays of freed
+ * blocks for reuse rather than leaving them to the garbage collector. See {@link DenseStorageAllocator#pooledHeap}.
+ *
+ * <p>
+ * A block is freed once every reader has moved past it (or been closed), which for a column parsed in one pass is
+ * shortly after it was written. Since the queues allocate blocks of only a few distinct sizes, a writer that needs a
+ * new block can nearly always take one that another column has just finished with.
+ */
+final class PooledHeapAllocator implements DenseStorageAllocator {
+    private final long maxCachedBytes;
+    /** Free arrays, keyed by length. Guarded by 'this'. */
+    private final Map<Integer, ArrayDeque<byte[]>> freeBytes = new HashMap<>();
+    /** Guarded by 'this'. */
+    private final Map<Integer, ArrayDeque<int[]>> freeInts = new HashMap<>();
+    /** Guarded by 'this'. */
+    private final Map<Integer, ArrayDeque<byte[][]>> freeByteArrays = new HashMap<>();
+    /** The total size of the free arrays. Guarded by 'this'. */
+    private long cachedBytes = 0;
+
+    PooledHeapAllocator(final long maxCachedBytes) {
+        if (maxCachedBytes < 0) {
+            throw new IllegalArgumentException("maxCachedBytes must be nonnegative, but is " + maxCachedBytes);
+        }
+        this.maxCachedBytes = maxCachedBytes;
+    }
+
+    @Override
+    public Block<byte[]> allocateBytes(final int capacity) {
+        final byte[] array = take(freeBytes, capacity, capacity);
+        return new PooledBlock<>(array != null ? array : new byte[capacity], capacity, freeBytes, capacity);
+    }
+
+    @Override
+    public Block<int[]> allocateInts(final int capacity) {
+        final long bytes = (long) capacity * Integer.BYTES;
+        final int[] array = take(freeInts, capacity, bytes);
+        return new PooledBlock<>(array != null ? array : new int[capacity], capacity, freeInts, bytes);
+    }
+
+    @Override
+    public Block<byte[][]> allocateByteArrays(final int capacity) {
+        final long bytes = (long) capacity * Long.BYTES;
+        final byte[][] array = take(freeByteArrays, capacity, bytes);
+        return new PooledBlock<>(array != null ? array : new byte[capacity][], capacity, freeByteArrays, bytes);
+    }
+
+    private synchronized <TARRAY> TARRAY take(final Map<Integer, ArrayDeque<TARRAY>> pool, final int capacity,
+            final long bytes) {
+        final ArrayDeque<TARRAY> free = pool.get(capacity);
+        if (free == null || free.isEmpty()) {
+            return null;
+        }
+        cachedBytes -= bytes;
+        return free.pop();
+    }
+
+    private synchronized <TARRAY> void give(final Map<Integer, ArrayDeque<TARRAY>> pool, final TARRAY array,
+            final int capacity, final long bytes) {
+        if (cachedBytes + bytes > maxCachedBytes) {
+            // Leave it to the garbage collector.
+            return;
+        }
+        pool.computeIfAbsent(capacity, k -> new ArrayDeque<>()).push(array);
+        cachedBytes += bytes;
+    }
+
+    private final class PooledBlock<TARRAY> extends Block<TARRAY> {
+        private final TARRAY array;
+        private final int capacity;
+        private final Map<Integer, ArrayDeque<TARRAY>> pool;
+        private final long bytes;
+
+        PooledBlock(final TARRAY array, final int capacity, final Map<Integer, ArrayDeque<TARRAY>> pool,
+                final long bytes) {
+            this.array = array;
+            this.capacity = capacity;
+            this.pool = pool;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public TARRAY array() {
+            return array;
+        }
+
+        @Override
+        public void put(final int offset, final TARRAY src, final int srcOffset, final int length) {
+            System.arraycopy(src, srcOffset, array, offset, length);
+        }
+
+        @Override
+        public void get(final int offset, final TARRAY dest, final int destOffset, final int length) {
+            System.arraycopy(array, offset, dest, destOffset, length);
+        }
+
+        @Override
+        protected void free() {
+            if (array instanceof Object[]) {
+                // Don't keep the large cells this block referred to alive.
+                Arrays.fill((Object[]) array, null);
+            }
+            give(pool, array, capacity, bytes);
+        }
+    }
+}
@@ -1,84 +1,402 @@
 package io.deephaven.csv.densestorage;
 
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 /**
  * Linked list node that holds data for a {@link DenseStorageWriter} or {@link DenseStorageReader}. All fields are
- * immutable except the "next" field. Synchronization for reading/writing the "next" field is managed by the
- * {@link DenseStorageWriter} and {@link DenseStorageReader}.
+ * immutable except the "next" field and the "observed" flag.
+ *
+ * <p>
+ * The list is a single-producer queue: the writer publishes a node by storing it in the volatile "next" field of the
+ * previous one, and readers pick it up from there. Neither side takes a lock to hand over a node. The set of live
+ * readers (whose count the writer retains each node's block for) only changes when a {@link QueueReader} is copied or
+ * closed; that takes the {@link Chain}'s lock, and keeps the writer out for the duration by a handshake on two volatile
+ * flags (see {@code Chain.lockOutWriter}). Only a writer that runs into such a change waits for the lock. A side that
+ * has nothing to do spins briefly, then yields, then parks, having first registered itself in its {@link Chain} so that
+ * the other side knows to unpark it. A reader may instead leave a task for the writer to run when it publishes the next
+ * node, and give up its thread (see {@link #runWhenNextPublished}); and a writer that would wait first does what it can
+ * of the readers' work (see {@link MemoryGovernor#help()}). The writer is kept from getting too far ahead of the
+ * readers by comparing the number of nodes it has published with the number that readers have observed, rather than by
+ * a semaphore.
+ *
+ * <p>
+ * The lock is a {@link ReentrantLock} rather than {@code synchronized}, so that (on JDK 21+) a virtual thread that has
+ * to wait for it doesn't pin its carrier thread.
  */
 public final class QueueNode<TARRAY> {
+    /**
+     * How many times a waiting thread re-checks its condition before it starts yielding. Spinning is pointless on a
+     * single processor, since the thread we are waiting for can't run while we spin.
+     */
+    private static final int SPIN_TRIES = Runtime.getRuntime().availableProcessors() > 1 ? 256 : 0;
+    /** How many times a waiting thread yields before it parks. */
+    private static final int YIELD_TRIES = 16;
+    /**
+     * How long, in nanoseconds, a thread parks for when another thread is already registered as the waiter. This only
+     * happens when several threads read the same list at once, which the library doesn't do itself.
+     */
+    private static final long CONTENDED_PARK_NANOS = 100_000;
+
+    // A field updater is made from a class literal, which can only name the raw type.
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<QueueNode> OBSERVED_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(QueueNode.class, "observed");
+
     public static <TARRAY> QueueNode<TARRAY> createInitial(int maxUnobservedBlocks) {
-        final Semaphore semaphore = new Semaphore(maxUnobservedBlocks);
-        return new QueueNode<>(semaphore, null, 0, 0, false);
+        return createInitial(maxUnobservedBlocks, null);
+    }
+
+    /**
+     * Create the sentinel node of a new linked list.
+     *
+     * @param maxUnobservedBlocks The most nodes the writer may append before a reader has reached them.
+     * @param governor If not null, the {@link MemoryGovernor} to report the list's in-flight data to.
+     */
+    public static <TARRAY> QueueNode<TARRAY> createInitial(int maxUnobservedBlocks, MemoryGovernor governor) {
+        final Chain chain = new Chain(maxUnobservedBlocks, governor);
+        return new QueueNode<>(chain, null, 0, 0, 0, false);
     }
 
     /**
-     * The shared semaphore which prevents the writer from getting too far ahead of the reader.
+     * State shared by all the nodes of one linked list.
      */
-    public final Semaphore semaphore;
-    public final TARRAY data;
+    static final class Chain {
+        private static final AtomicReferenceFieldUpdater<Chain, Thread> PARKED_WRITER_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(Chain.class, Thread.class, "parkedWriter");
+        private static final AtomicReferenceFieldUpdater<Chain, Thread> PARKED_READER_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(Chain.class, Thread.class, "parkedReader");
+        private static final AtomicReferenceFieldUpdater<Chain, Runnable> WAITING_TASK_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(Chain.class, Runnable.class, "waitingTask");
+
+        /** Serializes changes to the set of live readers. See {@link #lockOutWriter()}. */
+        private final ReentrantLock lock = new ReentrantLock();
+        /** Set by the writer while it publishes a node without the lock. */
+        private volatile boolean publishing = false;
+        /** Set while the set of live readers is being changed, under {@link #lock}. */
+        private volatile boolean changing = false;
+        /** The most nodes the writer may publish before a reader has observed them. */
+        private final long maxUnobserved;
+        /** If not null, the governor of the read this list belongs to. */
+        final MemoryGovernor governor;
+        /** The number of nodes published while the list had readers. Only written by the writer. */
+        private volatile long published = 0;
+        /** The number of those nodes that some reader has observed. */
+        private final AtomicLong observed = new AtomicLong();
+        /** The writer, if it is parked waiting for the readers to catch up. */
+        private volatile Thread parkedWriter = null;
+        /** A reader, if it is parked waiting for the writer to publish a node. */
+        private volatile Thread parkedReader = null;
+        /**
+         * What to run when the writer next publishes a node, if a reader has asked for that rather than wait. See
+         * {@link QueueNode#runWhenNextPublished}.
+         */
+        private volatile Runnable waitingTask = null;
+        /**
+         * The number of {@link QueueReader}s that are still reading this list. Every node appended holds a reference
+         * to its block on behalf of each of them. Only changed while the writer is locked out.
+         */
+        private volatile int liveReaders = 1;
+        /**
+         * Set once every reader has been closed. After that, nobody will observe new nodes, so we stop counting them
+         * as in flight or limiting how many there are. Only changed while the writer is locked out.
+         */
+        private volatile boolean abandoned = false;
+        /**
+         * Whether the writer holds back for the readers. While it is off (because the readers haven't started running,
+         * so waiting for them could wait forever), nodes are published as they are for an abandoned list. Only changed
+         * while the writer is locked out.
+         */
+        private volatile boolean flowControlled = true;
+
+        private Chain(final long maxUnobserved, final MemoryGovernor governor) {
+            this.maxUnobserved = maxUnobserved;
+            this.governor = governor;
+        }
+
+        /** Register a new reader positioned at {@code node}. It needs references to everything from there onward. */
+        void addReader(QueueNode<?> node) {
+            lockOutWriter();
+            try {
+                ++liveReaders;
+                for (; node != null; node = node.next) {
+                    if (node.data != null) {
+                        node.data.retain(1);
+                    }
+                }
+            } finally {
+                letWriterIn();
+            }
+        }
+
+        /** Unregister a reader positioned at {@code node}, releasing its references from there onward. */
+        void removeReader(QueueNode<?> node) {
+            lockOutWriter();
+            try {
+                --liveReaders;
+                if (liveReaders == 0) {
+                    abandoned = true;
+                    // The writer no longer needs to wait for anybody.
+                    unpark(parkedWriter);
+                }
+                for (; node != null; node = node.next) {
+                    node.releaseData();
+                    if (abandoned && node.next != null) {
+                        // Observe on behalf of the readers that will now never get here.
+                        node.markObserved();
+                    }
+                }
+            } finally {
+                letWriterIn();
+            }
+        }
+
+        /** See {@link QueueReader#setFlowControl}. */
+        void setFlowControlled(final boolean flowControlled) {
+            lockOutWriter();
+            try {
+                this.flowControlled = flowControlled;
+                if (!flowControlled) {
+                    unpark(parkedWriter);
+                }
+            } finally {
+                letWriterIn();
+            }
+        }
+
+        /**
+         * Take the lock, and wait for the writer to finish publishing any node it is in the middle of. Until
+         * {@link #letWriterIn()}, the writer publishes nothing, so we may walk to the end of the list and change the
+         * set of live readers without it racing us. This is a Dekker-style handshake: we set {@link #changing} and
+         * then read {@link #publishing}, while the writer sets {@link #publishing} and then reads {@link #changing}.
+         * Since all four accesses are volatile, at least one side sees the other's flag. If the writer sees ours, it
+         * backs off and waits for the lock instead; if we see its, we wait for it to finish, which it does without
+         * waiting for anything.
+         */
+        private void lockOutWriter() {
+            lock.lock();
+            changing = true;
+            while (publishing) {
+                Thread.yield();
+            }
+        }
+
+        private void letWriterIn() {
+            changing = false;
+            lock.unlock();
+        }
+
+        /** See {@link MemoryGovernor#checkCancelled()}. */
+        void checkCancelled() {
+            if (governor != null) {
+                governor.checkCancelled();
+            }
+        }
+
+        private boolean writerMayProceed() {
+            return abandoned || !flowControlled || published - observed.get() < maxUnobserved;
+        }
+
+        /**
+         * Called by the writer when it would otherwise wait for the readers. See {@link MemoryGovernor#help()}.
+         */
+        private boolean help() {
+            return governor != null && governor.help();
+        }
+    }
+
+    final Chain chain;
+    public final Block<TARRAY> data;
     public final int begin;
     public final int end;
+    /** The size, in bytes, of the data this node refers to, as reported to the {@link MemoryGovernor}. */
+    final long bytes;
     public final boolean isLast;
-    /** Readers and writers of this field have arranged to synchronize with each other. */
-    public QueueNode<TARRAY> next;
+    /** Written once, by the writer. Readers may read it at any time; use {@link #waitForNext()} to wait for it. */
+    public volatile QueueNode<TARRAY> next;
     /**
-     * Whether a reader has already observed the {@link QueueNode#next} field transitioning from non-null to null.
+     * Set to 1 by the first reader to observe the {@link QueueNode#next} field transitioning from null to non-null.
      */
-    private boolean observed;
+    private volatile int observed;
 
     /**
-     * Constructor. Sets this queue node to represent the half-open interval ['begin','end') of the array 'data'.
+     * Constructor. Sets this queue node to represent the half-open interval ['begin','end') of the block 'data'.
      */
-    private QueueNode(final Semaphore semaphore, TARRAY data, int begin, int end, boolean isLast) {
-        this.semaphore = semaphore;
+    private QueueNode(final Chain chain, Block<TARRAY> data, int begin, int end, long bytes, boolean isLast) {
+        this.chain = chain;
         this.data = data;
         this.begin = begin;
         this.end = end;
+        this.bytes = bytes;
         this.isLast = isLast;
         this.next = null;
     }
 
-    public QueueNode<TARRAY> appendNextMaybeWait(TARRAY data, int begin, int end, boolean isLast) {
-        try {
-            semaphore.acquire(1);
-        } catch (InterruptedException ie) {
-            throw new RuntimeException("Thread interrupted", ie);
+    /**
+     * Append a node representing the half-open interval ['begin','end') of the block 'data', waiting first if the
+     * writer is too far ahead of the readers (and {@code mayWait} is set).
+     *
+     * @param bytes The size of that data in bytes, for the {@link MemoryGovernor}.
+     */
+    public QueueNode<TARRAY> appendNextMaybeWait(Block<TARRAY> data, int begin, int end, long bytes,
+            boolean isLast, boolean mayWait) {
+        chain.checkCancelled();
+        if (mayWait) {
+            while (!chain.writerMayProceed() && chain.help()) {
+                chain.checkCancelled();
+            }
+            if (!chain.writerMayProceed()) {
+                await(chain, Chain.PARKED_WRITER_UPDATER, chain::writerMayProceed);
+            }
+        }
+        if (next != null) {
+            throw new RuntimeException("next is already set");
+        }
+        // New node sharing the same chain.
+        final QueueNode<TARRAY> newNode = new QueueNode<>(chain, data, begin, end, bytes, isLast);
+        // The set of live readers must not change while we publish the node. See Chain.lockOutWriter().
+        chain.publishing = true;
+        if (!chain.changing) {
+            try {
+                publish(newNode);
+            } finally {
+                chain.publishing = false;
+            }
+        } else {
+            // A reader is being copied or closed. Wait for that to finish.
+            chain.publishing = false;
+            chain.lock.lock();
+            try {
+                publish(newNode);
+            } finally {
+                chain.lock.unlock();
+            }
+        }
+        unpark(chain.parkedReader);
+        if (chain.waitingTask != null) {
+            final Runnable task = Chain.WAITING_TASK_UPDATER.getAndSet(chain, null);
+            if (task != null) {
+                task.run();
+            }
+        }
+        return newNode;
+    }
+
+    /** Publish {@code newNode} as the next node. The caller must have kept the set of live readers from changing. */
+    private void publish(final QueueNode<TARRAY> newNode) {
+        if (newNode.data != null) {
+            newNode.data.retain(chain.liveReaders);
         }
-        synchronized (this) {
-            if (next != null) {
-                throw new RuntimeException("next is already set");
+        if (chain.abandoned || !chain.flowControlled) {
+            // No reader will ever observe it, or we are not keeping count.
+            observed = 1;
+        } else {
+            // Counting the node before publishing it keeps the observed count from getting ahead of this one.
+            ++chain.published;
+            if (chain.governor != null) {
+                chain.governor.published(newNode.bytes);
             }
-            // New node sharing the same semaphore.
-            next = new QueueNode<>(semaphore, data, begin, end, isLast);
-            notifyAll();
-            return next;
         }
+        next = newNode;
     }
 
     /**
-     * Get a non-null 'next' field. Will block until the next field is non-null. If this is the first time
+     * Arrange for {@code task} to be run, on the writer's thread, when the writer publishes the node after this one,
+     * rather than wait for it. This is for readers that would rather give up their thread, and are caught up to this
+     * node. Only one task at a time may be waiting on a list.
      *
-     * @return True if this call was the first to observe the {@link QueueNode#next} field going from null to non-null.
-     *         Otherwise returns false.
+     * @return false, with nothing arranged, if the next node has already been published, in which case there is
+     *         nothing to wait for. Otherwise true.
+     */
+    public boolean runWhenNextPublished(final Runnable task) {
+        if (next != null) {
+            return false;
+        }
+        chain.waitingTask = task;
+        // The writer publishes the node and then looks for a task, so if it has published the node in the meantime,
+        // either it sees our task or we see the node. In the latter case we take the task back, unless the writer
+        // has already done so (and is running it).
+        return next == null || !Chain.WAITING_TASK_UPDATER.compareAndSet(chain, task, null);
+    }
+
+    /**
+     * Get a non-null 'next' field, waiting for the writer to publish it if necessary. The first reader to get it
+     * accounts for it as observed, which lets the writer proceed if it was waiting for that.
      */
     public QueueNode<TARRAY> waitForNext() {
-        boolean needsRelease;
-        synchronized (this) {
-            while (next == null) {
-                try {
-                    wait();
-                } catch (InterruptedException ie) {
-                    throw new RuntimeException("Thread interrupted", ie);
+        chain.checkCancelled();
+        QueueNode<TARRAY> result = next;
+        if (result == null) {
+            await(chain, Chain.PARKED_READER_UPDATER, () -> next != null);
+            result = next;
+        }
+        if (observed == 0) {
+            markObserved();
+        }
+        return result;
+    }
+
+    /** Mark 'next' as observed, if no reader has observed it yet. Caller must have checked that 'next' is set. */
+    private void markObserved() {
+        if (!OBSERVED_UPDATER.compareAndSet(this, 0, 1)) {
+            return;
+        }
+        if (chain.governor != null) {
+            chain.governor.observed(next.bytes);
+        }
+        chain.observed.incrementAndGet();
+        unpark(chain.parkedWriter);
+    }
+
+    /** Release one reader's reference to this node's block. */
+    void releaseData() {
+        if (data != null) {
+            data.release();
+        }
+    }
+
+    /**
+     * Wait until {@code ready} holds. We spin for a short while, since the other side is usually close behind; then we
+     * yield; then we register ourselves in {@code slot} and park. The other side changes the state that {@code ready}
+     * looks at and then unparks whatever thread is in the slot. Because both the slot and that state are volatile, and
+     * we re-check {@code ready} after registering, the other side either sees us in the slot or we see its change.
+     */
+    private static void await(final Chain chain, final AtomicReferenceFieldUpdater<Chain, Thread> slot,
+            final BooleanSupplier ready) {
+        for (int tries = 0; tries < SPIN_TRIES + YIELD_TRIES; ++tries) {
+            if (ready.getAsBoolean()) {
+                return;
+            }
+            if (tries >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+        final Thread self = Thread.currentThread();
+        while (!ready.getAsBoolean()) {
+            if (slot.get(chain) == self || slot.compareAndSet(chain, null, self)) {
+                if (!ready.getAsBoolean()) {
+                    LockSupport.park(chain);
                 }
+                slot.compareAndSet(chain, self, null);
+            } else {
+                // Somebody else holds the slot, and nobody will unpark us, so we poll.
+                LockSupport.parkNanos(chain, CONTENDED_PARK_NANOS);
+            }
+            if (Thread.interrupted()) {
+                // If we were interrupted because the read was cancelled, say so.
+                chain.checkCancelled();
+                throw new RuntimeException("Thread interrupted", new InterruptedException());
             }
-            needsRelease = !observed;
-            observed = true;
         }
-        if (needsRelease) {
-            semaphore.release();
+    }
+
+    private static void unpark(final Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
         }
-        return next;
     }
 }
@@ -3,12 +3,22 @@ package io.deephaven.csv.densestorage;
 import io.deephaven.csv.containers.ByteSlice;
 import io.deephaven.csv.util.MutableInt;
 
+import java.lang.reflect.Array;
+import java.util.function.IntFunction;
+
 /** Companion to the {@link QueueWriter}. See the documentation there for details. */
 public class QueueReader<TARRAY> {
     /** Current node. */
     private QueueNode<TARRAY> node;
-    /** Current block we are reading from, extracted from the current node. */
+    /**
+     * Current block we are reading from, extracted from the current node. If the node's block is not backed by an
+     * array, this is {@link #scratch}, holding a copy of the node's data.
+     */
     protected TARRAY genericBlock;
+    /** Lambda for allocating scratch arrays. */
+    private final IntFunction<TARRAY> arrayFactory;
+    /** Our private copy of the data of the current node, when its block is not backed by an array. */
+    private TARRAY scratch;
     /**
      * Current offset in the current block. Updated as we read data. When the value reaches "end", then data in this
      * block is exhausted.
@@ -18,18 +28,95 @@ public class QueueReader<TARRAY> {
     protected int end;
 
     /** Constructor. */
-    protected QueueReader(QueueNode<TARRAY> node) {
+    protected QueueReader(QueueNode<TARRAY> node, final IntFunction<TARRAY> arrayFactory) {
         this.node = node;
         this.genericBlock = null;
+        this.arrayFactory = arrayFactory;
+        this.scratch = null;
         this.current = 0;
         this.end = 0;
     }
 
     protected QueueReader(final QueueReader<TARRAY> other) {
         this.node = other.node;
-        this.genericBlock = other.genericBlock;
+        this.arrayFactory = other.arrayFactory;
+        if (other.scratch != null && other.genericBlock == other.scratch) {
+            // The scratch array is private to each reader, so we need our own copy.
+            final int length = Array.getLength(other.scratch);
+            this.scratch = arrayFactory.apply(length);
+            System.arraycopy(other.scratch, 0, this.scratch, 0, length);
+            this.genericBlock = this.scratch;
+        } else {
+            this.scratch = null;
+            this.genericBlock = other.genericBlock;
+        }
         this.current = other.current;
         this.end = other.end;
+        if (node != null) {
+            node.chain.addReader(node);
+        }
+    }
+
+    /**
+     * Stop reading. This releases our hold on the data we have not yet read, so that it can be freed without waiting
+     * for the garbage collector. Readers that run to the end of the data don't need to be closed (though it is harmless
+     * to do so). Calling this more than once has no further effect.
+     */
+    public void close() {
+        if (node != null) {
+            node.chain.removeReader(node);
+        }
+        node = null;
+        genericBlock = null;
+        scratch = null;
+        current = 0;
+        end = 0;
+    }
+
+    /**
+     * Whether the writer may wait for the readers of this list to catch up. It is on by default. Turn it off while the
+     * readers are not running (for instance while the task that will read the list waits for a thread), as otherwise
+     * the writer could wait for them forever, and back on once they are. While it is off, the writer doesn't hold back,
+     * and the data it writes doesn't count against the {@link MemoryGovernor}'s limit.
+     */
+    void setFlowControl(final boolean enabled) {
+        if (node != null) {
+            node.chain.setFlowControlled(enabled);
+        }
+    }
+
+    /**
+     * Declare that this reader will go back over the data that {@code leader}, a reader of the same list that is
+     * further along, has moved past. Those blocks are now kept only for this reader, so we tell them so (see
+     * {@link Block#keptForSecondPass}), which gives them a chance to shrink while they wait.
+     */
+    void keepForSecondPass(final QueueReader<TARRAY> leader) {
+        // The leader is still reading the block of its current node (which earlier nodes may share).
+        final QueueNode<TARRAY> stop = leader.node;
+        final Block<TARRAY> inUse = stop != null ? stop.data : null;
+        for (QueueNode<TARRAY> n = node; n != null && n != stop; n = n.next) {
+            if (n.data != null && n.data != inUse) {
+                n.data.keptForSecondPass();
+            }
+        }
+    }
+
+    /**
+     * Whether getting the next {@code size} elements would have to wait for the writer to publish more data. If not,
+     * they are available now, or the list has ended.
+     */
+    boolean wouldWait(final int size) {
+        return current + size > end && node != null && !node.isLast && node.next == null;
+    }
+
+    /**
+     * Arrange for {@code task} to run once the writer has published more data, rather than wait for it. See
+     * {@link QueueNode#runWhenNextPublished}.
+     *
+     * @return false, with nothing arranged, if there is no need to wait. Otherwise true.
+     */
+    boolean runWhenPublished(final Runnable task) {
+        return node != null && node.runWhenNextPublished(task);
     }
 
     /**
@@ -67,18 +154,35 @@ public class QueueReader<TARRAY> {
             throw new RuntimeException("Logic error: slice straddled block");
         }
         while (current == end) {
+            if (node == null) {
+                // Already exhausted, or closed.
+                return false;
+            }
             if (node.isLast) {
+                node.releaseData();
                 // Hygeine.
                 node = null;
                 genericBlock = null;
+                scratch = null;
                 current = 0;
                 end = 0;
                 return false;
             }
+            final QueueNode<TARRAY> prev = node;
             node = node.waitForNext();
-            genericBlock = node.data;
+            // We are done with the previous node, so we let go of its block.
+            prev.releaseData();
             current = node.begin;
             end = node.end;
+            genericBlock = node.data != null ? node.data.array() : null;
+            if (genericBlock == null && current != end) {
+                // The block isn't backed by an array, so we copy the part we need to our scratch array.
+                if (scratch == null || Array.getLength(scratch) < end) {
+                    scratch = arrayFactory.apply(node.data.capacity());
+                }
+                node.data.get(current, scratch, current, end - current);
+                genericBlock = scratch;
+            }
         }
         if (end - current < size) {
             throw new RuntimeException(
@@ -98,12 +202,12 @@ public class QueueReader<TARRAY> {
 
         /** Constructor. */
         public ByteReader(final QueueNode<byte[]> head) {
-            super(head);
+            super(head, byte[]::new);
         }
 
         private ByteReader(final ByteReader other) {
             super(other);
-            typedBlock = other.typedBlock;
+            typedBlock = genericBlock;
         }
 
         public ByteReader copy() {
@@ -140,12 +244,12 @@ public class QueueReader<TARRAY> {
 
         /** Constructor. */
         public IntReader(QueueNode<int[]> head) {
-            super(head);
+            super(head, int[]::new);
         }
 
         private IntReader(final IntReader other) {
             super(other);
-            typedBlock = other.typedBlock;
+            typedBlock = genericBlock;
         }
 
         public IntReader copy() {
@@ -179,12 +283,12 @@ public class QueueReader<TARRAY> {
         private byte[][] typedBlock;
 
         public ByteArrayReader(final QueueNode<byte[][]> head) {
-            super(head);
+            super(head, byte[][]::new);
         }
 
         private ByteArrayReader(final ByteArrayReader other) {
             super(other);
-            typedBlock = other.typedBlock;
+            typedBlock = genericBlock;
         }
 
         public ByteArrayReader copy() {
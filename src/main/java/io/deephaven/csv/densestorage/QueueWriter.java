@@ -3,6 +3,7 @@ package io.deephaven.csv.densestorage;
 import io.deephaven.csv.containers.ByteSlice;
 import io.deephaven.csv.util.Pair;
 
+import java.lang.reflect.Array;
 import java.util.function.IntFunction;
 
 /**
@@ -23,12 +24,28 @@ import java.util.function.IntFunction;
 public class QueueWriter<TARRAY> {
     /** Tail of the linked list. We append here when we flush. */
     protected QueueNode<TARRAY> tail;
-    /** Size of the chunks we allocate that we pack data into. */
-    protected final int blockSize;
-    /** Lambda for allocating arrays for our chunks. */
+    /** Size of the chunks we allocate that we pack data into. Changing it affects the next block allocated. */
+    protected int blockSize;
+    /** The size in bytes of each element, for reporting to the {@link MemoryGovernor}. */
+    private final int elementBytes;
+    /**
+     * Bytes written since the last flush beyond what {@link #elementBytes} accounts for. Subclasses whose elements
+     * refer to other data add its size here.
+     */
+    protected long extraBytes;
+    /** Lambda for allocating blocks for our chunks. */
+    private final IntFunction<Block<TARRAY>> blockFactory;
+    /** Lambda for allocating arrays, used for staging when our blocks aren't backed by arrays. */
     private final IntFunction<TARRAY> arrayFactory;
     /** Current block we writing to. When we flush, we will write it to a new linked list node. */
+    private Block<TARRAY> block;
+    /**
+     * The array our subclasses write into. If {@link #block} is backed by an array, this is that array. Otherwise it is
+     * a staging array, whose contents are copied to the block when we flush.
+     */
     private TARRAY genericBlock;
+    /** A staging array, kept so it can be reused across blocks. */
+    private TARRAY stagingArray;
     /**
      * Start of the current block. This is typically 0, but not always. If the caller does an early flush (before the
      * block is filled), you can end up with multiple linked list nodes sharing different segments (slices) of the same
@@ -40,17 +57,22 @@ public class QueueWriter<TARRAY> {
      * block is exhausted.
      */
     protected int current;
-    /** End of the current block. The same as genericBlock.length. */
+    /** End of the current block. The same as the block's capacity. */
     protected int end;
 
     /** Constructor. */
-    protected QueueWriter(final int blockSize, final IntFunction<TARRAY> arrayFactory, final boolean concurrent) {
-        final int maxUnobservedBlocks = concurrent ? DenseStorageConstants.MAX_UNOBSERVED_BLOCKS : Integer.MAX_VALUE;
+    protected QueueWriter(final int blockSize, final int elementBytes, final IntFunction<Block<TARRAY>> blockFactory,
+            final IntFunction<TARRAY> arrayFactory, final int maxUnobservedBlocks, final MemoryGovernor governor) {
         // Creating the linked list with a sentinel object makes linked list manipulation code simpler.
-        this.tail = QueueNode.createInitial(maxUnobservedBlocks);
+        this.tail = QueueNode.createInitial(maxUnobservedBlocks, governor);
         this.blockSize = blockSize;
+        this.elementBytes = elementBytes;
+        this.extraBytes = 0;
+        this.blockFactory = blockFactory;
         this.arrayFactory = arrayFactory;
+        this.block = null;
         this.genericBlock = null;
+        this.stagingArray = null;
         this.begin = 0;
         this.current = 0;
         this.end = 0;
@@ -58,19 +80,34 @@ public class QueueWriter<TARRAY> {
 
     /** Caller is finished writing. */
     public void finish() {
-        flush(true);
-        genericBlock = null; // hygeine
+        flush(true, true);
+        releaseBlock();
+        stagingArray = null; // hygeine
         begin = 0;
         current = 0;
         end = 0;
     }
 
+    /** Set the size of the blocks allocated from now on. */
+    void setBlockSize(final int blockSize) {
+        this.blockSize = blockSize;
+    }
+
     /**
      * This supports an "early flush" for callers like {@link DenseStorageWriter} who want to flush all their queues
      * from time to time.
      */
     public void flush() {
-        flush(false);
+        flush(false, true);
+    }
+
+    /**
+     * Like {@link #flush()}, but without waiting for the readers if the writer is too far ahead of them. This is for
+     * callers that are publishing data the readers may need in order to catch up; the wait happens at the next flush
+     * that fills a block.
+     */
+    void flushWithoutWaiting() {
+        flush(false, false);
     }
 
     /**
@@ -78,8 +115,9 @@ public class QueueWriter<TARRAY> {
      * or when the data is full.
      *
      * @param isLast Whether this is the last node in the linked list.
+     * @param mayWait Whether to wait if the writer is too far ahead of the readers.
      */
-    private void flush(boolean isLast) {
+    private void flush(boolean isLast, boolean mayWait) {
         // Sometimes our users ask us to flush even if there is nothing to flush.
         // If the block is an "isLast" block, we need to flush it regardless of whether it contains
         // data. Otherwise (if the block is not an "isLast" block), we only flush it if it
@@ -89,7 +127,13 @@ public class QueueWriter<TARRAY> {
             return;
         }
 
-        tail = tail.appendNextMaybeWait(genericBlock, begin, current, isLast);
+        if (block != null && genericBlock != block.array()) {
+            // Our subclass wrote to the staging array. Copy what it wrote to the block before we publish it.
+            block.put(begin, genericBlock, begin, current - begin);
+        }
+        final long bytes = (long) (current - begin) * elementBytes + extraBytes;
+        tail = tail.appendNextMaybeWait(block, begin, current, bytes, isLast, mayWait);
+        extraBytes = 0;
         // If this is an early flush (before the block was filled), the next node may share
         // the same underlying storage array (but disjoint segments of that array) as the current node.
         // To accomplish this, we just advance "begin" to "current" here. At this point in the logic
@@ -120,27 +164,47 @@ public class QueueWriter<TARRAY> {
      * allocated is guaranteed to have at be of size at least 'sizeNeeded'.
      */
     protected final TARRAY flushAndAllocate(int sizeNeeded) {
-        flush(false);
+        flush(false, true);
+        releaseBlock();
         final int capacity = Math.max(blockSize, sizeNeeded);
-        genericBlock = arrayFactory.apply(capacity);
+        block = blockFactory.apply(capacity);
+        genericBlock = block.array();
+        if (genericBlock == null) {
+            if (stagingArray == null || Array.getLength(stagingArray) < capacity) {
+                stagingArray = arrayFactory.apply(capacity);
+            }
+            genericBlock = stagingArray;
+        }
         begin = 0;
         current = 0;
         end = capacity;
         return genericBlock;
     }
 
+    /** Drop the writer's own reference to the current block. The nodes that refer to it hold their own. */
+    private void releaseBlock() {
+        if (block != null) {
+            block.sealed();
+            block.release();
+        }
+        block = null;
+        genericBlock = null;
+    }
+
     /** A QueueWriter specialized for bytes. */
     public static final class ByteWriter extends QueueWriter<byte[]> {
-        public static Pair<ByteWriter, QueueReader.ByteReader> create(final int blockSize, final boolean concurrent) {
-            final ByteWriter writer = new ByteWriter(blockSize, concurrent);
+        public static Pair<ByteWriter, QueueReader.ByteReader> create(final int blockSize,
+                final int maxUnobservedBlocks, final DenseStorageAllocator allocator, final MemoryGovernor governor) {
+            final ByteWriter writer = new ByteWriter(blockSize, maxUnobservedBlocks, allocator, governor);
             final QueueReader.ByteReader reader = new QueueReader.ByteReader(writer.tail);
             return new Pair<>(writer, reader);
         }
 
         private byte[] typedBlock = null;
 
-        private ByteWriter(final int blockSize, final boolean concurrent) {
-            super(blockSize, byte[]::new, concurrent);
+        private ByteWriter(final int blockSize, final int maxUnobservedBlocks, final DenseStorageAllocator allocator,
+                final MemoryGovernor governor) {
+            super(blockSize, 1, allocator::allocateBytes, byte[]::new, maxUnobservedBlocks, governor);
         }
 
         /**
@@ -165,16 +229,23 @@ public class QueueWriter<TARRAY> {
 
     /** A QueueWriter specialized for ints. */
     public static final class IntWriter extends QueueWriter<int[]> {
-        public static Pair<IntWriter, QueueReader.IntReader> create(final int blockSize, final boolean concurrent) {
-            final IntWriter writer = new IntWriter(blockSize, concurrent);
+        public static Pair<IntWriter, QueueReader.IntReader> create(final int blockSize, final int maxUnobservedBlocks,
+                final DenseStorageAllocator allocator, final MemoryGovernor governor) {
+            final IntWriter writer = new IntWriter(blockSize, maxUnobservedBlocks, allocator, governor);
             final QueueReader.IntReader reader = new QueueReader.IntReader(writer.tail);
             return new Pair<>(writer, reader);
         }
 
         private int[] typedBlock = null;
 
-        private IntWriter(final int blockSize, final boolean concurrent) {
-            super(blockSize, int[]::new, concurrent);
+        private IntWriter(final int blockSize, final int maxUnobservedBlocks, final DenseStorageAllocator allocator,
+                final MemoryGovernor governor) {
+            super(blockSize, Integer.BYTES, allocator::allocateInts, int[]::new, maxUnobservedBlocks, governor);
+        }
+
+        /** Whether the next {@link #addInt} will flush the current block before it writes. */
+        boolean isFull() {
+            return current == end;
         }
 
         /**
@@ -195,16 +266,18 @@ public class QueueWriter<TARRAY> {
     /** A QueueWriter specialized for byte arrays. */
     public static final class ByteArrayWriter extends QueueWriter<byte[][]> {
         public static Pair<ByteArrayWriter, QueueReader.ByteArrayReader> create(final int blockSize,
-                final boolean concurrent) {
-            final ByteArrayWriter writer = new ByteArrayWriter(blockSize, concurrent);
+                final int maxUnobservedBlocks, final DenseStorageAllocator allocator, final MemoryGovernor governor) {
+            final ByteArrayWriter writer = new ByteArrayWriter(blockSize, maxUnobservedBlocks, allocator, governor);
             final QueueReader.ByteArrayReader reader = new QueueReader.ByteArrayReader(writer.tail);
             return new Pair<>(writer, reader);
         }
 
         private byte[][] block = null;
 
-        private ByteArrayWriter(int blockSize, final boolean concurrent) {
-            super(blockSize, byte[][]::new, concurrent);
+        private ByteArrayWriter(int blockSize, final int maxUnobservedBlocks, final DenseStorageAllocator allocator,
+                final MemoryGovernor governor) {
+            super(blockSize, Long.BYTES, allocator::allocateByteArrays, byte[][]::new, maxUnobservedBlocks,
+                    governor);
         }
 
         /**
@@ -218,6 +291,7 @@ public class QueueWriter<TARRAY> {
                 block = flushAndAllocate(1);
             }
             block[current++] = value;
+            extraBytes += value.length;
             return flushHappened;
         }
     }
@@ -0,0 +1,656 @@
+package io.deephaven.csv.densestorage;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link DenseStorageAllocator} that keeps the blocks of a read within a memory budget by spilling them to a
+ * temporary file. It wraps another allocator, which provides the in-memory storage.
+ *
+ * <p>
+ * Blocks become candidates for spilling once they are sealed (that is, once their writer has finished with them).
+ * Whenever the sealed blocks still in memory add up to more than the budget, the oldest ones are written to the spill
+ * file and their in-memory storage is given up. This suits the common case where a column needs two passes for type
+ * inference: the first reader keeps up with the writer, while the second reader, which has not started yet, is what
+ * keeps the old blocks alive. When a reader reaches a spilled block, it pages the block back in from the spill file,
+ * one node at a time. Blocks that are freed (because every reader has moved past them) no longer count against the
+ * budget, whether they were spilled or not.
+ *
+ * <p>
+ * Space in the spill file is not reused. The file is created on the first spill and deleted by {@link #close()}.
+ *
+ * <p>
+ * Optionally, blocks that are retained for another reader are compressed (see {@link BlockCodec}). This happens once
+ * type inference knows that a column needs a second pass and is going on to try another parser: the blocks the first
+ * pass has already read are then kept only for the second, and are compressed in the meantime (see
+ * {@link QueueReader#keepForSecondPass}). Nothing is compressed before that is known, so columns that are parsed in one
+ * pass are never compressed. Compression happens on the parser's thread, not the tokenizer's. A compressed block
+ * counts against the budget at its compressed size, and if spilled, is spilled compressed. The reader that takes the
+ * second pass decompresses the whole block, and keeps the result until the block is freed or spilled.
+ *
+ * <p>
+ * If given a {@link MemoryGovernor}, the allocator reports to it the memory its blocks occupy while they are in memory.
+ *
+ * <p>
+ * The locks here are {@link ReentrantLock}s rather than monitors because they are held across file I/O, which would
+ * otherwise (on JDK 21+) pin the carrier thread of a virtual thread waiting for them.
+ */
+public final class SpillingAllocator implements DenseStorageAllocator, Closeable {
+    private final DenseStorageAllocator inner;
+    private final long memoryBudget;
+    private final Path spillDirectory;
+    private final MemoryGovernor governor;
+    private final boolean compress;
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Sealed blocks that are still in memory, oldest first. Guarded by {@link #lock}. */
+    private final LinkedHashSet<SpillableBlock<?>> residentBlocks = new LinkedHashSet<>();
+    /** The total size of {@link #residentBlocks}. Guarded by {@link #lock}. */
+    private long residentBytes = 0;
+    /** Created on the first spill. Guarded by {@link #lock}. */
+    private FileChannel spillFile = null;
+    /** The amount of {@link #spillFile} handed out so far. Guarded by {@link #lock}. */
+    private long spillFileSize = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param inner The allocator that provides the in-memory storage.
+     * @param memoryBudget The most memory, in bytes, that sealed blocks may occupy before they are spilled.
+     * @param spillDirectory The directory to create the spill file in. If null, the default temporary-file directory
+     *        is used.
+     * @param governor If not null, the {@link MemoryGovernor} to report memory use to.
+     */
+    public SpillingAllocator(final DenseStorageAllocator inner, final long memoryBudget,
+            @Nullable final Path spillDirectory, @Nullable final MemoryGovernor governor) {
+        this(inner, memoryBudget, spillDirectory, governor, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param inner The allocator that provides the in-memory storage.
+     * @param memoryBudget The most memory, in bytes, that sealed blocks may occupy before they are spilled.
+     * @param spillDirectory The directory to create the spill file in. If null, the default temporary-file directory
+     *        is used.
+     * @param governor If not null, the {@link MemoryGovernor} to report memory use to.
+     * @param compress Whether to compress blocks that are retained for another reader.
+     */
+    public SpillingAllocator(final DenseStorageAllocator inner, final long memoryBudget,
+            @Nullable final Path spillDirectory, @Nullable final MemoryGovernor governor, final boolean compress) {
+        this.inner = inner;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.governor = governor;
+        this.compress = compress;
+    }
+
+    @Override
+    public Block<byte[]> allocateBytes(final int capacity) {
+        return new SpillableBytes(inner.allocateBytes(capacity), capacity, capacity);
+    }
+
+    @Override
+    public Block<int[]> allocateInts(final int capacity) {
+        return new SpillableInts(inner.allocateInts(capacity), capacity, (long) capacity * Integer.BYTES);
+    }
+
+    @Override
+    public Block<byte[][]> allocateByteArrays(final int capacity) {
+        return new SpillableByteArrays(inner.allocateByteArrays(capacity), capacity, (long) capacity * Long.BYTES);
+    }
+
+    /** The number of bytes written to the spill file so far. */
+    public long bytesSpilled() {
+        lock.lock();
+        try {
+            return spillFileSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Deletes the spill file. Nothing may use the blocks handed out by this allocator afterwards. */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (spillFile != null) {
+                spillFile.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSealed(final SpillableBlock<?> block) {
+        final List<SpillableBlock<?>> victims = new ArrayList<>();
+        lock.lock();
+        try {
+            residentBlocks.add(block);
+            residentBytes += block.memoryBytes;
+            final Iterator<SpillableBlock<?>> it = residentBlocks.iterator();
+            while (residentBytes > memoryBudget && it.hasNext()) {
+                final SpillableBlock<?> victim = it.next();
+                it.remove();
+                residentBytes -= victim.memoryBytes;
+                victims.add(victim);
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Do the I/O without holding our lock. This runs on the writer's thread, which, as a side effect, slows the
+        // writer down while we catch up.
+        for (final SpillableBlock<?> victim : victims) {
+            victim.spill();
+        }
+    }
+
+    private void onFreed(final SpillableBlock<?> block) {
+        lock.lock();
+        try {
+            if (residentBlocks.remove(block)) {
+                residentBytes -= block.memoryBytes;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The block now occupies {@code memoryBytes} rather than what it did. */
+    private void onResized(final SpillableBlock<?> block, final long memoryBytes) {
+        lock.lock();
+        try {
+            if (residentBlocks.contains(block)) {
+                residentBytes += memoryBytes - block.memoryBytes;
+            }
+            block.memoryBytes = memoryBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Reserve {@code size} bytes of the spill file, creating it if necessary, and return their position. */
+    private long reserve(final long size) throws IOException {
+        lock.lock();
+        try {
+            if (spillFile == null) {
+                final Path path = spillDirectory != null
+                        ? Files.createTempFile(spillDirectory, "deephaven-csv-", ".spill")
+                        : Files.createTempFile("deephaven-csv-", ".spill");
+                spillFile = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            final long position = spillFileSize;
+            spillFileSize += size;
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel spillFile() {
+        lock.lock();
+        try {
+            return spillFile;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            final int numRead = channel.read(buffer, position);
+            if (numRead < 0) {
+                throw new EOFException("Spill file is truncated");
+            }
+            position += numRead;
+        }
+    }
+
+    /**
+     * A block that lives in memory (in a block from {@link #inner}) until it is spilled, and in the spill file
+     * afterwards.
+     */
+    private abstract class SpillableBlock<TARRAY> extends Block<TARRAY> {
+        private final int capacity;
+        private final ReentrantLock blockLock = new ReentrantLock();
+        /** The in-memory block, or null once the block has been spilled or freed. Changed under {@link #blockLock}. */
+        private volatile Block<TARRAY> resident;
+        /** The memory occupied by the block, as of when it was sealed or compressed. */
+        private long memoryBytes;
+        /**
+         * The memory we have reported to the {@link MemoryGovernor} and not yet taken back. Guarded by
+         * {@link #blockLock}.
+         */
+        private long reportedBytes;
+        /** Where the block starts in the spill file, once spilled. Guarded by {@link #blockLock}. */
+        protected long filePosition;
+        /** Guarded by {@link #blockLock}. */
+        private boolean freed;
+        /** Guarded by {@link #blockLock}. */
+        private boolean isSealed;
+        /** Whether we have tried to compress the block (successfully or not). Guarded by {@link #blockLock}. */
+        private boolean compressionTried;
+        /**
+         * The size of the compressed image of the block, if it has been compressed, or -1. The image is in
+         * {@link #compressed} or, once spilled, at {@link #filePosition}. Guarded by {@link #blockLock}.
+         */
+        private int compressedLength = -1;
+        /** The compressed image, while it is in memory. Guarded by {@link #blockLock}. */
+        private byte[] compressed;
+        /**
+         * The decompressed contents, kept from when a reader first needs them until the block is freed or spilled, and
+         * reported to the {@link MemoryGovernor} meanwhile. Guarded by {@link #blockLock}.
+         */
+        private TARRAY decompressed;
+
+        SpillableBlock(final Block<TARRAY> resident, final int capacity, final long initialBytes) {
+            this.resident = resident;
+            this.capacity = capacity;
+            this.memoryBytes = initialBytes;
+            report(initialBytes);
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public TARRAY array() {
+            final Block<TARRAY> r = resident;
+            return r != null ? r.array() : null;
+        }
+
+        @Override
+        public void put(final int offset, final TARRAY src, final int srcOffset, final int length) {
+            // Only the writer calls this, and only before the block is sealed, so the block is still resident.
+            resident.put(offset, src, srcOffset, length);
+        }
+
+        @Override
+        public void get(final int offset, final TARRAY dest, final int destOffset, final int length) {
+            blockLock.lock();
+            try {
+                if (resident != null) {
+                    resident.get(offset, dest, destOffset, length);
+                    return;
+                }
+                try {
+                    if (compressedLength < 0) {
+                        readSpilled(spillFile(), offset, dest, destOffset, length);
+                        return;
+                    }
+                    if (decompressed == null) {
+                        byte[] image = compressed;
+                        if (image == null) {
+                            image = new byte[compressedLength];
+                            readFully(spillFile(), ByteBuffer.wrap(image), filePosition);
+                        }
+                        decompressed = decompressImage(image);
+                        report(memoryBytes(decompressed));
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Caught exception reading spill file", e);
+                }
+                System.arraycopy(decompressed, offset, dest, destOffset, length);
+            } finally {
+                blockLock.unlock();
+            }
+        }
+
+        @Override
+        protected void sealed() {
+            blockLock.lock();
+            try {
+                isSealed = true;
+            } finally {
+                blockLock.unlock();
+            }
+            final long previous = memoryBytes;
+            memoryBytes = memoryBytes(contents());
+            report(memoryBytes - previous);
+            onSealed(this);
+        }
+
+        @Override
+        protected void free() {
+            onFreed(this);
+            blockLock.lock();
+            try {
+                freed = true;
+                compressed = null;
+                decompressed = null;
+                unreport();
+                final Block<TARRAY> r = resident;
+                resident = null;
+                if (r != null) {
+                    r.release();
+                }
+            } finally {
+                blockLock.unlock();
+            }
+        }
+
+        @Override
+        protected void keptForSecondPass() {
+            blockLock.lock();
+            try {
+                if (freed) {
+                    return;
+                }
+                // A block that isn't sealed yet (which is possible for the last block of a column, as the reader may
+                // get to the end of it before the writer has quite finished) is left alone.
+                if (!compress || !isSealed || compressionTried || resident == null) {
+                    return;
+                }
+                compressionTried = true;
+                final Block<TARRAY> r = resident;
+                final byte[] image = compressImage(contents());
+                // Not worth it unless it saves at least an eighth.
+                if (image == null || image.length > memoryBytes - memoryBytes / 8) {
+                    return;
+                }
+                compressed = image;
+                compressedLength = image.length;
+                resident = null;
+                // As in spill(), we can only give back storage that readers don't access directly.
+                if (r.array() == null) {
+                    r.release();
+                }
+                report(image.length - reportedBytes);
+                onResized(this, image.length);
+            } finally {
+                blockLock.unlock();
+            }
+        }
+
+        void spill() {
+            blockLock.lock();
+            try {
+                if (freed) {
+                    return;
+                }
+                if (compressed != null) {
+                    try {
+                        filePosition = reserve(compressed.length);
+                        writeFully(spillFile(), ByteBuffer.wrap(compressed), filePosition);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Caught exception writing spill file", e);
+                    }
+                    compressed = null;
+                    // Any decompressed copy goes too. A reader that still needs it reads the image back.
+                    decompressed = null;
+                    unreport();
+                    return;
+                }
+                final Block<TARRAY> r = resident;
+                final TARRAY contents = contents();
+                try {
+                    filePosition = reserve(spilledBytes(contents));
+                    writeSpilled(spillFile(), contents);
+                } catch (IOException e) {
+                    throw new RuntimeException("Caught exception writing spill file", e);
+                }
+                resident = null;
+                unreport();
+                // If the block is backed by an array, a reader positioned on it may still be reading that array, so
+                // we can't let the inner allocator reuse it; we leave it to the garbage collector instead. Otherwise,
+                // readers work from their own copies, so we can give the storage back.
+                if (r.array() == null) {
+                    r.release();
+                }
+            } finally {
+                blockLock.unlock();
+            }
+        }
+
+        private void report(final long bytes) {
+            blockLock.lock();
+            try {
+                reportedBytes += bytes;
+                if (governor != null) {
+                    governor.allocated(bytes);
+                }
+            } finally {
+                blockLock.unlock();
+            }
+        }
+
+        private void unreport() {
+            blockLock.lock();
+            try {
+                if (governor != null) {
+                    governor.released(reportedBytes);
+                }
+                reportedBytes = 0;
+            } finally {
+                blockLock.unlock();
+            }
+        }
+
+        /** The contents of the resident block, as an array. */
+        private TARRAY contents() {
+            final Block<TARRAY> r = resident;
+            final TARRAY array = r.array();
+            if (array != null) {
+                return array;
+            }
+            final TARRAY copy = newArray(capacity);
+            r.get(0, copy, 0, capacity);
+            return copy;
+        }
+
+        protected abstract TARRAY newArray(int size);
+
+        /** The compressed image of these contents, or null if this kind of block isn't compressed. */
+        protected abstract byte[] compressImage(TARRAY contents);
+
+        /** The contents of the block, given the image that {@link #compressImage} made. */
+        protected abstract TARRAY decompressImage(byte[] image);
+
+        /** The memory occupied by a block with these contents. */
+        protected abstract long memoryBytes(TARRAY contents);
+
+        /** The size of the spill image of these contents. Also prepares anything {@link #writeSpilled} needs. */
+        protected abstract long spilledBytes(TARRAY contents);
+
+        /** Write the spill image of these contents at {@link #filePosition}. */
+        protected abstract void writeSpilled(FileChannel channel, TARRAY contents) throws IOException;
+
+        /** Read elements of the spilled block back into {@code dest}. */
+        protected abstract void readSpilled(FileChannel channel, int offset, TARRAY dest, int destOffset, int length)
+                throws IOException;
+    }
+
+    private final class SpillableBytes extends SpillableBlock<byte[]> {
+        SpillableBytes(final Block<byte[]> resident, final int capacity, final long initialBytes) {
+            super(resident, capacity, initialBytes);
+        }
+
+        @Override
+        protected byte[] newArray(final int size) {
+            return new byte[size];
+        }
+
+        @Override
+        protected long memoryBytes(final byte[] contents) {
+            return contents.length;
+        }
+
+        @Override
+        protected byte[] compressImage(final byte[] contents) {
+            return BlockCodec.compress(contents, contents.length);
+        }
+
+        @Override
+        protected byte[] decompressImage(final byte[] image) {
+            final byte[] result = new byte[capacity()];
+            BlockCodec.decompress(image, result, result.length);
+            return result;
+        }
+
+        @Override
+        protected long spilledBytes(final byte[] contents) {
+            return contents.length;
+        }
+
+        @Override
+        protected void writeSpilled(final FileChannel channel, final byte[] contents) throws IOException {
+            writeFully(channel, ByteBuffer.wrap(contents), filePosition);
+        }
+
+        @Override
+        protected void readSpilled(final FileChannel channel, final int offset, final byte[] dest,
+                final int destOffset, final int length) throws IOException {
+            readFully(channel, ByteBuffer.wrap(dest, destOffset, length), filePosition + offset);
+        }
+    }
+
+    private final class SpillableInts extends SpillableBlock<int[]> {
+        /** The length of the varint encoding that the compressed image holds. */
+        private int encodedLength;
+
+        SpillableInts(final Block<int[]> resident, final int capacity, final long initialBytes) {
+            super(resident, capacity, initialBytes);
+        }
+
+        @Override
+        protected int[] newArray(final int size) {
+            return new int[size];
+        }
+
+        @Override
+        protected long memoryBytes(final int[] contents) {
+            return (long) contents.length * Integer.BYTES;
+        }
+
+        @Override
+        protected byte[] compressImage(final int[] contents) {
+            final byte[] encoded = BlockCodec.encodeInts(contents, contents.length);
+            encodedLength = encoded.length;
+            return BlockCodec.compress(encoded, encoded.length);
+        }
+
+        @Override
+        protected int[] decompressImage(final byte[] image) {
+            final byte[] encoded = new byte[encodedLength];
+            BlockCodec.decompress(image, encoded, encodedLength);
+            final int[] result = new int[capacity()];
+            BlockCodec.decodeInts(encoded, result, result.length);
+            return result;
+        }
+
+        @Override
+        protected long spilledBytes(final int[] contents) {
+            return (long) contents.length * Integer.BYTES;
+        }
+
+        @Override
+        protected void writeSpilled(final FileChannel channel, final int[] contents) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(contents.length * Integer.BYTES);
+            buffer.asIntBuffer().put(contents);
+            writeFully(channel, buffer, filePosition);
+        }
+
+        @Override
+        protected void readSpilled(final FileChannel channel, final int offset, final int[] dest,
+                final int destOffset, final int length) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(length * Integer.BYTES);
+            readFully(channel, buffer, filePosition + (long) offset * Integer.BYTES);
+            buffer.flip();
+            buffer.asIntBuffer().get(dest, destOffset, length);
+        }
+    }
+
+    private final class SpillableByteArrays extends SpillableBlock<byte[][]> {
+        /**
+         * Where each element starts in the spill image, relative to {@link #filePosition}, with a final entry for the
+         * end of the image. Unused elements are stored as empty arrays.
+         */
+        private long[] elementOffsets;
+
+        SpillableByteArrays(final Block<byte[][]> resident, final int capacity, final long initialBytes) {
+            super(resident, capacity, initialBytes);
+        }
+
+        @Override
+        protected byte[][] newArray(final int size) {
+            return new byte[size][];
+        }
+
+        @Override
+        protected long memoryBytes(final byte[][] contents) {
+            // Approximately: a reference per element, plus the elements themselves.
+            long total = (long) contents.length * Long.BYTES;
+            for (final byte[] element : contents) {
+                if (element != null) {
+                    total += element.length;
+                }
+            }
+            return total;
+        }
+
+        @Override
+        protected byte[] compressImage(final byte[][] contents) {
+            // These hold large cells, each in an array of its own, and there are few of them, so we leave them be.
+            return null;
+        }
+
+        @Override
+        protected byte[][] decompressImage(final byte[] image) {
+            throw new IllegalStateException("Blocks of byte arrays are never compressed");
+        }
+
+        @Override
+        protected long spilledBytes(final byte[][] contents) {
+            elementOffsets = new long[contents.length + 1];
+            for (int ii = 0; ii < contents.length; ++ii) {
+                final byte[] element = contents[ii];
+                elementOffsets[ii + 1] = elementOffsets[ii] + (element != null ? element.length : 0);
+            }
+            return elementOffsets[contents.length];
+        }
+
+        @Override
+        protected void writeSpilled(final FileChannel channel, final byte[][] contents) throws IOException {
+            for (int ii = 0; ii < contents.length; ++ii) {
+                if (contents[ii] != null) {
+                    writeFully(channel, ByteBuffer.wrap(contents[ii]), filePosition + elementOffsets[ii]);
+                }
+            }
+        }
+
+        @Override
+        protected void readSpilled(final FileChannel channel, final int offset, final byte[][] dest,
+                final int destOffset, final int length) throws IOException {
+            for (int ii = 0; ii < length; ++ii) {
+                final long begin = elementOffsets[offset + ii];
+                final byte[] element = new byte[(int) (elementOffsets[offset + ii + 1] - begin)];
+                readFully(channel, ByteBuffer.wrap(element), filePosition + begin);
+                dest[destOffset + ii] = element;
+            }
+        }
+    }
+}
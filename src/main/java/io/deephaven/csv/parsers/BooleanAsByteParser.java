@@ -16,7 +16,7 @@ public final class BooleanAsByteParser implements Parser<byte[]> {
     @Override
     public ParserContext<byte[]> makeParserContext(final GlobalContext gctx, final int chunkSize) {
         final Sink<byte[]> sink = gctx.sinkFactory().forBooleanAsByte(gctx.colNum());
-        return new ParserContext<>(sink, null, DataType.BOOLEAN_AS_BYTE, new byte[chunkSize]);
+        return new ParserContext<>(sink, null, DataType.BOOLEAN_AS_BYTE, gctx.makeChunk(byte[].class, chunkSize));
     }
 
     @Override
@@ -20,7 +20,8 @@ public final class ByteParser implements Parser<byte[]> {
     public ParserContext<byte[]> makeParserContext(final GlobalContext gctx, final int chunkSize) {
         final MutableObject<Source<byte[]>> sourceHolder = new MutableObject<>();
         final Sink<byte[]> sink = gctx.sinkFactory().forByte(gctx.colNum(), sourceHolder);
-        return new ParserContext<>(sink, sourceHolder.getValue(), DataType.BYTE, new byte[chunkSize]);
+        return new ParserContext<>(sink, sourceHolder.getValue(), DataType.BYTE,
+                gctx.makeChunk(byte[].class, chunkSize));
     }
 
     @Override
@@ -16,7 +16,7 @@ public final class CharParser implements Parser<char[]> {
     @Override
     public ParserContext<char[]> makeParserContext(final GlobalContext gctx, final int chunkSize) {
         final Sink<char[]> sink = gctx.sinkFactory().forChar(gctx.colNum());
-        return new ParserContext<>(sink, null, DataType.CHAR, new char[chunkSize]);
+        return new ParserContext<>(sink, null, DataType.CHAR, gctx.makeChunk(char[].class, chunkSize));
     }
 
     @Override
@@ -0,0 +1,103 @@
+package io.deephaven.csv.parsers;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the value and null chunks of finished columns for reuse by the parsers of later columns, rather than leaving
+ * them to the garbage collector. A chunk is a few hundred kilobytes to a few megabytes (see {@link Parser#CHUNK_SIZE}),
+ * and every column needs at least two, so for reads of many small files, or of many columns parsed one after another,
+ * allocating (and zeroing) them can cost more than the parsing itself. A pool may be shared across reads, including
+ * reads that run at the same time. See {@link io.deephaven.csv.CsvSpecs.Builder#parserChunkPool}.
+ *
+ * <p>
+ * Chunks are handed out by {@link Parser.GlobalContext#makeChunk} and come back when the column is done. A chunk
+ * taken from the pool holds whatever its last user left in it, which is harmless for parsers that, like the built-in
+ * ones, write each element before they hand it to a {@link io.deephaven.csv.sinks.Sink}.
+ */
+public final class ChunkPool {
+    private final long maxCachedBytes;
+    /** Free chunks, keyed by array type and then by length. Guarded by 'this'. */
+    private final Map<Class<?>, Map<Integer, ArrayDeque<Object>>> free = new HashMap<>();
+    /** The total size of the free chunks. Guarded by 'this'. */
+    private long cachedBytes = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param maxCachedBytes The most memory, in bytes, to keep in free chunks. Chunks given back beyond that are left
+     *        to the garbage collector.
+     */
+    public ChunkPool(final long maxCachedBytes) {
+        if (maxCachedBytes < 0) {
+            throw new IllegalArgumentException("maxCachedBytes must be nonnegative, but is " + maxCachedBytes);
+        }
+        this.maxCachedBytes = maxCachedBytes;
+    }
+
+    /**
+     * Take a chunk of the given array type and length from the pool, or allocate one if the pool has none.
+     *
+     * @param arrayType The type of the array, for example {@code int[].class}.
+     * @param length The length of the array.
+     */
+    public <TARRAY> TARRAY take(final Class<TARRAY> arrayType, final int length) {
+        final Object chunk = takeFree(arrayType, length);
+        return arrayType.cast(chunk != null ? chunk : Array.newInstance(arrayType.getComponentType(), length));
+    }
+
+    /**
+     * Give back a chunk obtained from {@link #take}. The caller must not use it afterwards.
+     */
+    public void give(final Object chunk) {
+        if (chunk instanceof Object[]) {
+            // Don't keep the previous column's objects alive.
+            Arrays.fill((Object[]) chunk, null);
+        }
+        final int length = Array.getLength(chunk);
+        final long bytes = sizeInBytes(chunk.getClass(), length);
+        synchronized (this) {
+            if (cachedBytes + bytes > maxCachedBytes) {
+                return;
+            }
+            free.computeIfAbsent(chunk.getClass(), k -> new HashMap<>())
+                    .computeIfAbsent(length, k -> new ArrayDeque<>())
+                    .push(chunk);
+            cachedBytes += bytes;
+        }
+    }
+
+    /** The memory, in bytes, held in free chunks. */
+    public synchronized long cachedBytes() {
+        return cachedBytes;
+    }
+
+    private synchronized Object takeFree(final Class<?> arrayType, final int length) {
+        final Map<Integer, ArrayDeque<Object>> byLength = free.get(arrayType);
+        final ArrayDeque<Object> chunks = byLength != null ? byLength.get(length) : null;
+        if (chunks == null || chunks.isEmpty()) {
+            return null;
+        }
+        cachedBytes -= sizeInBytes(arrayType, length);
+        return chunks.pop();
+    }
+
+    private static long sizeInBytes(final Class<?> arrayType, final int length) {
+        final Class<?> componentType = arrayType.getComponentType();
+        final int elementSize;
+        if (componentType == boolean.class || componentType == byte.class) {
+            elementSize = 1;
+        } else if (componentType == short.class || componentType == char.class) {
+            elementSize = 2;
+        } else if (componentType == int.class || componentType == float.class) {
+            elementSize = 4;
+        } else {
+            // long, double, or a reference.
+            elementSize = 8;
+        }
+        return (long) length * elementSize;
+    }
+}
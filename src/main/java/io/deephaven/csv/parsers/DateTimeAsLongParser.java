@@ -16,7 +16,7 @@ public final class DateTimeAsLongParser implements Parser<long[]> {
     @Override
     public ParserContext<long[]> makeParserContext(final GlobalContext gctx, final int chunkSize) {
         final Sink<long[]> sink = gctx.sinkFactory().forDateTimeAsLong(gctx.colNum());
-        return new ParserContext<>(sink, null, DataType.DATETIME_AS_LONG, new long[chunkSize]);
+        return new ParserContext<>(sink, null, DataType.DATETIME_AS_LONG, gctx.makeChunk(long[].class, chunkSize));
     }
 
     @Override
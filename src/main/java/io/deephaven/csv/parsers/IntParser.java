@@ -20,7 +20,7 @@ public final class IntParser implements Parser<int[]> {
     public ParserContext<int[]> makeParserContext(final GlobalContext gctx, final int chunkSize) {
         final MutableObject<Source<int[]>> sourceHolder = new MutableObject<>();
         final Sink<int[]> sink = gctx.sinkFactory().forInt(gctx.colNum(), sourceHolder);
-        return new ParserContext<>(sink, sourceHolder.getValue(), DataType.INT, new int[chunkSize]);
+        return new ParserContext<>(sink, sourceHolder.getValue(), DataType.INT, gctx.makeChunk(int[].class, chunkSize));
     }
 
     @Override
@@ -22,10 +22,25 @@ public final class IteratorHolder {
     private long numConsumed = 0;
     /** Valid anytime after the first call to tryMoveNext(), but not before. */
     private boolean isExhausted = false;
+    /** Whether {@link #tryMoveNext} waits for the next item when it hasn't been written yet. */
+    private final boolean waitForInput;
+    /** Whether the last call to tryMoveNext() returned false because the next item hasn't been written yet. */
+    private boolean isWaiting = false;
 
     /** Constructor. */
     public IteratorHolder(DenseStorageReader dsr) {
+        this(dsr, true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param waitForInput Whether {@link #tryMoveNext} should wait for the next item when the tokenizer hasn't
+     *        written it yet. If not, it returns false instead, and {@link #isWaiting} says why.
+     */
+    public IteratorHolder(DenseStorageReader dsr, boolean waitForInput) {
         this.dsr = dsr;
+        this.waitForInput = waitForInput;
     }
 
     /**
@@ -34,6 +49,11 @@ public final class IteratorHolder {
      * @return true if we were able to advance, and set {@link IteratorHolder#bs} to valid text. Otherwise false.
      */
     public boolean tryMoveNext() throws CsvReaderException {
+        if (!waitForInput && dsr.wouldWait()) {
+            isWaiting = true;
+            return false;
+        }
+        isWaiting = false;
         isExhausted = !dsr.tryGetNextSlice(bs);
         if (isExhausted) {
             return false;
@@ -42,11 +62,43 @@ public final class IteratorHolder {
         return true;
     }
 
+    /**
+     * Stop iterating, releasing our hold on the data we have not yet read. See {@link DenseStorageReader#close()}.
+     */
+    public void close() {
+        dsr.close();
+    }
+
+    /**
+     * Arrange for {@code task} to run once the next item has been written, when {@link #isWaiting} is set. See
+     * {@link DenseStorageReader#runWhenAvailable}.
+     *
+     * @return false, with nothing arranged, if there is no longer any need to wait. Otherwise true.
+     */
+    public boolean runWhenAvailable(final Runnable task) {
+        return dsr.runWhenAvailable(task);
+    }
+
+    /**
+     * Declare that this iterator will be used for a second pass over the data that {@code leader} has already gone
+     * past. See {@link DenseStorageReader#keepForSecondPass}.
+     */
+    public void keepForSecondPass(final IteratorHolder leader) {
+        dsr.keepForSecondPass(leader.dsr);
+    }
+
     /** Getter for the byte slice. */
     public ByteSlice bs() {
         return bs;
     }
 
+    /**
+     * The dictionary id of the current item, or -1 if it has none. See {@link DenseStorageReader#lastDictionaryId()}.
+     */
+    public int dictionaryId() {
+        return dsr.lastDictionaryId();
+    }
+
     /**
      * Number of items we've consumed so far. This is the number of times {@link #tryMoveNext} has been called and
      * returned true.
@@ -65,4 +117,15 @@ public final class IteratorHolder {
     public boolean isExhausted() {
         return isExhausted;
     }
+
+    /**
+     * Did the last call to {@link #tryMoveNext} return false because the next item hasn't been written yet, rather
+     * than because the iteration is exhausted? This only happens if the iterator was made not to wait for input. The
+     * iterator can carry on from where it was once the item is there.
+     *
+     * @return Whether the iteration is waiting for input.
+     */
+    public boolean isWaiting() {
+        return isWaiting;
+    }
 }
@@ -5,9 +5,13 @@ import io.deephaven.csv.sinks.SinkFactory;
 import io.deephaven.csv.sinks.Source;
 import io.deephaven.csv.tokenization.Tokenizer;
 import io.deephaven.csv.util.CsvReaderException;
+import java.lang.reflect.Array;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * The Parser interface to the CsvReader. This is implemented by all the built-in parsers {@link IntParser},
@@ -16,6 +20,10 @@ import org.jetbrains.annotations.NotNull;
  * @param <TARRAY>
  */
 public interface Parser<TARRAY> {
+    /**
+     * The largest chunk size the reader uses. The size for a given read depends on its shape; see
+     * {@link io.deephaven.csv.CsvSpecs.Builder#parserChunkMemoryBudget}.
+     */
     int CHUNK_SIZE = 65536 * 4;
 
     /**
@@ -30,6 +38,10 @@ public interface Parser<TARRAY> {
      * Note that parsers other than {Byte,Short,Int,Long}Parser can leave the source field null, as in the above
      * example.
      *
+     * <p>
+     * The built-in parsers get their chunks from {@link GlobalContext#makeChunk} rather than allocating them
+     * directly, so that they can be reused when the read has a {@link ChunkPool}. Custom parsers may do the same.
+     *
      * @param gctx The GlobalContext. Built-in parsers use this to access the SinkFactory so that they can make a Sink
      *        of the right type. Custom parsers will probably not need this.
      * @param chunkSize The size of the chunk to create.
@@ -48,6 +60,12 @@ public interface Parser<TARRAY> {
      * <li>The code encounters a source value that it is unable to parse.
      * </ol>
      *
+     * <p>
+     * The iterator may also run out of input for the time being, before the tokenizer has written the rest of the
+     * column (see {@link IteratorHolder#isWaiting}). To the parser this looks just like the iterator being exhausted:
+     * {@link IteratorHolder#tryMoveNext} returns false. The caller then calls this method again, once there is more
+     * input, with {@code begin} set to the value returned and with the iterator on the next item.
+     *
      * @param gctx The {@link GlobalContext} holding various shared parameters for the parse. This will be shared among
      *        parsers of different types as the type inference process proceeds.
      * @param pctx The {@link ParserContext} for this specific parser. It will be the object created by the call to
@@ -95,11 +113,30 @@ public interface Parser<TARRAY> {
          * want (including no null sentinels).
          */
         private final byte[][] nullSentinelsAsBytes;
+        /** If not null, where chunks come from and go back to. */
+        private final ChunkPool chunkPool;
+        /** The chunks taken from {@link #chunkPool}, to give back when the column is done. */
+        private final List<Object> chunks;
+        /** The size of the chunks for this column. */
+        private final int chunkSize;
         /** An "isNull" chunk */
         private final boolean[] nullChunk;
 
         public GlobalContext(final int colNum, final Tokenizer tokenizer, final SinkFactory sinkFactory,
                 final String[] nullValueLiterals) {
+            this(colNum, tokenizer, sinkFactory, nullValueLiterals, null, CHUNK_SIZE);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param chunkPool If not null, the pool to take chunks from. Call {@link #releaseChunks()} once the column
+         *        is done to give them back.
+         * @param chunkSize The size of the chunks for this column: that of {@link #nullChunk()}, and the one passed to
+         *        {@link Parser#makeParserContext}.
+         */
+        public GlobalContext(final int colNum, final Tokenizer tokenizer, final SinkFactory sinkFactory,
+                final String[] nullValueLiterals, @Nullable final ChunkPool chunkPool, final int chunkSize) {
             this.colNum = colNum;
             this.tokenizer = tokenizer;
             this.sinkFactory = sinkFactory;
@@ -110,7 +147,40 @@ public interface Parser<TARRAY> {
             for (int ii = 0; ii < nullValueLiterals.length; ++ii) {
                 nullSentinelsAsBytes[ii] = nullValueLiterals[ii].getBytes(StandardCharsets.UTF_8);
             }
-            nullChunk = new boolean[CHUNK_SIZE];
+            this.chunkPool = chunkPool;
+            chunks = new ArrayList<>();
+            this.chunkSize = chunkSize;
+            nullChunk = makeChunk(boolean[].class, chunkSize);
+        }
+
+        /**
+         * Make a chunk for a {@link ParserContext}, taking it from the read's {@link ChunkPool} if it has one. The
+         * chunk may hold values left over from a previous column.
+         *
+         * @param arrayType The type of the array, for example {@code int[].class}.
+         * @param chunkSize The length of the array.
+         */
+        public <TARRAY> TARRAY makeChunk(final Class<TARRAY> arrayType, final int chunkSize) {
+            if (chunkPool == null) {
+                return arrayType.cast(Array.newInstance(arrayType.getComponentType(), chunkSize));
+            }
+            final TARRAY chunk = chunkPool.take(arrayType, chunkSize);
+            chunks.add(chunk);
+            return chunk;
+        }
+
+        /**
+         * Give the chunks made by {@link #makeChunk} (including {@link #nullChunk()}) back to the {@link ChunkPool},
+         * if there is one. Nothing may use them, or this object, afterwards.
+         */
+        public void releaseChunks() {
+            if (chunkPool == null) {
+                return;
+            }
+            for (final Object chunk : chunks) {
+                chunkPool.give(chunk);
+            }
+            chunks.clear();
         }
 
         /**
@@ -162,6 +232,10 @@ public interface Parser<TARRAY> {
             return nullChunk;
         }
 
+        public int chunkSize() {
+            return chunkSize;
+        }
+
         // If bumping language level up to 11, can replace with Arrays.equals()
         private static boolean equals(byte[] a, int aFromIndex, int aToIndex, byte[] b, int bFromIndex, int bToIndex) {
             int aLength = aToIndex - aFromIndex;
@@ -20,7 +20,8 @@ public final class ShortParser implements Parser<short[]> {
     public ParserContext<short[]> makeParserContext(final GlobalContext gctx, final int chunkSize) {
         final MutableObject<Source<short[]>> sourceHolder = new MutableObject<>();
         final Sink<short[]> sink = gctx.sinkFactory().forShort(gctx.colNum(), sourceHolder);
-        return new ParserContext<>(sink, sourceHolder.getValue(), DataType.SHORT, new short[chunkSize]);
+        return new ParserContext<>(sink, sourceHolder.getValue(), DataType.SHORT,
+                gctx.makeChunk(short[].class, chunkSize));
     }
 
     @Override
@@ -4,6 +4,8 @@ import io.deephaven.csv.sinks.Sink;
 import io.deephaven.csv.util.CsvReaderException;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+
 /** The parser for the String type. */
 public final class StringParser implements Parser<String[]> {
     public static final StringParser INSTANCE = new StringParser();
@@ -14,7 +16,7 @@ public final class StringParser implements Parser<String[]> {
     @Override
     public ParserContext<String[]> makeParserContext(final GlobalContext gctx, final int chunkSize) {
         final Sink<String[]> sink = gctx.sinkFactory().forString(gctx.colNum());
-        return new ParserContext<>(sink, null, DataType.STRING, new String[chunkSize]);
+        return new StringParserContext(sink, gctx.makeChunk(String[].class, chunkSize));
     }
 
     @Override
@@ -31,6 +33,10 @@ public final class StringParser implements Parser<String[]> {
         final Sink<String[]> sink = pctx.sink();
         final String reservedValue = gctx.sinkFactory().reservedString();
         final String[] values = pctx.valueChunk();
+        // If the column is dictionary encoded, each distinct value is decoded only once, and the cells share it. We
+        // may be called several times for a column, so the decoded values are kept in the context.
+        final StringParserContext spctx = pctx instanceof StringParserContext ? (StringParserContext) pctx : null;
+        String[] byDictionaryId = spctx != null ? spctx.byDictionaryId : null;
 
         long current = begin;
         int chunkIndex = 0;
@@ -47,7 +53,21 @@ public final class StringParser implements Parser<String[]> {
                 nulls[chunkIndex++] = true;
                 continue;
             }
-            final String value = ih.bs().toString();
+            final int id = ih.dictionaryId();
+            final String value;
+            if (id < 0) {
+                value = ih.bs().toString();
+            } else {
+                if (byDictionaryId == null || id >= byDictionaryId.length) {
+                    byDictionaryId = byDictionaryId == null ? new String[Math.max(16, id + 1)]
+                            : Arrays.copyOf(byDictionaryId, Math.max(byDictionaryId.length * 2, id + 1));
+                    if (spctx != null) {
+                        spctx.byDictionaryId = byDictionaryId;
+                    }
+                }
+                final String cached = byDictionaryId[id];
+                value = cached != null ? cached : (byDictionaryId[id] = ih.bs().toString());
+            }
             if (value.equals(reservedValue)) {
                 // If a reserved value is defined, it must not be present in the input.
                 break;
@@ -59,4 +79,15 @@ public final class StringParser implements Parser<String[]> {
         sink.write(values, nulls, current, current + chunkIndex, appending);
         return current + chunkIndex;
     }
+
+    /** The context of a {@link StringParser}, which also holds the values it has decoded from a dictionary. */
+    private static final class StringParserContext extends ParserContext<String[]> {
+        /** The values decoded so far, indexed by dictionary id. Null until the first is decoded. */
+        private String[] byDictionaryId;
+
+        StringParserContext(final Sink<String[]> sink, final String[] valueChunk) {
+            super(sink, null, DataType.STRING, valueChunk);
+            this.byDictionaryId = null;
+        }
+    }
 }
@@ -0,0 +1,129 @@
+package io.deephaven.csv.reading;
+
+import io.deephaven.csv.util.CsvReaderException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The parse of one column (see {@link ParseDenseStorageToColumn}), run on an {@link Executor}. The task parses the
+ * column until it has caught up with the tokenizer, and then gives up its thread, leaving itself for the tokenizer to
+ * put back on the executor once it has written more text to the column. So the columns of a read can share any number
+ * of threads, and each of them keeps reading its text as it is written, rather than having it held until a thread is
+ * free. A task is in one of four states: idle (waiting for text, or not yet started), queued on the executor, running,
+ * or done. Only the thread that moves it to running touches the parse.
+ */
+final class ColumnTask implements Runnable {
+    private static final int IDLE = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+    private static final int DONE = 3;
+
+    private final Executor executor;
+    /** Told about a failure of the parse, so that the rest of the read can give up. */
+    private final Consumer<Throwable> onFailure;
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private final CompletableFuture<ParseDenseStorageToColumn.Result> future = new CompletableFuture<>();
+    /** The parse, until it is done. */
+    private ParseDenseStorageToColumn parse;
+
+    ColumnTask(final ParseDenseStorageToColumn parse, final Executor executor,
+            final Consumer<Throwable> onFailure) {
+        this.parse = parse;
+        this.executor = executor;
+        this.onFailure = onFailure;
+    }
+
+    /** The outcome of the parse. */
+    CompletableFuture<ParseDenseStorageToColumn.Result> future() {
+        return future;
+    }
+
+    /**
+     * Put the task on the executor, if it is idle. Called to start the task, and by the tokenizer when it has written
+     * text that the task was waiting for. This doesn't throw: if the executor rejects the task, the task fails.
+     */
+    void schedule() {
+        if (!state.compareAndSet(IDLE, QUEUED)) {
+            return;
+        }
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            state.set(DONE);
+            fail(new CsvReaderException("The executor rejected a column's parse", e));
+        }
+    }
+
+    @Override
+    public void run() {
+        if (state.compareAndSet(QUEUED, RUNNING)) {
+            runParse();
+        }
+    }
+
+    /**
+     * Run the task on the calling thread, if it is queued on the executor (where it may have to wait for a thread).
+     *
+     * @return Whether it was.
+     */
+    boolean runHereIfQueued() {
+        if (!state.compareAndSet(QUEUED, RUNNING)) {
+            return false;
+        }
+        runParse();
+        return true;
+    }
+
+    /**
+     * Give up on the task. If it is waiting for text, it stays that way, as the read is over.
+     */
+    void cancel(final Throwable reason) {
+        future.completeExceptionally(reason);
+    }
+
+    private void runParse() {
+        while (true) {
+            if (future.isDone()) {
+                // Cancelled.
+                state.set(DONE);
+                parse = null;
+                return;
+            }
+            final boolean done;
+            try {
+                done = parse.resume();
+            } catch (Throwable t) {
+                state.set(DONE);
+                parse = null;
+                fail(t);
+                return;
+            }
+            if (done) {
+                final ParseDenseStorageToColumn.Result result = parse.result();
+                parse = null;
+                state.set(DONE);
+                future.complete(result);
+                return;
+            }
+            // Having gone idle, we may be scheduled as soon as we have asked to be, so we must not touch the parse
+            // after that.
+            state.set(IDLE);
+            if (parse.runWhenInputAvailable(this::schedule)) {
+                return;
+            }
+            // The text arrived in the meantime, so carry on.
+            if (!state.compareAndSet(IDLE, RUNNING)) {
+                return;
+            }
+        }
+    }
+
+    private void fail(final Throwable t) {
+        future.completeExceptionally(t);
+        onFailure.accept(t);
+    }
+}
@@ -1,24 +1,41 @@
 package io.deephaven.csv.reading;
 
 import io.deephaven.csv.CsvSpecs;
+import io.deephaven.csv.densestorage.DenseStorageAllocator;
+import io.deephaven.csv.densestorage.DenseStorageConstants;
+import io.deephaven.csv.densestorage.DenseStorageGeometry;
 import io.deephaven.csv.densestorage.DenseStorageReader;
 import io.deephaven.csv.densestorage.DenseStorageWriter;
+import io.deephaven.csv.densestorage.MemoryGovernor;
+import io.deephaven.csv.densestorage.SpillingAllocator;
 import io.deephaven.csv.parsers.DataType;
 import io.deephaven.csv.parsers.Parser;
 import io.deephaven.csv.reading.cells.CellGrabber;
 import io.deephaven.csv.reading.cells.DelimitedCellGrabber;
 import io.deephaven.csv.reading.cells.FixedCellGrabber;
+import io.deephaven.csv.reading.cells.ParallelCellGrabber;
 import io.deephaven.csv.reading.headers.DelimitedHeaderFinder;
 import io.deephaven.csv.reading.headers.FixedHeaderFinder;
+import io.deephaven.csv.reading.input.FileRegionInputStream;
+import io.deephaven.csv.reading.input.ParallelGzipInputStream;
+import io.deephaven.csv.reading.input.PrefetchingInputStream;
 import io.deephaven.csv.sinks.Sink;
 import io.deephaven.csv.sinks.SinkFactory;
 import io.deephaven.csv.util.*;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPInputStream;
 
 /**
  * A class for reading CSV data. Typical usage is:
@@ -44,6 +61,15 @@ import java.util.concurrent.*;
  * </pre>
  */
 public final class CsvReader {
+    /** The smallest parser chunk size we choose (see {@link #chooseParserChunkSize}). */
+    private static final int MIN_PARSER_CHUNK_SIZE = 1024;
+    /**
+     * The most scratch memory, in bytes per row of a chunk, a column's parse may hold at once: the null flags plus the
+     * value chunks of every numeric parser, all of which type inference can keep until the column is done.
+     */
+    private static final int PARSER_CHUNK_BYTES_PER_ROW = Byte.BYTES + Byte.BYTES + Short.BYTES + Integer.BYTES
+            + Long.BYTES + Double.BYTES;
+
     /**
      * Utility class. Do not instantiate.
      */
@@ -53,7 +79,7 @@ public final class CsvReader {
      * Read the data.
      *
      * @param specs A {@link CsvSpecs} object providing options for the parse.
-     * @param stream The input data, encoded in UTF-8.
+     * @param stream The input data, encoded in UTF-8 (and gzip-compressed if {@link CsvSpecs#gzipInput()} is set).
      * @param sinkFactory A factory that can provide Sink&lt;T&gt; of all appropriate types for the output data. Once
      *        the CsvReader determines what the column type is, it will use the {@link SinkFactory} to create an
      *        appropriate Sink&lt;T&gt; for the type. Note that the CsvReader might guess wrong, so it might create a
@@ -65,24 +91,248 @@ public final class CsvReader {
      */
     public static Result read(final CsvSpecs specs, final InputStream stream, final SinkFactory sinkFactory)
             throws CsvReaderException {
-        return specs.hasFixedWidthColumns() ? fixedReadLogic(specs, stream, sinkFactory)
-                : delimitedReadLogic(specs, stream, sinkFactory);
+        try (final ReadControl control = new ReadControl(specs.timeout())) {
+            return read(specs, stream, sinkFactory, control);
+        }
+    }
+
+    /**
+     * Start reading the data in the background. Otherwise this method behaves identically to
+     * {@link #read(CsvSpecs, InputStream, SinkFactory)}: the future completes with the result, or with the
+     * {@link CsvReaderException} that method would have thrown.
+     *
+     * <p>
+     * The read runs on {@link CsvSpecs#executor()}, if one is set. A concurrent read then runs its tokenizer on that
+     * same thread, and parses columns there too rather than wait for other threads, so the executor may have any number
+     * of threads. Otherwise the read runs on a thread of its own, which is virtual if {@link CsvSpecs#virtualThreads()}
+     * and {@link CsvSpecs#concurrent()} are set and the JDK supports virtual threads.
+     *
+     * <p>
+     * Cancelling the future cancels the read. The tokenizer and the parsers stop at their next block boundary (or
+     * sooner, if they are waiting for one another), and the read's storage is freed. The stream is not closed, unless
+     * {@link CsvSpecs#readAheadBuffers()} is set, or {@link CsvSpecs#gzipInput()} and {@link CsvSpecs#concurrent()}
+     * are. A tokenizer that is blocked reading the stream only notices once the read returns. See also
+     * {@link CsvSpecs#timeout()} and {@link CsvSpecs#progressListener()}.
+     *
+     * @param specs A {@link CsvSpecs} object providing options for the parse.
+     * @param stream The input data. See {@link #read(CsvSpecs, InputStream, SinkFactory)}.
+     * @param sinkFactory A factory that can provide Sink&lt;T&gt; of all appropriate types for the output data. See
+     *        {@link #read(CsvSpecs, InputStream, SinkFactory)} for details.
+     * @return A future for the result of the read.
+     */
+    public static CompletableFuture<Result> readAsync(final CsvSpecs specs, final InputStream stream,
+            final SinkFactory sinkFactory) {
+        return readAsync(specs, control -> read(specs, stream, sinkFactory, control));
+    }
+
+    /**
+     * Start reading the data from a file in the background. Otherwise this method behaves identically to
+     * {@link #read(CsvSpecs, Path, SinkFactory)}. See {@link #readAsync(CsvSpecs, InputStream, SinkFactory)} for how
+     * the future behaves.
+     *
+     * @param specs A {@link CsvSpecs} object providing options for the parse.
+     * @param path The file containing the input data. See {@link #read(CsvSpecs, Path, SinkFactory)}.
+     * @param sinkFactory A factory that can provide Sink&lt;T&gt; of all appropriate types for the output data. See
+     *        {@link #read(CsvSpecs, InputStream, SinkFactory)} for details.
+     * @return A future for the result of the read.
+     */
+    public static CompletableFuture<Result> readAsync(final CsvSpecs specs, final Path path,
+            final SinkFactory sinkFactory) {
+        return readAsync(specs, control -> read(specs, path, null, sinkFactory, control));
+    }
+
+    private static CompletableFuture<Result> readAsync(final CsvSpecs specs, final ControlledRead read) {
+        final ReadControl control = new ReadControl(specs.timeout(), specs.executor() != null);
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                control.cancel(new CancellationException("The future was cancelled"));
+            }
+        });
+        final Runnable driver = () -> {
+            try (final ReadControl c = control) {
+                future.complete(read.run(c));
+            } catch (Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        };
+        if (specs.executor() == null) {
+            ThreadSupport.startThread(driver, "CsvReader-async", specs.concurrent() && specs.virtualThreads());
+            return future;
+        }
+        try {
+            specs.executor().execute(driver);
+        } catch (RejectedExecutionException e) {
+            control.close();
+            future.completeExceptionally(new CsvReaderException("The executor rejected the read", e));
+        }
+        return future;
+    }
+
+    /** A read that is given its {@link ReadControl}. */
+    @FunctionalInterface
+    private interface ControlledRead {
+        Result run(ReadControl control) throws CsvReaderException;
+    }
+
+    private static Result read(final CsvSpecs specs, final InputStream stream, final SinkFactory sinkFactory,
+            final ReadControl control) throws CsvReaderException {
+        if (!specs.gzipInput()) {
+            return readAheadLogic(specs, stream, sinkFactory, control);
+        }
+        if (!specs.concurrent()) {
+            final InputStream gzipStream;
+            try {
+                gzipStream = new GZIPInputStream(stream, DelimitedCellGrabber.BUFFER_SIZE);
+            } catch (IOException e) {
+                throw new CsvReaderException("Caught exception reading gzip header", e);
+            }
+            return readAheadLogic(specs, gzipStream, sinkFactory, control);
+        }
+        // The members are inflated on the executor, if there is one, as the read's other work is. Otherwise the read
+        // has a pool for them.
+        final ExecutorService inflaterPool = specs.decompressionThreads() > 1 && specs.executor() == null
+                ? ThreadSupport.newThreadPool(specs.decompressionThreads(), specs.virtualThreads())
+                : null;
+        try {
+            final ParallelGzipInputStream gzipStream = new ParallelGzipInputStream(stream,
+                    specs.decompressionThreads(), inflaterPool != null ? inflaterPool : specs.executor(),
+                    task -> ThreadSupport.startThread(task, "CsvReader-gunzip", specs.virtualThreads()));
+            return readThenClose(gzipStream, () -> readAheadLogic(specs, gzipStream, sinkFactory, control));
+        } finally {
+            if (inflaterPool != null) {
+                inflaterPool.shutdownNow();
+            }
+        }
+    }
+
+    private static Result readAheadLogic(final CsvSpecs specs, final InputStream stream,
+            final SinkFactory sinkFactory, final ReadControl control) throws CsvReaderException {
+        if (specs.readAheadBuffers() == 0 || !specs.concurrent()) {
+            return readLogic(specs, stream, sinkFactory, control);
+        }
+        final PrefetchingInputStream prefetcher = new PrefetchingInputStream(stream, specs.readAheadBuffers(),
+                specs.readAheadBufferSize(),
+                task -> ThreadSupport.startThread(task, "CsvReader-prefetch", specs.virtualThreads()));
+        return readThenClose(prefetcher, () -> readLogic(specs, prefetcher, sinkFactory, control));
+    }
+
+    /**
+     * Do {@code read}, and then close {@code stream}, which stops its background threads without waiting for them. If
+     * the read fails, any failure to close is added to its exception. If the read succeeds, a failure to close is
+     * ignored, as the caller already has its result.
+     */
+    private static Result readThenClose(final InputStream stream, final StreamRead read) throws CsvReaderException {
+        final Result result;
+        try {
+            result = read.run();
+        } catch (Throwable throwable) {
+            try {
+                stream.close();
+            } catch (Throwable closeFailure) {
+                throwable.addSuppressed(closeFailure);
+            }
+            throw throwable;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // See above.
+        }
+        return result;
     }
 
-    private static Result delimitedReadLogic(
-            final CsvSpecs specs, final InputStream stream, final SinkFactory sinkFactory)
+    /** A read of a stream that {@link #readThenClose} closes afterwards. */
+    @FunctionalInterface
+    private interface StreamRead {
+        Result run() throws CsvReaderException;
+    }
+
+    /**
+     * Read the data from a file. Reading from the file itself, rather than from a stream, lets the rows be tokenized
+     * in parallel (see {@link CsvSpecs#tokenizerThreads()}) and lets a {@link CsvRowIndex} be used to seek to them.
+     * Otherwise this method behaves identically to {@link #read(CsvSpecs, InputStream, SinkFactory)}.
+     *
+     * @param specs A {@link CsvSpecs} object providing options for the parse.
+     * @param path The file containing the input data, encoded in UTF-8 (and gzip-compressed if
+     *        {@link CsvSpecs#gzipInput()} is set).
+     * @param sinkFactory A factory that can provide Sink&lt;T&gt; of all appropriate types for the output data. See
+     *        {@link #read(CsvSpecs, InputStream, SinkFactory)} for details.
+     * @return A CsvReader.Result containing the column names, the number of columns, and the final set of
+     *         fully-populated Sinks.
+     */
+    public static Result read(final CsvSpecs specs, final Path path, final SinkFactory sinkFactory)
             throws CsvReaderException {
+        return read(specs, path, null, sinkFactory);
+    }
+
+    /**
+     * Read the data from a file, using a previously-built {@link CsvRowIndex} (if not null) to seek directly to the
+     * rows selected by {@link CsvSpecs#skipRows} and {@link CsvSpecs#numRows}. Otherwise this method behaves
+     * identically to {@link #read(CsvSpecs, Path, SinkFactory)}.
+     *
+     * @param specs A {@link CsvSpecs} object providing options for the parse.
+     * @param path The file containing the input data, encoded in UTF-8.
+     * @param rowIndex The index of {@code path}, or null. If not null, it must have been built from the file in its
+     *        current state, with compatible {@code specs}.
+     * @param sinkFactory A factory that can provide Sink&lt;T&gt; of all appropriate types for the output data. See
+     *        {@link #read(CsvSpecs, InputStream, SinkFactory)} for details.
+     * @return A CsvReader.Result containing the column names, the number of columns, and the final set of
+     *         fully-populated Sinks.
+     */
+    public static Result read(final CsvSpecs specs, final Path path, final CsvRowIndex rowIndex,
+            final SinkFactory sinkFactory) throws CsvReaderException {
+        try (final ReadControl control = new ReadControl(specs.timeout())) {
+            return read(specs, path, rowIndex, sinkFactory, control);
+        }
+    }
+
+    private static Result read(final CsvSpecs specs, final Path path, final CsvRowIndex rowIndex,
+            final SinkFactory sinkFactory, final ReadControl control) throws CsvReaderException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final FileRegionInputStream stream = new FileRegionInputStream(channel);
+            if (rowIndex != null) {
+                rowIndex.checkUsable(specs, path, channel.size());
+                return delimitedReadLogic(specs, stream, channel, rowIndex, sinkFactory, control);
+            }
+            if (specs.gzipInput() || !specs.concurrent() || specs.tokenizerThreads() == 1) {
+                return read(specs, stream, sinkFactory, control);
+            }
+            return specs.hasFixedWidthColumns() ? fixedReadLogic(specs, stream, channel, sinkFactory, control)
+                    : delimitedReadLogic(specs, stream, channel, null, sinkFactory, control);
+        } catch (IOException e) {
+            throw new CsvReaderException("Caught exception reading " + path, e);
+        }
+    }
+
+    private static Result readLogic(final CsvSpecs specs, final InputStream stream, final SinkFactory sinkFactory,
+            final ReadControl control) throws CsvReaderException {
+        return specs.hasFixedWidthColumns() ? fixedReadLogic(specs, stream, null, sinkFactory, control)
+                : delimitedReadLogic(specs, stream, null, null, sinkFactory, control);
+    }
+
+    /**
+     * @param channel If not null, the channel underlying {@code stream}. In this case the data rows (i.e. everything
+     *        after the headers) are tokenized directly from the channel: in parallel with
+     *        {@link CsvSpecs#tokenizerThreads()} threads if that is more than one (and {@link CsvSpecs#concurrent()} is
+     *        set), otherwise serially.
+     * @param rowIndex If not null, the index of the file underlying {@code channel}, used to seek to the first row
+     *        wanted and to stop after the last one.
+     */
+    private static Result delimitedReadLogic(final CsvSpecs specs, final InputStream stream,
+            final FileChannel channel, final CsvRowIndex rowIndex, final SinkFactory sinkFactory,
+            final ReadControl control) throws CsvReaderException {
         // These two have already been validated by CsvSpecs to be 7-bit ASCII.
         final byte quoteAsByte = (byte) specs.quote();
         final byte delimiterAsByte = (byte) specs.delimiter();
-        final CellGrabber grabber =
+        final DelimitedCellGrabber headerGrabber =
                 new DelimitedCellGrabber(stream, quoteAsByte, delimiterAsByte, specs.ignoreSurroundingSpaces(),
-                        specs.trim());
+                        specs.trim(), specs.vectorizedTokenizer());
         // For an "out" parameter
         final MutableObject<byte[][]> firstDataRowHolder = new MutableObject<>();
-        final String[] headersTemp = DelimitedHeaderFinder.determineHeadersToUse(specs, grabber,
+        final String[] headersTemp = DelimitedHeaderFinder.determineHeadersToUse(specs, headerGrabber,
                 firstDataRowHolder);
-        final byte[][] firstDataRow = firstDataRowHolder.getValue();
+        byte[][] firstDataRow = firstDataRowHolder.getValue();
         final int numInputCols = headersTemp.length;
 
         // If the final column in the header row is blank, we assume that the final column in all the data rows
@@ -95,23 +345,131 @@ public final class CsvReader {
             headersTemp2 = headersTemp;
         }
         final int numOutputCols = headersTemp2.length;
-        return commonReadLogic(specs, grabber, firstDataRow, numInputCols, numOutputCols, headersTemp2, sinkFactory);
+        if (channel == null) {
+            return commonReadLogic(specs, headerGrabber, firstDataRow, numInputCols, numOutputCols, headersTemp2,
+                    0, -1, sinkFactory, control);
+        }
+
+        // The header grabber has consumed exactly the header rows (and the first data row, if it needed to peek at
+        // it), so the data rows start at a known row boundary.
+        long dataBegin;
+        long dataEnd;
+        try {
+            dataBegin = headerGrabber.bytesConsumed();
+            dataEnd = channel.size();
+        } catch (IOException e) {
+            throw new CsvReaderException("Caught exception", e);
+        }
+        int physicalRowNum = headerGrabber.physicalRowNum();
+        CsvSpecs specsToUse = specs;
+        if (rowIndex != null) {
+            // Row numbers here count from the start of the file, as they do in the index.
+            final long numHeaderRows = specs.hasHeaderRow() ? specs.skipHeaderRows() + 1 : 0;
+            final long firstWantedRow = numHeaderRows + specs.skipRows();
+            final int entry = rowIndex.floorEntry(firstWantedRow);
+            final long entryRow = rowIndex.entryRow(entry);
+            if (entryRow > numHeaderRows + (firstDataRow != null ? 1 : 0)) {
+                // Seeking gets us closer than the header grabber already is. Any peeked first data row is among the
+                // rows being skipped.
+                dataBegin = rowIndex.entryOffset(entry);
+                physicalRowNum = rowIndex.entryPhysicalRowNum(entry);
+                firstDataRow = null;
+                specsToUse = CsvSpecs.builder().from(specs).skipRows(firstWantedRow - entryRow).build();
+            }
+            final long endRow = specs.numRows() > rowIndex.numRows() - firstWantedRow
+                    ? rowIndex.numRows()
+                    : firstWantedRow + specs.numRows();
+            dataEnd = Math.max(dataBegin, rowIndex.offsetAtOrAfter(endRow));
+        }
+
+        if (!specs.concurrent() || specs.tokenizerThreads() == 1) {
+            final CellGrabber grabber = new DelimitedCellGrabber(
+                    new FileRegionInputStream(channel, dataBegin, dataEnd),
+                    quoteAsByte, delimiterAsByte, specs.ignoreSurroundingSpaces(), specs.trim(),
+                    specs.vectorizedTokenizer(), physicalRowNum);
+            return commonReadLogic(specsToUse, grabber, firstDataRow, numInputCols, numOutputCols, headersTemp2,
+                    dataBegin, dataEnd - dataBegin, sinkFactory, control);
+        }
+        final ExecutorService tokenizerPool = makeTokenizerPool(specs);
+        try (final ParallelCellGrabber grabber = new ParallelCellGrabber(channel, dataBegin, dataEnd,
+                physicalRowNum, quoteAsByte, delimiterAsByte, specs.ignoreSurroundingSpaces(), specs.trim(),
+                specs.vectorizedTokenizer(), tokenizerPool != null ? tokenizerPool : specs.executor(),
+                specs.tokenizerThreads(), specs.tokenizerChunkSize(), rowIndex != null ? rowIndex.offsets() : null,
+                null)) {
+            return commonReadLogic(specsToUse, grabber, firstDataRow, numInputCols, numOutputCols, headersTemp2,
+                    dataBegin, dataEnd - dataBegin, sinkFactory, control);
+        } finally {
+            if (tokenizerPool != null) {
+                tokenizerPool.shutdownNow();
+            }
+        }
     }
 
-    private static Result fixedReadLogic(
-            final CsvSpecs specs, final InputStream stream, final SinkFactory sinkFactory) throws CsvReaderException {
-        final CellGrabber lineGrabber = FixedCellGrabber.makeLineGrabber(stream);
+    /**
+     * @param channel If not null, the channel underlying {@code stream}. In this case the data rows (i.e. everything
+     *        after the headers) are split into chunks at line boundaries, and the chunks are broken into lines and
+     *        sliced into cells in parallel, directly from the channel, with {@link CsvSpecs#tokenizerThreads()}
+     *        threads.
+     */
+    private static Result fixedReadLogic(final CsvSpecs specs, final InputStream stream, final FileChannel channel,
+            final SinkFactory sinkFactory, final ReadControl control) throws CsvReaderException {
+        final DelimitedCellGrabber lineGrabber = FixedCellGrabber.makeLineGrabber(stream);
         MutableObject<int[]> columnWidths = new MutableObject<>();
         final String[] headers = FixedHeaderFinder.determineHeadersToUse(specs, lineGrabber, columnWidths);
         final int numCols = headers.length;
-        final CellGrabber grabber = new FixedCellGrabber(lineGrabber, columnWidths.getValue(),
-                specs.ignoreSurroundingSpaces(), specs.useUtf32CountingConvention());
-        return commonReadLogic(specs, grabber, null, numCols, numCols, headers, sinkFactory);
+        if (channel == null) {
+            final CellGrabber grabber = new FixedCellGrabber(lineGrabber, columnWidths.getValue(),
+                    specs.ignoreSurroundingSpaces(), specs.useUtf32CountingConvention());
+            return commonReadLogic(specs, grabber, null, numCols, numCols, headers, 0, -1, sinkFactory, control);
+        }
+
+        final long dataBegin;
+        final long dataEnd;
+        try {
+            dataBegin = lineGrabber.bytesConsumed();
+            dataEnd = channel.size();
+        } catch (IOException e) {
+            throw new CsvReaderException("Caught exception", e);
+        }
+        // Fixed-width input has no quoting, so every line terminator ends a row and the chunk boundaries chosen by
+        // ParallelCellGrabber are always right. The settings here mirror those of FixedCellGrabber.makeLineGrabber.
+        final byte illegalUtf8 = (byte) 0xff;
+        final ExecutorService tokenizerPool = makeTokenizerPool(specs);
+        try (final ParallelCellGrabber grabber = new ParallelCellGrabber(channel, dataBegin, dataEnd,
+                lineGrabber.physicalRowNum(), illegalUtf8, illegalUtf8, true, false, specs.vectorizedTokenizer(),
+                tokenizerPool != null ? tokenizerPool : specs.executor(), specs.tokenizerThreads(),
+                specs.tokenizerChunkSize(), null,
+                lines -> new FixedCellGrabber(lines, columnWidths.getValue(), specs.ignoreSurroundingSpaces(),
+                        specs.useUtf32CountingConvention()))) {
+            return commonReadLogic(specs, grabber, null, numCols, numCols, headers, dataBegin, dataEnd - dataBegin,
+                    sinkFactory, control);
+        } finally {
+            if (tokenizerPool != null) {
+                tokenizerPool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Make the pool that the workers of a {@link ParallelCellGrabber} run on, which the caller must shut down. If
+     * there is a {@link CsvSpecs#executor()}, they run there instead, as the read's other work does, and this returns
+     * null.
+     */
+    private static ExecutorService makeTokenizerPool(final CsvSpecs specs) {
+        return specs.executor() == null
+                ? ThreadSupport.newThreadPool(specs.tokenizerThreads(), specs.virtualThreads())
+                : null;
     }
 
+    /**
+     * @param dataBegin The offset in the input of the first byte {@code grabber} reads, for progress reports.
+     * @param dataSize The size in bytes of the data rows, if known, or -1. This is only used as a hint.
+     * @param control The read's {@link ReadControl}, whose cancellation we pass on to the tokenizer and the parsers.
+     */
     private static Result commonReadLogic(final CsvSpecs specs, CellGrabber grabber, byte[][] optionalFirstDataRow,
             int numInputCols, int numOutputCols,
-            String[] headersBeforeLegalization, final SinkFactory sinkFactory)
+            String[] headersBeforeLegalization, final long dataBegin, final long dataSize,
+            final SinkFactory sinkFactory, final ReadControl control)
             throws CsvReaderException {
 
         final String[][] nullValueLiteralsToUse = new String[numOutputCols][];
@@ -121,79 +479,302 @@ public final class CsvReader {
         }
 
         final String[] headersToUse = canonicalizeHeaders(specs, headersBeforeLegalization);
-
-        // Create a DenseStorageWriter for each column. The arrays are sized to "numInputCols" but only populated up to
-        // "numOutputCols". The remaining (numInputCols - numOutputCols) are set to null. The code in
-        // parseInputToDenseStorge knows that having a null DenseStorageWriter means that the column is all-empty and
-        // (once the data is confirmed to be empty) just drops the data. "While we're here" we also make the List
-        // (not array, because Java generics) of DenseStorageReaders. This list is of size numOutputCols and is used
-        // down below to hand to each parseDenseStorageToColumn reader in a separate thread.
+        final int[] selectedCols = calcSelectedColumns(specs, headersBeforeLegalization, numOutputCols);
+        final int numSelectedCols = selectedCols.length;
+
+        // Create a DenseStorageWriter for each selected column. The arrays are sized to "numInputCols" but only
+        // populated for the selected columns. The remaining entries are null. The code in parseInputToDenseStorge
+        // knows that having a null DenseStorageWriter means one of two things. If the column is marked in
+        // "dropColumns", the column was not selected by the caller and its data is simply discarded. Otherwise the
+        // column is one of the (numInputCols - numOutputCols) trailing columns that are all-empty, and (once the data
+        // is confirmed to be empty) the data is dropped. "While we're here" we also make the List (not array, because
+        // Java generics) of DenseStorageReaders. This list is of size numSelectedCols and is used down below to hand to
+        // each parseDenseStorageToColumn reader in a separate thread.
+        // The columns share a MemoryGovernor, which tracks their memory use and holds back the tokenizer when it is
+        // too far ahead of the parsers, and a SpillingAllocator, which enforces the memory budget (if any), compresses
+        // retained text (if asked to), and reports to the governor. Back-pressure only makes sense when the parsers run
+        // concurrently with the tokenizer.
+        final MemoryGovernor governor =
+                new MemoryGovernor(specs.concurrent() ? specs.denseStorageInFlightLimit() : Long.MAX_VALUE);
+        // If the read is cancelled, the tokenizer and the parsers see that at their next block boundary. When they run
+        // inline there is nothing else to do. This throws if the read has already been cancelled.
+        control.onCancel(governor::cancel);
+        // Blocks from the default heap allocator are recycled within the read.
+        final DenseStorageAllocator baseAllocator = specs.denseStorageAllocator() == DenseStorageAllocator.heap()
+                ? DenseStorageAllocator.pooledHeap(DenseStorageConstants.MAX_POOLED_BYTES_PER_READ)
+                : specs.denseStorageAllocator();
+        final SpillingAllocator allocator = new SpillingAllocator(baseAllocator, specs.denseStorageMemoryBudget(),
+                specs.spillDirectory(), governor, specs.compressRetainedDenseStorage());
+        final DenseStorageGeometry geometry = new DenseStorageGeometry(specs.denseStorageControlBlockSize(),
+                specs.denseStoragePackedBlockSize(), DenseStorageConstants.ARRAY_QUEUE_SIZE,
+                specs.denseStorageLargeThreshold(), specs.denseStorageMaxUnobservedBlocks(),
+                specs.adaptiveDenseStorage()).forColumns(numSelectedCols);
         final DenseStorageWriter[] dsws = new DenseStorageWriter[numInputCols];
+        final boolean[] dropColumns = new boolean[numInputCols];
+        Arrays.fill(dropColumns, 0, numOutputCols, true);
         final List<Moveable<DenseStorageReader>> dsrs = new ArrayList<>();
-        for (int ii = 0; ii < numOutputCols; ++ii) {
-            final Pair<DenseStorageWriter, DenseStorageReader> pair = DenseStorageWriter.create(specs.concurrent());
-            dsws[ii] = pair.first;
+        for (final int col : selectedCols) {
+            final Pair<DenseStorageWriter, DenseStorageReader> pair =
+                    DenseStorageWriter.create(specs.concurrent(), geometry, allocator, governor,
+                            specs.dictionaryEncodeDenseStorage());
+            dsws[col] = pair.first;
+            dropColumns[col] = false;
             dsrs.add(new Moveable<>(pair.second));
         }
 
-        // Select an Excecutor based on whether the user wants the code to run asynchronously or not.
-        final Executor exec;
-        final ExecutorService executorService;
-        if (specs.concurrent()) {
-            exec = executorService = Executors.newFixedThreadPool(numOutputCols + 1);
-        } else {
-            exec = DirectExecutor.INSTANCE;
-            executorService = null;
-        }
-        // We are generic on Object because we have a diversity of Future types (Long vs
-        // ParseDenseStorageToColumn.Result)
-        final ExecutorCompletionService<Object> ecs = new ExecutorCompletionService<>(exec);
-
-        // Start the writer.
-        final Future<Object> numRowsFuture = ecs.submit(() -> ParseInputToDenseStorage.doit(headersToUse,
-                optionalFirstDataRow, grabber, specs, nullValueLiteralsToUse, dsws));
-
-        // Start the readers, taking care to not hold a reference to the DenseStorageReader.
-        final ArrayList<Future<Object>> sinkFutures = new ArrayList<>();
+        final int chunkSize = chooseParserChunkSize(specs, numInputCols, numSelectedCols, dataSize);
+        final ProgressListener listener = specs.progressListener();
+        final ProgressListener progress = listener == null || dataBegin == 0 ? listener
+                : (bytesConsumed, rowsTokenized) -> listener.onProgress(dataBegin + bytesConsumed, rowsTokenized);
+        final Callable<Long> tokenize = () -> ParseInputToDenseStorage.doit(headersToUse, optionalFirstDataRow,
+                grabber, specs, nullValueLiteralsToUse, dsws, dropColumns, governor, progress);
+        // Makes the parse of the ii'th selected column, taking care to not hold a reference to the
+        // DenseStorageReader. A concurrent parse stops when it runs out of input, rather than wait for it (see
+        // ColumnTask).
+        final IntFunction<ParseDenseStorageToColumn> newParse = ii -> {
+            final int col = selectedCols[ii];
+            return new ParseDenseStorageToColumn(
+                    col, // 0-based column numbers, as they appear in the input
+                    dsrs.get(ii).move(),
+                    calcParsersToUse(specs, headersBeforeLegalization[col], col),
+                    specs,
+                    nullValueLiteralsToUse[col],
+                    sinkFactory,
+                    chunkSize,
+                    !specs.concurrent());
+        };
+
+        final ParseDenseStorageToColumn.Result[] results = new ParseDenseStorageToColumn.Result[numSelectedCols];
+        ExecutorService executorService = null;
         try {
-            for (int ii = 0; ii < numOutputCols; ++ii) {
-                final List<Parser<?>> parsersToUse = calcParsersToUse(specs, headersBeforeLegalization[ii], ii);
-
-                final int iiCopy = ii;
-                final Future<Object> fcb = ecs.submit(
-                        () -> ParseDenseStorageToColumn.doit(
-                                iiCopy, // 0-based column numbers
-                                dsrs.get(iiCopy).move(),
-                                parsersToUse,
-                                specs,
-                                nullValueLiteralsToUse[iiCopy],
-                                sinkFactory));
-                sinkFutures.add(fcb);
-            }
-
-            // Get each task as it finishes. If a task finishes with an exception, we will throw here.
-            for (int ii = 0; ii < numOutputCols + 1; ++ii) {
-                ecs.take().get();
+            final long numRows;
+            if (!specs.concurrent()) {
+                // Tokenize all the input, and then parse the columns one after another.
+                numRows = tokenize.call();
+                for (int ii = 0; ii < numSelectedCols; ++ii) {
+                    results[ii] = parseToEnd(newParse.apply(ii));
+                }
+            } else if (specs.executor() != null) {
+                numRows = runColumnTasks(specs.executor(), specs.executor(), true, tokenize, newParse, results,
+                        governor, control);
+            } else {
+                // The tokenizer gets a thread of its own, and the columns share a pool of one thread each, or of
+                // parserThreads.
+                final int numParserThreads = specs.parserThreads() > 0
+                        ? Math.min(specs.parserThreads(), numSelectedCols)
+                        : numSelectedCols;
+                executorService = ThreadSupport.newThreadPool(Math.max(1, numParserThreads), specs.virtualThreads());
+                final Executor tokenizerThread =
+                        task -> ThreadSupport.startThread(task, "CsvReader-tokenizer", specs.virtualThreads());
+                numRows = runColumnTasks(executorService, tokenizerThread, false, tokenize, newParse, results,
+                        governor, control);
             }
 
-            final long numRows = (long) numRowsFuture.get();
-            final ResultColumn[] resultColumns = new ResultColumn[numOutputCols];
-            for (int ii = 0; ii < numOutputCols; ++ii) {
-                final ParseDenseStorageToColumn.Result result =
-                        (ParseDenseStorageToColumn.Result) sinkFutures.get(ii).get();
-                final Object data = result.sink().getUnderlying();
-                final DataType dataType = result.dataType();
-                resultColumns[ii] = new ResultColumn(headersToUse[ii], data, dataType);
+            final ResultColumn[] resultColumns = new ResultColumn[numSelectedCols];
+            for (int ii = 0; ii < numSelectedCols; ++ii) {
+                final Object data = results[ii].sink().getUnderlying();
+                final DataType dataType = results[ii].dataType();
+                resultColumns[ii] = new ResultColumn(headersToUse[selectedCols[ii]], data, dataType);
             }
-            return new Result(numRows, resultColumns);
+            return new Result(numRows, resultColumns, governor.peakBytesInUse(), allocator.bytesSpilled());
         } catch (Throwable throwable) {
+            control.throwIfCancelled(throwable);
             throw new CsvReaderException("Caught exception", throwable);
         } finally {
+            control.clearOnCancel();
             if (executorService != null) {
                 // Tear down everything (interrupting the threads if necessary).
                 executorService.shutdownNow();
             }
+            try {
+                allocator.close();
+            } catch (IOException e) {
+                // The read itself is complete (or has already failed), so there is nothing more to do.
+            }
+        }
+    }
+
+    /** Run a parse that waits for its input to the end. */
+    private static ParseDenseStorageToColumn.Result parseToEnd(final ParseDenseStorageToColumn parse)
+            throws CsvReaderException {
+        if (!parse.resume()) {
+            throw new RuntimeException("Logic error: a parse that waits for its input stopped early");
+        }
+        return parse.result();
+    }
+
+    /**
+     * Run the tokenizer of a read on {@code tokenizerExec}, and the parses of its columns on {@code exec}, the latter
+     * as {@link ColumnTask}s, which give up their thread whenever they catch up with the tokenizer. So the parses can
+     * share any number of threads. The tokenizer helps with the parses rather than wait for them, when they are
+     * waiting for a thread of the user's executor, which may have no others free. And if the read itself runs on that
+     * executor (see {@link ReadControl#runsOnExecutor()}), it tokenizes the input on its own thread and then helps with
+     * the parses, rather than wait for threads that may be taken by the read itself.
+     *
+     * @return The number of rows.
+     */
+    private static long runColumnTasks(final Executor exec, final Executor tokenizerExec, final boolean userExecutor,
+            final Callable<Long> tokenize, final IntFunction<ParseDenseStorageToColumn> newParse,
+            final ParseDenseStorageToColumn.Result[] results, final MemoryGovernor governor,
+            final ReadControl control) throws Exception {
+        final List<ColumnTask> tasks = new ArrayList<>(results.length);
+        // The first failure of the read, which is the one we report.
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicReference<Thread> writerThread = new AtomicReference<>();
+        final FutureTask<Long> writer = new FutureTask<>(() -> {
+            writerThread.set(Thread.currentThread());
+            try {
+                return tokenize.call();
+            } catch (Throwable t) {
+                // The tasks would otherwise wait for the rest of the input forever.
+                failure.compareAndSet(null, t);
+                governor.cancel(t);
+                for (final ColumnTask task : tasks) {
+                    task.cancel(t);
+                }
+                throw t;
+            } finally {
+                writerThread.set(null);
+            }
+        });
+        final Consumer<Throwable> onFailure = t -> {
+            failure.compareAndSet(null, t);
+            governor.cancel(t);
+            // The writer may be parked waiting for the failed column. If it is running the task itself, it sees the
+            // cancellation once the task returns.
+            if (writerThread.get() != Thread.currentThread()) {
+                writer.cancel(true);
+            }
+            for (final ColumnTask task : tasks) {
+                task.cancel(t);
+            }
+        };
+        for (int ii = 0; ii < results.length; ++ii) {
+            tasks.add(new ColumnTask(newParse.apply(ii), exec, onFailure));
+        }
+        if (userExecutor) {
+            governor.setHelper(() -> {
+                for (final ColumnTask task : tasks) {
+                    if (task.runHereIfQueued()) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+        control.onCancel(reason -> {
+            governor.cancel(reason);
+            writer.cancel(true);
+            for (final ColumnTask task : tasks) {
+                task.cancel(reason);
+            }
+        });
+        try {
+            for (final ColumnTask task : tasks) {
+                task.schedule();
+            }
+            if (control.runsOnExecutor()) {
+                writer.run();
+                // The writer is done, so every task that isn't is either running or queued, and we can take those.
+                for (final ColumnTask task : tasks) {
+                    task.runHereIfQueued();
+                }
+            } else {
+                tokenizerExec.execute(writer);
+            }
+            final long numRows = writer.get();
+            for (int ii = 0; ii < results.length; ++ii) {
+                results[ii] = tasks.get(ii).future().get();
+            }
+            return numRows;
+        } catch (Throwable t) {
+            // Don't leave anything running, or waiting, if we are giving up.
+            governor.cancel(t);
+            writer.cancel(true);
+            for (final ColumnTask task : tasks) {
+                task.cancel(t);
+            }
+            final Throwable first = failure.get();
+            if (first != null && control.reason() == null) {
+                throw new ExecutionException(first);
+            }
+            throw t;
+        } finally {
+            if (control.runsOnExecutor()) {
+                // Cancelling the read interrupts the writer, which ran on this thread of the user's.
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Determine which columns to read. Returns all of them unless the user has set {@link CsvSpecs#includedColumnNames}
+     * or {@link CsvSpecs#includedColumnIndices}.
+     *
+     * @return The 0-based indices of the selected columns, in increasing order.
+     */
+    private static int[] calcSelectedColumns(final CsvSpecs specs, final String[] columnNames, final int numCols)
+            throws CsvReaderException {
+        final Set<String> names = specs.includedColumnNames();
+        final Set<Integer> indices = specs.includedColumnIndices();
+        if (names.isEmpty() && indices.isEmpty()) {
+            final int[] result = new int[numCols];
+            for (int ii = 0; ii < numCols; ++ii) {
+                result[ii] = ii;
+            }
+            return result;
+        }
+        final BitSet selected = new BitSet(numCols);
+        final Set<String> unmatchedNames = new LinkedHashSet<>(names);
+        for (int ii = 0; ii < numCols; ++ii) {
+            if (names.contains(columnNames[ii])) {
+                selected.set(ii);
+                unmatchedNames.remove(columnNames[ii]);
+            }
+        }
+        final List<Integer> badIndices = new ArrayList<>();
+        for (final int index : indices) {
+            if (index < numCols) {
+                selected.set(index);
+            } else {
+                badIndices.add(index);
+            }
+        }
+        if (!unmatchedNames.isEmpty() || !badIndices.isEmpty()) {
+            final StringBuilder sb = new StringBuilder("Some included columns do not exist.");
+            if (!unmatchedNames.isEmpty()) {
+                sb.append(" Unknown names: ");
+                sb.append(Renderer.renderList(unmatchedNames));
+            }
+            if (!badIndices.isEmpty()) {
+                sb.append(String.format(" Indices out of range (there are %d columns): ", numCols));
+                sb.append(Renderer.renderList(badIndices));
+            }
+            throw new CsvReaderException(sb.toString());
+        }
+        return selected.stream().toArray();
+    }
+
+    /**
+     * Choose the size of the parsers' chunks for a read, so that the columns being parsed at once stay within
+     * {@link CsvSpecs#parserChunkMemoryBudget()}, and so that a short input doesn't get chunks far bigger than it
+     * needs. The result is a power of two, which helps a {@link io.deephaven.csv.parsers.ChunkPool} to reuse chunks
+     * across reads.
+     *
+     * @param dataSize The size in bytes of the data rows, if known, or -1. Every row takes at least a byte per input
+     *        column (for the delimiters and line terminator), which gives a rough bound on the number of rows.
+     */
+    private static int chooseParserChunkSize(final CsvSpecs specs, final int numInputCols, final int numSelectedCols,
+            final long dataSize) {
+        long numRows = specs.numRows();
+        if (dataSize >= 0) {
+            numRows = Math.min(numRows, dataSize / Math.max(1, numInputCols) + 1);
         }
+        // A concurrent read's columns all hold their chunks at once, even those waiting for a thread.
+        final long columnsAtOnce = specs.concurrent() ? Math.max(1, numSelectedCols) : 1;
+        final long byBudget = specs.parserChunkMemoryBudget() / (columnsAtOnce * PARSER_CHUNK_BYTES_PER_ROW);
+        final long size = Math.min(Parser.CHUNK_SIZE, Math.min(byBudget, numRows));
+        return (int) Math.max(MIN_PARSER_CHUNK_SIZE, Long.highestOneBit(size));
     }
 
     /**
@@ -266,10 +847,22 @@ public final class CsvReader {
     public static final class Result implements Iterable<ResultColumn> {
         private final long numRows;
         private final ResultColumn[] columns;
+        private final long peakDenseStorageBytes;
+        private final long denseStorageBytesSpilled;
 
         public Result(long numRows, ResultColumn[] columns) {
+            this(numRows, columns, 0);
+        }
+
+        public Result(long numRows, ResultColumn[] columns, long peakDenseStorageBytes) {
+            this(numRows, columns, peakDenseStorageBytes, 0);
+        }
+
+        public Result(long numRows, ResultColumn[] columns, long peakDenseStorageBytes, long denseStorageBytesSpilled) {
             this.numRows = numRows;
             this.columns = columns;
+            this.peakDenseStorageBytes = peakDenseStorageBytes;
+            this.denseStorageBytesSpilled = denseStorageBytesSpilled;
         }
 
         /** Number of rows in the input. */
@@ -287,6 +880,22 @@ public final class CsvReader {
             return columns;
         }
 
+        /**
+         * The most memory, in bytes, that the read used at any one time to hold cell text between tokenizing and
+         * parsing. Text that was spilled to disk (see {@link CsvSpecs#denseStorageMemoryBudget}) is not counted.
+         */
+        public long peakDenseStorageBytes() {
+            return peakDenseStorageBytes;
+        }
+
+        /**
+         * The amount of cell text, in bytes, that the read spilled to disk to stay within its memory budget (see
+         * {@link CsvSpecs#denseStorageMemoryBudget}).
+         */
+        public long denseStorageBytesSpilled() {
+            return denseStorageBytesSpilled;
+        }
+
         @NotNull
         @Override
         public Iterator<ResultColumn> iterator() {
@@ -328,13 +937,4 @@ public final class CsvReader {
             return dataType;
         }
     }
-
-    private enum DirectExecutor implements Executor {
-        INSTANCE;
-
-        @Override
-        public void execute(@NotNull Runnable command) {
-            command.run();
-        }
-    }
 }
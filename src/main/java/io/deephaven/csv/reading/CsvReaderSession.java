@@ -0,0 +1,143 @@
+package io.deephaven.csv.reading;
+
+import io.deephaven.csv.CsvSpecs;
+import io.deephaven.csv.densestorage.DenseStorageAllocator;
+import io.deephaven.csv.parsers.ChunkPool;
+import io.deephaven.csv.sinks.SinkFactory;
+import io.deephaven.csv.util.CsvReaderException;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the resources that {@link CsvReader} would otherwise set up and tear down for every read, for applications
+ * that do many reads, such as ingesting a stream of small files, where that setup can take longer than the reading.
+ * A session holds:
+ *
+ * <ul>
+ * <li>Worker threads for concurrent and asynchronous reads, which are reused from one read to the next (see
+ * {@link CsvSpecs.Builder#executor}). Threads that have been idle for a minute go away.
+ * <li>A pool of dense storage blocks (see {@link DenseStorageAllocator#pooledHeap}).
+ * <li>A pool of parser chunks (see {@link ChunkPool}).
+ * </ul>
+ *
+ * <p>
+ * Each is used only for reads whose {@link CsvSpecs} leave the corresponding option at its default. Otherwise, reads
+ * through a session behave exactly like reads through {@link CsvReader}. A session is thread-safe, and reads through
+ * it may run at the same time. Close it when done with it.
+ */
+public final class CsvReaderSession implements AutoCloseable {
+    /** The default for the most memory each of the session's pools holds on to. */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 64L << 20;
+
+    private final ExecutorService executor;
+    private final DenseStorageAllocator allocator;
+    private final ChunkPool chunkPool;
+
+    /**
+     * Constructor. Each of the session's pools holds on to at most {@link #DEFAULT_MAX_POOLED_BYTES}.
+     */
+    public CsvReaderSession() {
+        this(DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxPooledBytes The most memory each of the session's pools holds on to between reads.
+     */
+    public CsvReaderSession(final long maxPooledBytes) {
+        this.allocator = DenseStorageAllocator.pooledHeap(maxPooledBytes);
+        this.chunkPool = new ChunkPool(maxPooledBytes);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            final Thread t = new Thread(r, "CsvReaderSession-worker");
+            // Don't keep the JVM alive on account of a session nobody closed.
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Read the data. See {@link CsvReader#read(CsvSpecs, InputStream, SinkFactory)}.
+     */
+    public CsvReader.Result read(final CsvSpecs specs, final InputStream stream, final SinkFactory sinkFactory)
+            throws CsvReaderException {
+        return CsvReader.read(withSessionResources(specs), stream, sinkFactory);
+    }
+
+    /**
+     * Read the data from a file. See {@link CsvReader#read(CsvSpecs, Path, SinkFactory)}.
+     */
+    public CsvReader.Result read(final CsvSpecs specs, final Path path, final SinkFactory sinkFactory)
+            throws CsvReaderException {
+        return CsvReader.read(withSessionResources(specs), path, sinkFactory);
+    }
+
+    /**
+     * Read the data from a file, with a {@link CsvRowIndex}. See
+     * {@link CsvReader#read(CsvSpecs, Path, CsvRowIndex, SinkFactory)}.
+     */
+    public CsvReader.Result read(final CsvSpecs specs, final Path path, final CsvRowIndex rowIndex,
+            final SinkFactory sinkFactory) throws CsvReaderException {
+        return CsvReader.read(withSessionResources(specs), path, rowIndex, sinkFactory);
+    }
+
+    /**
+     * Start reading the data in the background, on one of the session's worker threads (unless {@code specs} supplies
+     * an executor of its own). See {@link CsvReader#readAsync(CsvSpecs, InputStream, SinkFactory)}.
+     */
+    public CompletableFuture<CsvReader.Result> readAsync(final CsvSpecs specs, final InputStream stream,
+            final SinkFactory sinkFactory) {
+        return CsvReader.readAsync(withSessionResources(specs, true), stream, sinkFactory);
+    }
+
+    /**
+     * Start reading the data from a file in the background, on one of the session's worker threads (unless
+     * {@code specs} supplies an executor of its own). See {@link CsvReader#readAsync(CsvSpecs, Path, SinkFactory)}.
+     */
+    public CompletableFuture<CsvReader.Result> readAsync(final CsvSpecs specs, final Path path,
+            final SinkFactory sinkFactory) {
+        return CsvReader.readAsync(withSessionResources(specs, true), path, sinkFactory);
+    }
+
+    /**
+     * The session's pool of parser chunks.
+     */
+    public ChunkPool chunkPool() {
+        return chunkPool;
+    }
+
+    /**
+     * Stop the session's worker threads once the reads in progress are done. Reads through the session that start
+     * afterwards fail if they are concurrent.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private CsvSpecs withSessionResources(final CsvSpecs specs) {
+        return withSessionResources(specs, false);
+    }
+
+    /**
+     * @param async Whether the read is asynchronous, in which case it runs on the session's threads even if it isn't
+     *        concurrent.
+     */
+    private CsvSpecs withSessionResources(final CsvSpecs specs, final boolean async) {
+        final CsvSpecs.Builder builder = CsvSpecs.builder().from(specs);
+        if ((specs.concurrent() || async) && specs.executor() == null && !specs.virtualThreads()) {
+            builder.executor(executor);
+        }
+        if (specs.denseStorageAllocator() == DenseStorageAllocator.heap()) {
+            builder.denseStorageAllocator(allocator);
+        }
+        if (specs.parserChunkPool() == null) {
+            builder.parserChunkPool(chunkPool);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,255 @@
+package io.deephaven.csv.reading;
+
+import io.deephaven.csv.CsvSpecs;
+import io.deephaven.csv.reading.cells.DelimitedCellGrabber;
+import io.deephaven.csv.reading.input.FileRegionInputStream;
+import io.deephaven.csv.util.CsvReaderException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An index of where the rows of a delimited file start. The index is built by scanning the file once (with quotes
+ * accounted for, so that a row may span several lines) and records the file offset of every {@code rowsPerEntry}th
+ * row. The index can be saved to a "sidecar" file and loaded again later. Passing it to
+ * {@link CsvReader#read(CsvSpecs, Path, CsvRowIndex, io.deephaven.csv.sinks.SinkFactory)} lets the reader seek close to
+ * the first row wanted (per {@link CsvSpecs#skipRows}) rather than scanning from the start of the file, stop reading
+ * once it is past the last row wanted (per {@link CsvSpecs#numRows}), and, when tokenizing in parallel, divide the file
+ * at known row boundaries.
+ *
+ * <p>
+ * Rows here are counted from the start of the file, so header rows count too. Empty rows count as well, even if
+ * {@link CsvSpecs#ignoreEmptyLines} is set. The index depends on the file's contents and on the settings that determine
+ * where rows end, namely {@link CsvSpecs#quote}, {@link CsvSpecs#delimiter} and
+ * {@link CsvSpecs#ignoreSurroundingSpaces}. The reader checks these, as well as the size and modification time of the
+ * file, before using the index.
+ */
+public final class CsvRowIndex {
+    /** The first four bytes of a sidecar file ("CSVI"). */
+    private static final int MAGIC = 0x43535649;
+    private static final int VERSION = 1;
+
+    private final long fileSize;
+    private final long lastModifiedMillis;
+    private final char quote;
+    private final char delimiter;
+    private final boolean ignoreSurroundingSpaces;
+    private final int rowsPerEntry;
+    private final long numRows;
+    /** The file offset of row {@code ii * rowsPerEntry}. */
+    private final long[] offsets;
+    /** The physical row number (i.e. line number) of the file as of each entry in {@link #offsets}. */
+    private final int[] physicalRowNums;
+
+    private CsvRowIndex(final long fileSize, final long lastModifiedMillis, final char quote, final char delimiter,
+            final boolean ignoreSurroundingSpaces, final int rowsPerEntry, final long numRows, final long[] offsets,
+            final int[] physicalRowNums) {
+        this.fileSize = fileSize;
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.quote = quote;
+        this.delimiter = delimiter;
+        this.ignoreSurroundingSpaces = ignoreSurroundingSpaces;
+        this.rowsPerEntry = rowsPerEntry;
+        this.numRows = numRows;
+        this.offsets = offsets;
+        this.physicalRowNums = physicalRowNums;
+    }
+
+    /**
+     * Scan a delimited file and build its index.
+     *
+     * @param specs The {@link CsvSpecs} the file will be read with. Only the settings that determine where rows end are
+     *        used.
+     * @param path The file to index. It must not be gzip-compressed.
+     * @param rowsPerEntry Record the start of every {@code rowsPerEntry}th row. Smaller values allow more precise
+     *        seeking, at the cost of a larger index.
+     * @return The index.
+     */
+    public static CsvRowIndex build(final CsvSpecs specs, final Path path, final int rowsPerEntry)
+            throws CsvReaderException {
+        if (rowsPerEntry <= 0) {
+            throw new IllegalArgumentException("rowsPerEntry must be positive, but is " + rowsPerEntry);
+        }
+        checkIndexable(specs);
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long lastModifiedMillis = Files.getLastModifiedTime(path).toMillis();
+            final long fileSize = channel.size();
+            // These two have already been validated by CsvSpecs to be 7-bit ASCII.
+            final DelimitedCellGrabber grabber = new DelimitedCellGrabber(new FileRegionInputStream(channel),
+                    (byte) specs.quote(), (byte) specs.delimiter(), specs.ignoreSurroundingSpaces(), false,
+                    specs.vectorizedTokenizer());
+            long[] offsets = new long[16];
+            int[] physicalRowNums = new int[16];
+            int numEntries = 1;
+            long numRows = 0;
+            while (grabber.skipRow()) {
+                ++numRows;
+                if (numRows % rowsPerEntry != 0) {
+                    continue;
+                }
+                if (numEntries == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, numEntries * 2);
+                    physicalRowNums = Arrays.copyOf(physicalRowNums, numEntries * 2);
+                }
+                offsets[numEntries] = grabber.bytesConsumed();
+                physicalRowNums[numEntries] = grabber.physicalRowNum();
+                ++numEntries;
+            }
+            return new CsvRowIndex(fileSize, lastModifiedMillis, specs.quote(), specs.delimiter(),
+                    specs.ignoreSurroundingSpaces(), rowsPerEntry, numRows, Arrays.copyOf(offsets, numEntries),
+                    Arrays.copyOf(physicalRowNums, numEntries));
+        } catch (IOException e) {
+            throw new CsvReaderException("Caught exception indexing " + path, e);
+        }
+    }
+
+    /**
+     * The conventional location of the sidecar file for {@code path}, namely the same name with ".rowindex" appended.
+     */
+    public static Path sidecarPathFor(final Path path) {
+        return path.resolveSibling(path.getFileName() + ".rowindex");
+    }
+
+    /**
+     * Save the index to a sidecar file.
+     */
+    public void write(final Path sidecarPath) throws CsvReaderException {
+        try (final DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sidecarPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModifiedMillis);
+            out.writeChar(quote);
+            out.writeChar(delimiter);
+            out.writeBoolean(ignoreSurroundingSpaces);
+            out.writeInt(rowsPerEntry);
+            out.writeLong(numRows);
+            out.writeInt(offsets.length);
+            for (int ii = 0; ii < offsets.length; ++ii) {
+                out.writeLong(offsets[ii]);
+                out.writeInt(physicalRowNums[ii]);
+            }
+        } catch (IOException e) {
+            throw new CsvReaderException("Caught exception writing " + sidecarPath, e);
+        }
+    }
+
+    /**
+     * Load an index previously saved with {@link #write}.
+     */
+    public static CsvRowIndex read(final Path sidecarPath) throws CsvReaderException {
+        try (final DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecarPath)))) {
+            if (in.readInt() != MAGIC) {
+                throw new CsvReaderException(sidecarPath + " is not a row index file");
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new CsvReaderException(
+                        String.format("%s has unsupported row index version %d", sidecarPath, version));
+            }
+            final long fileSize = in.readLong();
+            final long lastModifiedMillis = in.readLong();
+            final char quote = in.readChar();
+            final char delimiter = in.readChar();
+            final boolean ignoreSurroundingSpaces = in.readBoolean();
+            final int rowsPerEntry = in.readInt();
+            final long numRows = in.readLong();
+            final int numEntries = in.readInt();
+            final long[] offsets = new long[numEntries];
+            final int[] physicalRowNums = new int[numEntries];
+            for (int ii = 0; ii < numEntries; ++ii) {
+                offsets[ii] = in.readLong();
+                physicalRowNums[ii] = in.readInt();
+            }
+            return new CsvRowIndex(fileSize, lastModifiedMillis, quote, delimiter, ignoreSurroundingSpaces,
+                    rowsPerEntry, numRows, offsets, physicalRowNums);
+        } catch (IOException e) {
+            throw new CsvReaderException("Caught exception reading " + sidecarPath, e);
+        }
+    }
+
+    /** The number of rows in the file, including header rows. */
+    public long numRows() {
+        return numRows;
+    }
+
+    /** The number of rows between consecutive entries of the index. */
+    public int rowsPerEntry() {
+        return rowsPerEntry;
+    }
+
+    /**
+     * Confirm that this index can be used to read {@code path} (whose size is {@code size}) with {@code specs}.
+     */
+    void checkUsable(final CsvSpecs specs, final Path path, final long size) throws CsvReaderException {
+        checkIndexable(specs);
+        if (specs.quote() != quote || specs.delimiter() != delimiter
+                || specs.ignoreSurroundingSpaces() != ignoreSurroundingSpaces) {
+            throw new CsvReaderException(
+                    "Row index was built with different quote, delimiter, or ignoreSurroundingSpaces settings");
+        }
+        final long lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            throw new CsvReaderException("Caught exception reading " + path, e);
+        }
+        if (size != fileSize || lastModified != lastModifiedMillis) {
+            throw new CsvReaderException(
+                    String.format("Row index is stale: %s has changed since it was indexed", path));
+        }
+    }
+
+    /** The index of the last entry at or before {@code row}. */
+    int floorEntry(final long row) {
+        return (int) Math.min(row / rowsPerEntry, offsets.length - 1);
+    }
+
+    /** The row number of entry {@code entry}. */
+    long entryRow(final int entry) {
+        return (long) entry * rowsPerEntry;
+    }
+
+    /** The file offset of entry {@code entry}. */
+    long entryOffset(final int entry) {
+        return offsets[entry];
+    }
+
+    /** The physical row number of the file as of entry {@code entry}. */
+    int entryPhysicalRowNum(final int entry) {
+        return physicalRowNums[entry];
+    }
+
+    /**
+     * A file offset at or after the end of row {@code row - 1}: the offset of the first entry at or after {@code row},
+     * or the end of the file if there is none.
+     */
+    long offsetAtOrAfter(final long row) {
+        if (row >= numRows) {
+            return fileSize;
+        }
+        final long entry = (row + rowsPerEntry - 1) / rowsPerEntry;
+        return entry >= offsets.length ? fileSize : offsets[(int) entry];
+    }
+
+    /** The file offsets of all the entries, in increasing order. Each one is the start of a row. */
+    long[] offsets() {
+        return offsets;
+    }
+
+    private static void checkIndexable(final CsvSpecs specs) throws CsvReaderException {
+        if (specs.hasFixedWidthColumns() || specs.gzipInput()) {
+            throw new CsvReaderException("Row indexes are only supported for uncompressed, delimited input");
+        }
+    }
+}
@@ -8,6 +8,7 @@ import io.deephaven.csv.sinks.SinkFactory;
 import io.deephaven.csv.tokenization.Tokenizer;
 import io.deephaven.csv.util.*;
 
+import java.lang.reflect.Array;
 import java.util.*;
 
 import org.jetbrains.annotations.NotNull;
@@ -15,6 +16,13 @@ import org.jetbrains.annotations.NotNull;
 /**
  * The job of this class is to take a column of cell text, as prepared by {@link ParseInputToDenseStorage}, do type
  * inference if appropriate, and parse the text into typed data.
+ *
+ * <p>
+ * A column can be parsed in one go, with {@link #doit}, waiting for the tokenizer whenever the parse catches up with
+ * it. Or it can be parsed in steps: an instance of this class stops (see {@link #resume}) when it has parsed all the
+ * text that the tokenizer has written so far, and carries on from there when called again once there is more. This lets
+ * the caller give up its thread in between, so that many columns can share a few threads. Type inference is written as
+ * a state machine for this reason: each {@link Stage} picks up where the last call left off.
  */
 public final class ParseDenseStorageToColumn {
     /**
@@ -24,6 +32,7 @@ public final class ParseDenseStorageToColumn {
      * @param nullValueLiteralsToUse If a cell text is equal to any of the values in this array, the cell will be
      *        interpreted as the null value. Typically set to a one-element array containing the empty string.
      * @param sinkFactory Factory that makes all of the Sinks of various types, used to consume the data we produce.
+     * @param chunkSize The size of the parsers' chunks, at most {@link Parser#CHUNK_SIZE}.
      * @return The {@link Sink}, provided by the caller's {@link SinkFactory}, that was selected to hold the column
      *         data.
      */
@@ -33,19 +42,164 @@ public final class ParseDenseStorageToColumn {
             final List<Parser<?>> parsers,
             final CsvSpecs specs,
             final String[] nullValueLiteralsToUse,
-            final SinkFactory sinkFactory)
+            final SinkFactory sinkFactory,
+            final int chunkSize)
             throws CsvReaderException {
-        Set<Parser<?>> parserSet = new HashSet<>(parsers != null ? parsers : Parsers.DEFAULT);
+        final ParseDenseStorageToColumn parse = new ParseDenseStorageToColumn(colNum, dsr, parsers, specs,
+                nullValueLiteralsToUse, sinkFactory, chunkSize, true);
+        if (!parse.resume()) {
+            throw new RuntimeException("Logic error: a parse that waits for its input stopped early");
+        }
+        return parse.result();
+    }
+
+    /** Where the parse has got to. */
+    private enum Stage {
+        /** Looking at the first cell, to see whether the column is empty. */
+        START,
+        /** Skipping over leading null cells. */
+        SKIP_NULLS,
+        /** Trying the numeric parsers of {@link #parsers} in turn, with {@link #pass}. */
+        NUMERICS,
+        /** Trying the parsers of {@link #parsers} other than the last in turn, with {@link #pass}. */
+        FROM_LIST,
+        /** Going back over the cells that {@link #pass}'s parser skipped, in a second pass. */
+        SECOND_PASS,
+        /** Parsing the whole column with {@link #pass}, whose parser has nothing to fall back to. */
+        ONE_PHASE,
+        /** Finished, with the outcome in {@link #result}. */
+        DONE
+    }
+
+    private final Set<Parser<?>> parserSet;
+    /** The parser for a column that is empty or all nulls. */
+    private final Parser<?> nullParserToUse;
+    private final Parser.GlobalContext gctx;
+    /**
+     * Two IteratorHolders for (potentially) having two passes over the input. We take care to not hold these
+     * references longer than necessary, to give the GC a chance to collect the data in our linked list.
+     */
+    private IteratorHolder ih;
+    private IteratorHolder ihAlt;
+    private Stage stage;
+    /**
+     * If not null, the iterator that ran out of input, which must be moved onto its next item before we carry on.
+     */
+    private IteratorHolder stalledOn;
+    private CategorizedParsers cats;
+    /** The parsers being tried in turn, in {@link Stage#NUMERICS} and {@link Stage#FROM_LIST}. */
+    private List<Parser<?>> parsers;
+    /** The index in {@link #parsers} of the one being tried. */
+    private int parserIndex;
+    /** The results of the numeric parsers so far, in {@link Stage#NUMERICS}. */
+    private List<ParserResultWrapper<?>> wrappers;
+    /** The parser currently running over the input. */
+    private Pass<?> pass;
+    private Result result;
+
+    /**
+     * Constructor. Nothing is parsed until {@link #resume} is called. See {@link #doit} for the parameters.
+     *
+     * @param waitForInput Whether to wait for the tokenizer when the parse catches up with it, rather than stop.
+     */
+    public ParseDenseStorageToColumn(
+            final int colNum,
+            final Moveable<DenseStorageReader> dsr,
+            final List<Parser<?>> parsers,
+            final CsvSpecs specs,
+            final String[] nullValueLiteralsToUse,
+            final SinkFactory sinkFactory,
+            final int chunkSize,
+            final boolean waitForInput) {
+        parserSet = new HashSet<>(parsers != null ? parsers : Parsers.DEFAULT);
+        nullParserToUse = parserSet.size() == 1 ? parserSet.iterator().next() : specs.nullParser();
 
         final Tokenizer tokenizer = new Tokenizer(specs.customDoubleParser(), specs.customTimeZoneParser());
-        final Parser.GlobalContext gctx =
-                new Parser.GlobalContext(colNum, tokenizer, sinkFactory, nullValueLiteralsToUse);
+        gctx = new Parser.GlobalContext(colNum, tokenizer, sinkFactory, nullValueLiteralsToUse,
+                specs.parserChunkPool(), chunkSize);
+
+        ihAlt = new IteratorHolder(dsr.get().copy(), waitForInput);
+        ih = new IteratorHolder(dsr.move().get(), waitForInput);
+        stage = Stage.START;
+        // The first thing to do is to move onto the first cell.
+        stalledOn = ih;
+    }
 
-        // Make two IteratorHolders for (potentially) having two passes over the input. We take care to not hold these
-        // references longer than necessary, to give the GC a chance to collect the data in our linked list.
-        final Moveable<IteratorHolder> ihAlt = new Moveable<>(new IteratorHolder(dsr.get().copy()));
-        final Moveable<IteratorHolder> ih = new Moveable<>(new IteratorHolder(dsr.move().get()));
+    /**
+     * Carry on parsing the column, until it is done or (if we aren't waiting for input) until we have parsed all the
+     * text written to it so far.
+     *
+     * @return true if the column is done, in which case {@link #result()} has the outcome. Otherwise false, and
+     *         {@link #runWhenInputAvailable} says when to call this method again.
+     */
+    public boolean resume() throws CsvReaderException {
+        try {
+            if (!step()) {
+                return false;
+            }
+        } catch (Throwable t) {
+            gctx.releaseChunks();
+            throw t;
+        }
+        // The sinks have copied what they need out of the chunks by now.
+        gctx.releaseChunks();
+        return true;
+    }
+
+    /**
+     * Arrange for {@code task} to be run once there is input for {@link #resume} to carry on with, after it has
+     * returned false. See {@link DenseStorageReader#runWhenAvailable} for what the task may do.
+     *
+     * @return false, with nothing arranged, if there already is. Otherwise true.
+     */
+    public boolean runWhenInputAvailable(final Runnable task) {
+        return stalledOn != null && stalledOn.runWhenAvailable(task);
+    }
+
+    /** The outcome of the parse, once {@link #resume} has returned true. */
+    public Result result() {
+        return result;
+    }
 
+    private boolean step() throws CsvReaderException {
+        if (stalledOn != null) {
+            if (!stalledOn.tryMoveNext() && stalledOn.isWaiting()) {
+                return false;
+            }
+            stalledOn = null;
+        }
+        // Each stage is entered with its iterator on a cell that has yet to be looked at, or exhausted.
+        while (stage != Stage.DONE) {
+            switch (stage) {
+                case START:
+                    start();
+                    break;
+                case SKIP_NULLS:
+                    skipNulls();
+                    break;
+                case NUMERICS:
+                    continueNumerics();
+                    break;
+                case FROM_LIST:
+                    continueFromList();
+                    break;
+                case SECOND_PASS:
+                    finishSecondPass();
+                    break;
+                case ONE_PHASE:
+                    finishOnePhase();
+                    break;
+                default:
+                    throw new RuntimeException("Logic error: unexpected stage " + stage);
+            }
+            if (stalledOn != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void start() throws CsvReaderException {
         // Skip over leading null cells. There are four cases:
         // 1. The column is empty. In this case we run the "empty parser"
         // 2. There is only one available parser. In this case we shortcut to that parser and let it deal with the
@@ -54,215 +208,270 @@ public final class ParseDenseStorageToColumn {
         // ahead without writing to its sink, as would happen in our null-skipping type inference logic).
         // 3. The column is full of all nulls
         // 4. There is a non-null cell (so the type inference process can begin)
-
-        final Parser<?> nullParserToUse =
-                parserSet.size() == 1 ? parserSet.iterator().next() : specs.nullParser();
-
-        if (!ih.get().tryMoveNext()) {
+        if (ih.isExhausted()) {
             // Case 1: The column is empty
             if (nullParserToUse == null) {
                 throw new CsvReaderException(
                         "Column is empty, so can't infer type of column, and nullParser is not specified.");
             }
-            ih.reset();
-            ihAlt.reset();
-            return emptyParse(nullParserToUse, gctx);
+            ih = discard(ih);
+            ihAlt = discard(ihAlt);
+            finish(emptyParse(nullParserToUse, gctx));
+            return;
         }
 
         if (parserSet.size() == 1) {
             // Case 2. There is only one available parser.
-            final Parser<?> parserToUse = parserSet.iterator().next();
-            ih.reset();
-            return onePhaseParse(parserToUse, gctx, ihAlt.move());
+            ih = discard(ih);
+            startOnePhase(parserSet.iterator().next());
+            return;
         }
+        stage = Stage.SKIP_NULLS;
+    }
 
-        boolean columnIsAllNulls = true;
-        do {
-            if (!gctx.isNullCell(ih.get())) {
-                columnIsAllNulls = false;
-                break;
+    private void skipNulls() throws CsvReaderException {
+        while (!ih.isExhausted()) {
+            if (!gctx.isNullCell(ih)) {
+                // Case 4: there is a non-null cell (so the type inference process can begin).
+                infer();
+                return;
             }
-        } while (ih.get().tryMoveNext());
-
-        if (columnIsAllNulls) {
-            // case 3. The column is full of all nulls
-            if (nullParserToUse == null) {
-                throw new CsvReaderException(
-                        "Column contains all null cells, so can't infer type of column, and nullParser is not specified.");
+            if (!ih.tryMoveNext() && ih.isWaiting()) {
+                stalledOn = ih;
+                return;
             }
-            ih.reset();
-            return onePhaseParse(nullParserToUse, gctx, ihAlt.move());
         }
+        // Case 3. The column is full of all nulls
+        if (nullParserToUse == null) {
+            throw new CsvReaderException(
+                    "Column contains all null cells, so can't infer type of column, and nullParser is not specified.");
+        }
+        ih = discard(ih);
+        startOnePhase(nullParserToUse);
+    }
 
-        // The rest of this logic is for case 2: there is a non-null cell (so the type inference process can begin).
-
-        final CategorizedParsers cats = CategorizedParsers.create(parserSet);
+    private void infer() throws CsvReaderException {
+        final Tokenizer tokenizer = gctx.tokenizer();
+        cats = CategorizedParsers.create(parserSet);
 
         if (cats.customParser != null) {
-            ih.reset();
-            return onePhaseParse(cats.customParser, gctx, ihAlt.move());
+            ih = discard(ih);
+            startOnePhase(cats.customParser);
+            return;
         }
 
         // Numerics are special and they get their own fast path that uses Sources and Sinks rather than
         // reparsing the text input.
         final MutableDouble dummyDouble = new MutableDouble();
-        if (!cats.numericParsers.isEmpty() && tokenizer.tryParseDouble(ih.get().bs(), dummyDouble)) {
-            return parseNumerics(cats, gctx, ih.move(), ihAlt.move());
+        if (!cats.numericParsers.isEmpty() && tokenizer.tryParseDouble(ih.bs(), dummyDouble)) {
+            stage = Stage.NUMERICS;
+            parsers = cats.numericParsers;
+            parserIndex = 0;
+            wrappers = new ArrayList<>();
+            pass = Pass.start(parsers.get(0), gctx, ih, Long.MAX_VALUE, true);
+            return;
         }
 
         List<Parser<?>> universeByPrecedence = Arrays.asList(Parsers.CHAR, Parsers.STRING);
         final MutableBoolean dummyBoolean = new MutableBoolean();
         final MutableLong dummyLong = new MutableLong();
-        if (cats.timestampParser != null && tokenizer.tryParseLong(ih.get().bs(), dummyLong)) {
+        if (cats.timestampParser != null && tokenizer.tryParseLong(ih.bs(), dummyLong)) {
             universeByPrecedence = Arrays.asList(cats.timestampParser, Parsers.CHAR, Parsers.STRING);
-        } else if (cats.booleanParser != null && tokenizer.tryParseBoolean(ih.get().bs(), dummyBoolean)) {
+        } else if (cats.booleanParser != null && tokenizer.tryParseBoolean(ih.bs(), dummyBoolean)) {
             universeByPrecedence = Arrays.asList(Parsers.BOOLEAN, Parsers.STRING);
-        } else if (cats.dateTimeParser != null && tokenizer.tryParseDateTime(ih.get().bs(), dummyLong)) {
+        } else if (cats.dateTimeParser != null && tokenizer.tryParseDateTime(ih.bs(), dummyLong)) {
             universeByPrecedence = Arrays.asList(Parsers.DATETIME, Parsers.STRING);
         }
-        List<Parser<?>> parsersToUse = limitToSpecified(universeByPrecedence, parserSet);
-        return parseFromList(parsersToUse, gctx, ih.move(), ihAlt.move());
+        startFromList(limitToSpecified(universeByPrecedence, parserSet));
     }
 
-    @NotNull
-    private static Result parseNumerics(CategorizedParsers cats, final Parser.GlobalContext gctx,
-            Moveable<IteratorHolder> ih, Moveable<IteratorHolder> ihAlt) throws CsvReaderException {
-        final List<ParserResultWrapper<?>> wrappers = new ArrayList<>();
-        for (Parser<?> parser : cats.numericParsers) {
-            final ParserResultWrapper<?> prw = parseNumericsHelper(parser, gctx, ih.get());
-            wrappers.add(prw);
-            if (ih.get().isExhausted()) {
-                break;
+    private void continueNumerics() throws CsvReaderException {
+        if (!pass.resume(gctx)) {
+            stalledOn = ih;
+            return;
+        }
+        final ParserResultWrapper<?> prw = pass.toWrapper();
+        wrappers.add(prw);
+        if (!ih.isExhausted() && ++parserIndex < parsers.size()) {
+            if (prw.pctx.source() == null) {
+                // We won't be able to unify the results, so ihAlt will have to go back over what ih has read, while
+                // ih carries on with the next parser.
+                ihAlt.keepForSecondPass(ih);
             }
+            pass = Pass.start(parsers.get(parserIndex), gctx, ih, Long.MAX_VALUE, true);
+            return;
         }
+        pass = null;
 
-        if (!ih.get().isExhausted()) {
+        if (!ih.isExhausted()) {
             // More friendly error message here.
             if (cats.charAndStringParsers.isEmpty()) {
                 final String message = String.format(
                         "Consumed %d numeric items, then encountered a non-numeric item but there are no char/string parsers available.",
-                        ih.get().numConsumed() - 1);
+                        ih.numConsumed() - 1);
                 throw new CsvReaderException(message);
             }
             // Tried all numeric parsers but couldn't consume all input. Fall back to the char and string parsers.
-            wrappers.clear();
-            return parseFromList(cats.charAndStringParsers, gctx, ih.move(), ihAlt.move());
+            wrappers = null;
+            if (cats.charAndStringParsers.size() > 1) {
+                // ihAlt will have to go back over what ih has read, while ih carries on with the first of them.
+                ihAlt.keepForSecondPass(ih);
+            }
+            startFromList(cats.charAndStringParsers);
+            return;
         }
 
-        ih.reset();
+        ih = discard(ih);
 
         // If all the wrappers implement the Source interface (except possibly the last, which doesn't need to),
         // we can read the data back and cast it to the right numeric type.
         if (canUnify(wrappers)) {
-            ihAlt.reset();
-            return unifyNumericResults(gctx, wrappers);
+            ihAlt = discard(ihAlt);
+            finish(unifyNumericResults(gctx, wrappers));
+            return;
         }
         // Otherwise (if some wrappers do not implement the Source interface), we have to do a reparse.
-        final ParserResultWrapper<?> last = wrappers.get(wrappers.size() - 1);
-        return performSecondParsePhase(gctx, last, ihAlt.move());
+        startSecondPass(wrappers.get(wrappers.size() - 1));
     }
 
-    private static boolean canUnify(final List<ParserResultWrapper<?>> items) {
-        for (int i = 0; i < items.size() - 1; ++i) {
-            if (items.get(i).pctx.source() == null) {
-                return false;
-            }
+    private void startFromList(final List<Parser<?>> parsersToTry) throws CsvReaderException {
+        if (parsersToTry.isEmpty()) {
+            throw new CsvReaderException("No available parsers.");
         }
-        return true;
+        parsers = parsersToTry;
+        parserIndex = 0;
+        tryNextFromList();
     }
 
-    @NotNull
-    private static <TARRAY> ParserResultWrapper<TARRAY> parseNumericsHelper(
-            Parser<TARRAY> parser, final Parser.GlobalContext gctx, final IteratorHolder ih)
-            throws CsvReaderException {
-        final Parser.ParserContext<TARRAY> pctx = parser.makeParserContext(gctx, Parser.CHUNK_SIZE);
-        final long begin = ih.numConsumed() - 1;
-        final long end = parser.tryParse(gctx, pctx, ih, begin, Long.MAX_VALUE, true);
-        return new ParserResultWrapper<>(parser, pctx, begin, end);
+    private void tryNextFromList() {
+        if (parserIndex == parsers.size() - 1) {
+            // The final parser in the set gets special (more efficient) handling because there's nothing to
+            // fall back to.
+            ih = discard(ih);
+            startOnePhase(parsers.get(parserIndex));
+            return;
+        }
+        stage = Stage.FROM_LIST;
+        pass = Pass.start(parsers.get(parserIndex), gctx, ih, Long.MAX_VALUE, true);
     }
 
-    @NotNull
-    private static Result parseFromList(final List<Parser<?>> parsers, final Parser.GlobalContext gctx,
-            Moveable<IteratorHolder> ih, Moveable<IteratorHolder> ihAlt) throws CsvReaderException {
-        if (parsers.isEmpty()) {
-            throw new CsvReaderException("No available parsers.");
+    private void continueFromList() throws CsvReaderException {
+        if (!pass.resume(gctx)) {
+            stalledOn = ih;
+            return;
         }
-
-        for (int ii = 0; ii < parsers.size() - 1; ++ii) {
-            final Pair<Result, Failure> rof = tryTwoPhaseParse(parsers.get(ii), gctx, ih.move(), ihAlt.move());
-            if (rof.first != null) {
-                return rof.first;
+        if (!ih.isExhausted()) {
+            // This parser couldn't make it to the end but there are others remaining to try.
+            ++parserIndex;
+            if (parserIndex < parsers.size() - 1) {
+                // ihAlt will have to go back over what ih has read, while ih carries on with the next parser.
+                ihAlt.keepForSecondPass(ih);
             }
-            // If the operation failed, we need to move the IteratorHolders back to our local variables and try
-            // again. This might feel like overkill, but we are trying to be very disciplined about having at
-            // most one variable holding a reference to our DenseStorageReader.
-            ih = rof.second.ih.move();
-            ihAlt = rof.second.ihAlt.move();
+            tryNextFromList();
+            return;
         }
-
-        // The final parser in the set gets special (more efficient) handling because there's nothing to
-        // fall back to.
-        ih.reset();
-        return onePhaseParse(parsers.get(parsers.size() - 1), gctx, ihAlt.move());
-    }
-
-    private static <TARRAY> Pair<Result, Failure> tryTwoPhaseParse(final Parser<TARRAY> parser,
-            final Parser.GlobalContext gctx,
-            final Moveable<IteratorHolder> ih, final Moveable<IteratorHolder> ihAlt) throws CsvReaderException {
-        final long phaseOneStart = ih.get().numConsumed() - 1;
-        final Parser.ParserContext<TARRAY> pctx = parser.makeParserContext(gctx, Parser.CHUNK_SIZE);
-        final long end = parser.tryParse(gctx, pctx, ih.get(), phaseOneStart, Long.MAX_VALUE, true);
-        if (!ih.get().isExhausted()) {
-            // This parser couldn't make it to the end but there are others remaining to try. Signal a
-            // failure to the caller so that it can try the next one. Also, since we are being disciplined
-            // about moving the IteratorHolders around, move them back to the caller so the caller can use
-            // them again.
-            return new Pair<>(null, new Failure(ih.move(), ihAlt.move()));
-        }
-        if (phaseOneStart == 0) {
+        if (pass.begin == 0) {
             // Reached end, and started at zero so everything was parsed and we are done.
-            final Result result = new Result(pctx.sink(), pctx.dataType());
-            return new Pair<>(result, null);
+            ihAlt = discard(ihAlt);
+            finish(new Result(pass.pctx.sink(), pass.pctx.dataType()));
+            return;
         }
-        final ParserResultWrapper<TARRAY> wrapper = new ParserResultWrapper<>(parser, pctx, phaseOneStart, end);
-        ih.reset();
-        final Result result = performSecondParsePhase(gctx, wrapper, ihAlt.move());
-        return new Pair<>(result, null);
+        ih = discard(ih);
+        startSecondPass(pass.toWrapper());
     }
 
-    private static <TARRAY> Result performSecondParsePhase(final Parser.GlobalContext gctx,
-            final ParserResultWrapper<TARRAY> wrapper, final Moveable<IteratorHolder> ihAlt) throws CsvReaderException {
-        ihAlt.get().tryMoveNext(); // Input is not empty, so we know this will succeed.
-        final long end = wrapper.parser.tryParse(gctx, wrapper.pctx, ihAlt.get(), 0, wrapper.begin, false);
+    private <TARRAY> void startSecondPass(final ParserResultWrapper<TARRAY> wrapper) {
+        stage = Stage.SECOND_PASS;
+        // The second pass stops where the first one started.
+        pass = new Pass<>(wrapper.parser, wrapper.pctx, ihAlt, 0, wrapper.begin, false);
+        moveOnto(ihAlt);
+    }
 
-        if (end == wrapper.begin) {
-            return new Result(wrapper.pctx.sink(), wrapper.pctx.dataType());
+    private void finishSecondPass() throws CsvReaderException {
+        if (!pass.resume(gctx)) {
+            stalledOn = ihAlt;
+            return;
+        }
+        // The second pass stops where the first one started, so the reader is not exhausted.
+        ihAlt = discard(ihAlt);
+        if (pass.end == pass.limit) {
+            finish(new Result(pass.pctx.sink(), pass.pctx.dataType()));
+            return;
         }
         final String message = "Logic error: second parser phase failed on input. Parser was: "
-                + wrapper.parser.getClass().getCanonicalName();
+                + pass.parser.getClass().getCanonicalName();
         throw new RuntimeException(message);
     }
 
-    @NotNull
-    private static <TARRAY> Result onePhaseParse(final Parser<TARRAY> parser, final Parser.GlobalContext gctx,
-            final Moveable<IteratorHolder> ihAlt) throws CsvReaderException {
-        final Parser.ParserContext<TARRAY> pctx = parser.makeParserContext(gctx, Parser.CHUNK_SIZE);
-        ihAlt.get().tryMoveNext(); // Input is not empty, so we know this will succeed.
-        parser.tryParse(gctx, pctx, ihAlt.get(), 0, Long.MAX_VALUE, true);
-        if (ihAlt.get().isExhausted()) {
-            return new Result(pctx.sink(), pctx.dataType());
+    private void startOnePhase(final Parser<?> parser) {
+        stage = Stage.ONE_PHASE;
+        pass = Pass.create(parser, gctx, ihAlt, 0, Long.MAX_VALUE, true);
+        moveOnto(ihAlt);
+    }
+
+    private void finishOnePhase() throws CsvReaderException {
+        if (!pass.resume(gctx)) {
+            stalledOn = ihAlt;
+            return;
+        }
+        if (ihAlt.isExhausted()) {
+            finish(new Result(pass.pctx.sink(), pass.pctx.dataType()));
+            return;
         }
         final String message = String.format(
                 "Parsing failed on input, with nothing left to fall back to. Parser %s successfully parsed %d items before failure.",
-                parser.getClass().getCanonicalName(), ihAlt.get().numConsumed() - 1);
+                pass.parser.getClass().getCanonicalName(), ihAlt.numConsumed() - 1);
         throw new CsvReaderException(message);
     }
 
+    /**
+     * Move {@code it} onto its first cell, for a stage that starts there. If the cell hasn't been written yet, the
+     * stage starts once it has.
+     */
+    private void moveOnto(final IteratorHolder it) {
+        try {
+            // Input is not empty, so we know this will find a cell, if it doesn't have to wait for it.
+            if (!it.tryMoveNext() && it.isWaiting()) {
+                stalledOn = it;
+            }
+        } catch (CsvReaderException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void finish(final Result outcome) {
+        result = outcome;
+        pass = null;
+        stage = Stage.DONE;
+    }
+
+    /**
+     * Drop our reference to an {@link IteratorHolder} we no longer need, first closing it so that the data it has yet
+     * to read can be freed right away.
+     *
+     * @return null, for the caller to assign to its reference.
+     */
+    private static IteratorHolder discard(final IteratorHolder holder) {
+        if (holder != null) {
+            holder.close();
+        }
+        return null;
+    }
+
+    private static boolean canUnify(final List<ParserResultWrapper<?>> items) {
+        for (int i = 0; i < items.size() - 1; ++i) {
+            if (items.get(i).pctx.source() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @NotNull
     private static <TARRAY> Result emptyParse(
             final Parser<TARRAY> parser, final Parser.GlobalContext gctx) throws CsvReaderException {
         // The parser won't do any "parsing" here, but it will create a Sink.
-        final Parser.ParserContext<TARRAY> pctx = parser.makeParserContext(gctx, Parser.CHUNK_SIZE);
+        final Parser.ParserContext<TARRAY> pctx = parser.makeParserContext(gctx, gctx.chunkSize());
         parser.tryParse(gctx, pctx, null, 0, 0, true); // Result ignored.
         return new Result(pctx.sink(), pctx.dataType());
     }
@@ -318,12 +527,14 @@ public final class ParseDenseStorageToColumn {
         final boolean[] nullBuffer = gctx.nullChunk();
         final Sink<TARRAY> destSink = pctx.sink();
         final TARRAY values = pctx.valueChunk();
+        // A custom parser's chunk may be smaller than ours.
+        final int chunkSize = Math.min(nullBuffer.length, Array.getLength(values));
 
-        final int sizeToInit = Math.min(nullBuffer.length, Math.toIntExact(end - begin));
+        final int sizeToInit = (int) Math.min(chunkSize, end - begin);
         Arrays.fill(nullBuffer, 0, sizeToInit, true);
 
         for (long current = begin; current != end;) { // no ++
-            final long endToUse = Math.min(current + nullBuffer.length, end);
+            final long endToUse = Math.min(current + chunkSize, end);
             // Don't care about the actual values, only the null flag values (which are all true).
             destSink.write(values, nullBuffer, current, endToUse, false);
             current = endToUse;
@@ -358,16 +569,6 @@ public final class ParseDenseStorageToColumn {
         }
     }
 
-    private static class Failure {
-        public final Moveable<IteratorHolder> ih;
-        public final Moveable<IteratorHolder> ihAlt;
-
-        public Failure(Moveable<IteratorHolder> ih, Moveable<IteratorHolder> ihAlt) {
-            this.ih = ih;
-            this.ihAlt = ihAlt;
-        }
-    }
-
     private static class CategorizedParsers {
         public static CategorizedParsers create(final Collection<Parser<?>> parsers)
                 throws CsvReaderException {
@@ -493,6 +694,64 @@ public final class ParseDenseStorageToColumn {
         }
     }
 
+    /**
+     * A parser running over the input, which may stop part way if the input runs out for the time being, and carry on
+     * from there later.
+     */
+    private static final class Pass<TARRAY> {
+        private final Parser<TARRAY> parser;
+        private final Parser.ParserContext<TARRAY> pctx;
+        private final IteratorHolder ih;
+        /** The row the pass started at. */
+        private final long begin;
+        /** The row the pass stops at, if the input doesn't stop it first. */
+        private final long limit;
+        private final boolean appending;
+        /** The end (exclusive) of the rows parsed so far. */
+        private long end;
+
+        private Pass(final Parser<TARRAY> parser, final Parser.ParserContext<TARRAY> pctx, final IteratorHolder ih,
+                final long begin, final long limit, final boolean appending) {
+            this.parser = parser;
+            this.pctx = pctx;
+            this.ih = ih;
+            this.begin = begin;
+            this.limit = limit;
+            this.appending = appending;
+            this.end = begin;
+        }
+
+        /** A pass with a new context for {@code parser}, starting at row {@code begin}. */
+        private static <TARRAY> Pass<TARRAY> create(final Parser<TARRAY> parser, final Parser.GlobalContext gctx,
+                final IteratorHolder ih, final long begin, final long limit, final boolean appending) {
+            final Parser.ParserContext<TARRAY> pctx = parser.makeParserContext(gctx, gctx.chunkSize());
+            return new Pass<>(parser, pctx, ih, begin, limit, appending);
+        }
+
+        /** A pass with a new context for {@code parser}, starting at the cell {@code ih} is on. */
+        private static Pass<?> start(final Parser<?> parser, final Parser.GlobalContext gctx,
+                final IteratorHolder ih, final long limit, final boolean appending) {
+            return create(parser, gctx, ih, ih.numConsumed() - 1, limit, appending);
+        }
+
+        /**
+         * Run the parser from where it got to, if the iterator is on a cell (rather than exhausted).
+         *
+         * @return false if the parser stopped because the input ran out for the time being. Otherwise true: the pass
+         *         is done, because it reached its limit, the input is exhausted, or the parser failed on a cell.
+         */
+        private boolean resume(final Parser.GlobalContext gctx) throws CsvReaderException {
+            if (!ih.isExhausted()) {
+                end = parser.tryParse(gctx, pctx, ih, end, limit, appending);
+            }
+            return !ih.isWaiting();
+        }
+
+        private ParserResultWrapper<TARRAY> toWrapper() {
+            return new ParserResultWrapper<>(parser, pctx, begin, end);
+        }
+    }
+
     private static class ParserResultWrapper<TARRAY> {
         private final Parser<TARRAY> parser;
         private final Parser.ParserContext<TARRAY> pctx;
@@ -4,6 +4,7 @@ import io.deephaven.csv.CsvSpecs;
 import io.deephaven.csv.containers.ByteSlice;
 import io.deephaven.csv.densestorage.DenseStorageReader;
 import io.deephaven.csv.densestorage.DenseStorageWriter;
+import io.deephaven.csv.densestorage.MemoryGovernor;
 import io.deephaven.csv.reading.cells.CellGrabber;
 import io.deephaven.csv.util.CsvReaderException;
 import io.deephaven.csv.util.MutableBoolean;
@@ -21,6 +22,12 @@ import java.nio.charset.StandardCharsets;
  * {@link DenseStorageReader} and {@link ParseDenseStorageToColumn} classes can run concurrently for each column.
  */
 public class ParseInputToDenseStorage {
+    /**
+     * How often, in rows of input, we check whether the read has been cancelled (in case no block has been handed over
+     * in the meantime, for example because the rows are being skipped), and report progress. A power of two.
+     */
+    private static final long CHECK_INTERVAL_ROWS = 1 << 13;
+
     /**
      * Take cell text (parsed by the {@link CellGrabber}), and feed them to the various {@link DenseStorageWriter}
      * classes.
@@ -33,7 +40,13 @@ public class ParseInputToDenseStorage {
      *        {@link DenseStorageWriter} is null, then instead of passing data to it, we confirm that the data is the
      *        empty string and then just drop the data. This is used to handle input files that have a trailing empty
      *        column on the right.
+     * @param dropColumns For each column, true if the caller did not select it for reading (see
+     *        {@link CsvSpecs#includedColumnNames}). The corresponding {@link DenseStorageWriter} is null, and the data
+     *        is dropped without being checked.
      * @param specs The {@link CsvSpecs} which control how the CSV file is interpreted.
+     * @param governor If not null, the {@link MemoryGovernor} that tells us when to wait for the parsers to catch up.
+     * @param progress If not null, the {@link ProgressListener} to report our progress to every so often, and when we
+     *        have finished. It is given {@link CellGrabber#bytesConsumed()}.
      * @return The number of data rows in the input (i.e. not including headers or strings split across multiple lines).
      */
     public static long doit(final String[] columnHeaders,
@@ -41,25 +54,34 @@ public class ParseInputToDenseStorage {
             final CellGrabber grabber,
             final CsvSpecs specs,
             final String[][] nullValueLiteralsToUse,
-            final DenseStorageWriter[] dsws)
+            final DenseStorageWriter[] dsws,
+            final boolean[] dropColumns,
+            final MemoryGovernor governor,
+            final ProgressListener progress)
             throws CsvReaderException {
         // This is the number of data rows read.
         long numProcessedRows = 0;
 
         final RowAppender rowAppender =
-                new RowAppender(columnHeaders, optionalFirstDataRow, grabber, specs, nullValueLiteralsToUse, dsws);
+                new RowAppender(columnHeaders, optionalFirstDataRow, grabber, specs, nullValueLiteralsToUse, dsws,
+                        dropColumns);
+        // The number of rows of input (skipped, empty or not) consumed, for CHECK_INTERVAL_ROWS.
+        long numRowsConsumed = 0;
         long skipRows = specs.skipRows();
         while (skipRows != 0) {
-            final RowResult result = rowAppender.processNextRow(false);
+            final RowResult result = rowAppender.skipNextRow();
             if (result == RowResult.END_OF_INPUT) {
                 break;
             }
             --skipRows;
+            if ((++numRowsConsumed & (CHECK_INTERVAL_ROWS - 1)) == 0) {
+                checkIn(grabber, governor, progress, 0);
+            }
         }
 
         long numRows = specs.numRows();
         while (numRows != 0) {
-            final RowResult result = rowAppender.processNextRow(true);
+            final RowResult result = rowAppender.processNextRow();
             if (result == RowResult.END_OF_INPUT) {
                 break;
             }
@@ -68,6 +90,19 @@ public class ParseInputToDenseStorage {
             }
             // PROCESSED_ROW OR IGNORED_EMPTY_ROW
             --numRows;
+            if ((++numRowsConsumed & (CHECK_INTERVAL_ROWS - 1)) == 0) {
+                checkIn(grabber, governor, progress, numProcessedRows);
+            }
+            if (governor != null && governor.mustWait()) {
+                // Make sure the parsers can see everything we've written, so they can make the progress we're
+                // waiting for.
+                for (DenseStorageWriter dsw : dsws) {
+                    if (dsw != null) {
+                        dsw.flush();
+                    }
+                }
+                governor.awaitCapacity();
+            }
         }
 
         for (DenseStorageWriter dsw : dsws) {
@@ -75,9 +110,23 @@ public class ParseInputToDenseStorage {
                 dsw.finish();
             }
         }
+        if (progress != null) {
+            progress.onProgress(grabber.bytesConsumed(), numProcessedRows);
+        }
         return numProcessedRows;
     }
 
+    /** Give up if the read has been cancelled, and otherwise report our progress. */
+    private static void checkIn(final CellGrabber grabber, final MemoryGovernor governor,
+            final ProgressListener progress, final long numProcessedRows) {
+        if (governor != null) {
+            governor.checkCancelled();
+        }
+        if (progress != null) {
+            progress.onProgress(grabber.bytesConsumed(), numProcessedRows);
+        }
+    }
+
     private enum RowResult {
         END_OF_INPUT, IGNORED_EMPTY_ROW, PROCESSED_ROW
     }
@@ -87,6 +136,7 @@ public class ParseInputToDenseStorage {
         private byte[][] optionalFirstDataRow;
         private final CellGrabber grabber;
         private final DenseStorageWriter[] dsws;
+        private final boolean[] dropColumns;
         private final CsvSpecs specs;
         private final int numCols;
         private final ByteSlice byteSlice;
@@ -95,12 +145,14 @@ public class ParseInputToDenseStorage {
         private final byte[][] nullValueLiteralsAsUtf8;
 
         public RowAppender(final String[] columnHeaders, final byte[][] optionalFirstDataRow, final CellGrabber grabber,
-                final CsvSpecs specs, final String[][] nullValueLiteralsToUse, final DenseStorageWriter[] dsws)
+                final CsvSpecs specs, final String[][] nullValueLiteralsToUse, final DenseStorageWriter[] dsws,
+                final boolean[] dropColumns)
                 throws CsvReaderException {
             this.columnHeaders = columnHeaders;
             this.optionalFirstDataRow = optionalFirstDataRow;
             this.grabber = grabber;
             this.dsws = dsws;
+            this.dropColumns = dropColumns;
             this.specs = specs;
             numCols = dsws.length;
             if (optionalFirstDataRow != null && optionalFirstDataRow.length != numCols) {
@@ -158,16 +210,29 @@ public class ParseInputToDenseStorage {
         }
 
         /**
-         * @param writeToConsumer If true, write the data to the sink. If false, just consume the data but don't write
-         *        anything. This is used to implement the "skip rows" functionality.
-         * @return true if a row was consumed, false otherwise.
+         * Skip the next row without writing it anywhere. This is used to implement the "skip rows" functionality.
+         * Skipped rows are not validated (e.g. for their number of columns), and an empty row counts as a skipped row
+         * even if {@link CsvSpecs#ignoreEmptyLines()} is set.
+         *
+         * @return PROCESSED_ROW if a row was skipped, END_OF_INPUT otherwise.
          */
-        public RowResult processNextRow(final boolean writeToConsumer) throws CsvReaderException {
+        public RowResult skipNextRow() throws CsvReaderException {
+            if (optionalFirstDataRow != null) {
+                optionalFirstDataRow = null;
+                return RowResult.PROCESSED_ROW;
+            }
+            return grabber.skipRow() ? RowResult.PROCESSED_ROW : RowResult.END_OF_INPUT;
+        }
+
+        /**
+         * @return The result of trying to process the next row.
+         */
+        public RowResult processNextRow() throws CsvReaderException {
             if (optionalFirstDataRow != null) {
                 for (int ii = 0; ii < numCols; ++ii) {
                     final byte[] temp = optionalFirstDataRow[ii];
                     byteSlice.reset(temp, 0, temp.length);
-                    appendToDenseStorageWriter(dsws[ii], byteSlice, writeToConsumer);
+                    appendToDenseStorageWriter(ii, byteSlice);
                 }
                 optionalFirstDataRow = null;
                 return RowResult.PROCESSED_ROW;
@@ -187,11 +252,11 @@ public class ParseInputToDenseStorage {
                                 return RowResult.IGNORED_EMPTY_ROW;
                             }
                         }
-                        appendToDenseStorageWriter(dsws[colNum], byteSlice, writeToConsumer);
+                        appendToDenseStorageWriter(colNum, byteSlice);
                         ++colNum;
                         break;
                     }
-                    appendToDenseStorageWriter(dsws[colNum], byteSlice, writeToConsumer);
+                    appendToDenseStorageWriter(colNum, byteSlice);
                 } catch (Exception e) {
                     final String message = String.format("While processing row %d, column %s:", physicalRowNum + 1,
                             describeColumnHeader(columnHeaders, colNum));
@@ -225,6 +290,11 @@ public class ParseInputToDenseStorage {
 
             // Pad the row with a null value literal appropriate for each column.
             while (colNum < numCols) {
+                if (dropColumns[colNum]) {
+                    // Nothing to fill.
+                    ++colNum;
+                    continue;
+                }
                 final byte[] nvl = nullValueLiteralsAsUtf8[colNum];
                 if (nvl == null) {
                     final String message = String.format(
@@ -233,32 +303,29 @@ public class ParseInputToDenseStorage {
                     throw new CsvReaderException(message);
                 }
                 byteSlice.reset(nvl, 0, nvl.length);
-                appendToDenseStorageWriter(dsws[colNum], byteSlice, writeToConsumer);
+                appendToDenseStorageWriter(colNum, byteSlice);
                 ++colNum;
             }
             return RowResult.PROCESSED_ROW;
         }
-    }
 
-    /**
-     *
-     * @param dsw The DenseStorageWriter to write to.
-     * @param bs The ByteSlice containing the data.
-     * @param writeToConsumer If true, perform the operation. If false, do nothing. This flag makes it easy to
-     *        concentrate the "skip rows" logic in one place.
-     */
-    private static void appendToDenseStorageWriter(final DenseStorageWriter dsw, final ByteSlice bs,
-            boolean writeToConsumer)
-            throws CsvReaderException {
-        if (!writeToConsumer) {
-            return;
-        }
-        if (dsw != null) {
-            dsw.append(bs);
-            return;
-        }
-        if (bs.size() != 0) {
-            throw new CsvReaderException("Column assumed empty but contains data");
+        /**
+         *
+         * @param colNum The column whose DenseStorageWriter to write to.
+         * @param bs The ByteSlice containing the data.
+         */
+        private void appendToDenseStorageWriter(final int colNum, final ByteSlice bs) throws CsvReaderException {
+            final DenseStorageWriter dsw = dsws[colNum];
+            if (dsw != null) {
+                dsw.append(bs);
+                return;
+            }
+            if (dropColumns[colNum]) {
+                return;
+            }
+            if (bs.size() != 0) {
+                throw new CsvReaderException("Column assumed empty but contains data");
+            }
         }
     }
 
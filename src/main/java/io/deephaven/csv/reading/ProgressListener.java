@@ -0,0 +1,19 @@
+package io.deephaven.csv.reading;
+
+/**
+ * Told about the progress of a read from time to time. See {@link io.deephaven.csv.CsvSpecs.Builder#progressListener}.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    /**
+     * Called on the tokenizer's thread every few thousand rows, and once more when the tokenizer has finished. It
+     * should return quickly, as the tokenizer waits for it. If it throws, the read fails.
+     *
+     * @param bytesConsumed The number of bytes of input the tokenizer has consumed, counting from the start of the
+     *        input (after decompression, for gzipped input). When the tokenizer runs on several threads (see
+     *        {@link io.deephaven.csv.CsvSpecs.Builder#tokenizerThreads}) this advances a chunk at a time.
+     * @param rowsTokenized The number of data rows the tokenizer has handed to the parsers so far. The parsers may be
+     *        some way behind.
+     */
+    void onProgress(long bytesConsumed, long rowsTokenized);
+}
@@ -0,0 +1,161 @@
+package io.deephaven.csv.reading;
+
+import io.deephaven.csv.util.CsvReaderException;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The cancellation state of one read. A read is cancelled when its {@link io.deephaven.csv.CsvSpecs#timeout()} runs
+ * out, or when the future returned by {@link CsvReader#readAsync} is cancelled. Cancelling sets the reason and runs the
+ * action that the read has registered (see {@link #onCancel}), which passes the cancellation on to the tokenizer and
+ * the parsers. They check for it at block boundaries (see {@link io.deephaven.csv.densestorage.MemoryGovernor#cancel})
+ * and give up, after which the read frees its storage and throws.
+ */
+final class ReadControl implements AutoCloseable {
+    /** Fires the deadlines of all reads. Created when first needed. */
+    private static final class DeadlineTimer {
+        static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+        private static ScheduledThreadPoolExecutor create() {
+            final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+                final Thread t = new Thread(r, "CsvReader-deadline");
+                t.setDaemon(true);
+                return t;
+            });
+            // Most reads finish before their deadline, so don't keep their cancelled timeouts around.
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Why the read was cancelled, or null if it hasn't been. Guarded by {@link #lock}. */
+    private Throwable reason;
+    /** What to do (given the reason) when the read is cancelled, or null. Guarded by {@link #lock}. */
+    private Consumer<Throwable> action;
+    /** The pending deadline, or null if there is none. */
+    private final ScheduledFuture<?> deadline;
+    /** See {@link #runsOnExecutor()}. */
+    private final boolean runsOnExecutor;
+
+    /**
+     * Constructor. Starts the clock on {@code timeout}, if it is not null.
+     */
+    ReadControl(final Duration timeout) {
+        this(timeout, false);
+    }
+
+    /**
+     * Constructor. Starts the clock on {@code timeout}, if it is not null.
+     *
+     * @param runsOnExecutor See {@link #runsOnExecutor()}.
+     */
+    ReadControl(final Duration timeout, final boolean runsOnExecutor) {
+        this.runsOnExecutor = runsOnExecutor;
+        this.reason = null;
+        this.action = null;
+        if (timeout == null) {
+            this.deadline = null;
+            return;
+        }
+        final TimeoutException timeoutException = new TimeoutException("Read did not finish within " + timeout);
+        this.deadline = DeadlineTimer.INSTANCE.schedule(() -> cancel(timeoutException), timeout.toNanos(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancel the read. Only the first call has any effect.
+     */
+    void cancel(final Throwable why) {
+        final Consumer<Throwable> toRun;
+        lock.lock();
+        try {
+            if (reason != null) {
+                return;
+            }
+            reason = why;
+            toRun = action;
+        } finally {
+            lock.unlock();
+        }
+        if (toRun != null) {
+            toRun.accept(why);
+        }
+    }
+
+    /**
+     * Set the action to run (given the reason) when the read is cancelled, replacing any previous one.
+     *
+     * @throws CsvReaderException If the read has already been cancelled, in which case the action is not run.
+     */
+    void onCancel(final Consumer<Throwable> newAction) throws CsvReaderException {
+        lock.lock();
+        try {
+            throwIfCancelled(null);
+            action = newAction;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Clear the action set by {@link #onCancel}. */
+    void clearOnCancel() {
+        lock.lock();
+        try {
+            action = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether the read runs on a thread of {@link io.deephaven.csv.CsvSpecs#executor()}, as one started by
+     * {@link CsvReader#readAsync} does if there is one. If so, the read shouldn't wait for work it has put on that
+     * executor, which may have no other thread to run it, but should do what it can of the work itself.
+     */
+    boolean runsOnExecutor() {
+        return runsOnExecutor;
+    }
+
+    /** Why the read was cancelled, or null if it hasn't been. */
+    Throwable reason() {
+        lock.lock();
+        try {
+            return reason;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * If the read has been cancelled, throw the exception the read reports that with.
+     *
+     * @param cause The exception that made the read notice, if any. Added to the one thrown as suppressed.
+     */
+    void throwIfCancelled(final Throwable cause) throws CsvReaderException {
+        final Throwable why = reason();
+        if (why == null) {
+            return;
+        }
+        final String message = why instanceof TimeoutException ? "Read timed out" : "Read cancelled";
+        final CsvReaderException e = new CsvReaderException(message, why);
+        if (cause != null && cause != why) {
+            e.addSuppressed(cause);
+        }
+        throw e;
+    }
+
+    /** Stop the clock. */
+    @Override
+    public void close() {
+        if (deadline != null) {
+            deadline.cancel(false);
+        }
+    }
+}
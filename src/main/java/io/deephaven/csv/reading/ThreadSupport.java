@@ -0,0 +1,37 @@
+package io.deephaven.csv.reading;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Factory for the threads that {@link CsvReader} runs a read on. This is the Java 8 version of this class, which
+ * always provides platform threads. The jar also contains a Java 21 version of this class (under
+ * META-INF/versions/21) which can provide virtual threads instead.
+ */
+final class ThreadSupport {
+    /**
+     * Utility class. Do not instantiate.
+     */
+    private ThreadSupport() {}
+
+    /**
+     * Make a thread pool for a read.
+     *
+     * @param numThreads The number of tasks the read will run at once.
+     * @param useVirtualThreads Whether the caller would like virtual threads. Ignored in this version of the class.
+     */
+    static ExecutorService newThreadPool(final int numThreads, final boolean useVirtualThreads) {
+        return Executors.newFixedThreadPool(numThreads);
+    }
+
+    /**
+     * Start a thread of its own for {@code task}.
+     *
+     * @param task The task to run.
+     * @param name The name of the thread.
+     * @param useVirtualThread Whether the caller would like a virtual thread. Ignored in this version of the class.
+     */
+    static void startThread(final Runnable task, final String name, final boolean useVirtualThread) {
+        new Thread(task, name).start();
+    }
+}
@@ -24,15 +24,11 @@ public class TypeConverter {
         if (srcBegin == srcEnd) {
             return;
         }
-        final int srcChunkSize = Array.getLength(srcChunk);
-        final int destChunkSize = Array.getLength(destChunk);
-        final int isNullChunkSize = isNull.length;
-        if (srcChunkSize != destChunkSize || srcChunkSize != isNullChunkSize) {
-            final String message =
-                    String.format(
-                            "Logic error: chunk sizes differ: %d vs %d vs %d",
-                            srcChunkSize, destChunkSize, isNullChunkSize);
-            throw new RuntimeException(message);
+        // The chunks are normally all the same size, but a custom parser may have made its own a different size, so
+        // we go by the smallest.
+        final int chunkSize = Math.min(Array.getLength(srcChunk), Math.min(Array.getLength(destChunk), isNull.length));
+        if (chunkSize == 0) {
+            throw new RuntimeException("Logic error: chunk size is zero");
         }
 
         final CopyOperation performCopy = getChunkCopierFor(srcChunk.getClass(), destChunk.getClass());
@@ -40,7 +36,7 @@ public class TypeConverter {
         long srcCurrent = srcBegin;
         long destCurrent = destBegin;
         while (srcCurrent != srcEnd) {
-            final long srcEndToUse = Math.min(srcCurrent + srcChunkSize, srcEnd);
+            final long srcEndToUse = Math.min(srcCurrent + chunkSize, srcEnd);
             final int copySize = Math.toIntExact(srcEndToUse - srcCurrent);
             final long destEndToUse = destCurrent + copySize;
             source.read(srcChunk, isNull, srcCurrent, srcEndToUse);
@@ -0,0 +1,93 @@
+package io.deephaven.csv.reading.cells;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Searches a byte array for the first occurrence of any of three "interesting" bytes (for example the field delimiter,
+ * '\n' and '\r'). Rather than testing one byte at a time, it loads eight bytes at a time as a little-endian long and
+ * uses the well-known "has zero byte" bit trick (SWAR: SIMD within a register) to test all eight at once, so runs of
+ * ordinary bytes are skipped a word at a time.
+ *
+ * <p>
+ * For a word {@code v}, the expression {@code (v - 0x0101..01) & ~v & 0x8080..80} is nonzero iff some byte of {@code v}
+ * is zero. The expression may also flag bytes above (more significant than) a genuine zero byte, due to the borrow,
+ * but the least significant flagged byte is always a genuine zero. We XOR the word with each byte pattern, OR the three
+ * results together, and take the lowest flagged byte, which (the word being little-endian) is the earliest match.
+ *
+ * <p>
+ * On JDK 17+ a subclass using the Vector API may be substituted; see {@link VectorSupport}.
+ */
+class ByteScanner {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /** The array being scanned. */
+    final byte[] buffer;
+    /** A little-endian view of {@link #buffer}, used to load eight bytes at a time. */
+    private final ByteBuffer bufferAsWords;
+    final byte b0;
+    final byte b1;
+    final byte b2;
+    /** {@link #b0} replicated into all eight bytes of a long. Likewise for the other two. */
+    private final long pattern0;
+    private final long pattern1;
+    private final long pattern2;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer The array to scan. The scanner holds on to this array; its contents may change between calls.
+     * @param b0 The first byte to search for.
+     * @param b1 The second byte to search for.
+     * @param b2 The third byte to search for.
+     */
+    ByteScanner(final byte[] buffer, final byte b0, final byte b1, final byte b2) {
+        this.buffer = buffer;
+        this.bufferAsWords = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        this.b0 = b0;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.pattern0 = replicate(b0);
+        this.pattern1 = replicate(b1);
+        this.pattern2 = replicate(b2);
+    }
+
+    /**
+     * Find the first interesting byte in the half-open range [{@code begin}, {@code end}) of the buffer.
+     *
+     * @return The index of the first interesting byte, or {@code end} if there is none.
+     */
+    int indexOfAny(final int begin, final int end) {
+        int current = begin;
+        while (current + Long.BYTES <= end) {
+            final long word = bufferAsWords.getLong(current);
+            final long matches = zeroBytes(word ^ pattern0) | zeroBytes(word ^ pattern1) | zeroBytes(word ^ pattern2);
+            if (matches != 0) {
+                return current + (Long.numberOfTrailingZeros(matches) >>> 3);
+            }
+            current += Long.BYTES;
+        }
+        // Fewer than eight bytes remain. Finish the job a byte at a time.
+        while (current < end) {
+            final byte ch = buffer[current];
+            if (ch == b0 || ch == b1 || ch == b2) {
+                return current;
+            }
+            ++current;
+        }
+        return end;
+    }
+
+    /**
+     * Flags the zero bytes in {@code v} by setting their high bits. As noted in the class comment, bytes above the
+     * lowest zero byte may be flagged spuriously.
+     */
+    private static long zeroBytes(final long v) {
+        return (v - ONES) & ~v & HIGHS;
+    }
+
+    private static long replicate(final byte b) {
+        return (b & 0xffL) * ONES;
+    }
+}
@@ -22,10 +22,26 @@ public interface CellGrabber {
     void grabNext(final ByteSlice dest, final MutableBoolean lastInRow,
             final MutableBoolean endOfInput) throws CsvReaderException;
 
+    /**
+     * Skip the next row of input without materializing its cells. This is used to implement
+     * {@link io.deephaven.csv.CsvSpecs#skipRows}. Implementations are free to skip the row without validating it (for
+     * example, its number of columns or the placement of quotes within it); they need only find where it ends. Must
+     * only be called at the start of a row.
+     *
+     * @return true if a row was skipped, false if the input was already exhausted.
+     */
+    boolean skipRow() throws CsvReaderException;
+
     /**
      * Returns the "physical" row number, that is the row number of the input file. This differs from the "logical" row
      * number, which is the row number of the CSV data being processed. The difference arises when, due to quotation
      * marks, a single CSV row can span multiple lines of input.
      */
     int physicalRowNum();
+
+    /**
+     * Returns the number of bytes of its input that the grabber has consumed, for reporting progress. Implementations
+     * may report this at a coarser granularity than a cell.
+     */
+    long bytesConsumed();
 }
@@ -17,7 +17,7 @@ import java.io.InputStream;
 public final class DelimitedCellGrabber implements CellGrabber {
     /** Size of chunks to read from the {@link InputStream}. */
     public static final int BUFFER_SIZE = 65536;
-    /** The {@link InputStream} for the input. */
+    /** The {@link InputStream} for the input, or null if the input is all in {@link #buffer} from the start. */
     private final InputStream inputStream;
     /** The configured CSV quote character (typically '"'). Must be 7-bit ASCII. */
     private final byte quoteChar;
@@ -33,6 +33,8 @@ public final class DelimitedCellGrabber implements CellGrabber {
     private int size;
     /** Current offset in the buffer chunk. */
     private int offset;
+    /** The number of bytes read from the {@link InputStream} prior to the current buffer chunk. */
+    private long bufferStartPosition;
     /** Starting offset of a contiguous span of characters we are scanning from the buffer chunk. */
     private int startOffset;
     /**
@@ -43,6 +45,10 @@ public final class DelimitedCellGrabber implements CellGrabber {
      * return a slice of the input array, because actually we need hello"there (one quotation mark, not two).
      */
     private final GrowableByteBuffer spillBuffer;
+    /** Finds the bytes that end an unquoted field: the field delimiter, '\n', or '\r'. */
+    private final ByteScanner unquotedScanner;
+    /** Finds the bytes of interest inside a quoted field: the quote char, '\n' (for row counting), or '\r'. */
+    private final ByteScanner quotedScanner;
     /**
      * Zero-based row number of the input stream. This is for informational purposes only and in particular does NOT
      * refer to the number of data rows in the input. (This is because the data rows may be split across multiple lines
@@ -58,17 +64,103 @@ public final class DelimitedCellGrabber implements CellGrabber {
             final byte fieldDelimiter,
             final boolean ignoreSurroundingSpaces,
             final boolean trim) {
+        this(inputStream, quoteChar, fieldDelimiter, ignoreSurroundingSpaces, trim, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param useVectorApi Whether to scan the input with the Vector API, if this JVM supports it. See
+     *        {@link io.deephaven.csv.CsvSpecs.Builder#vectorizedTokenizer}.
+     */
+    public DelimitedCellGrabber(
+            final InputStream inputStream,
+            final byte quoteChar,
+            final byte fieldDelimiter,
+            final boolean ignoreSurroundingSpaces,
+            final boolean trim,
+            final boolean useVectorApi) {
+        this(inputStream, quoteChar, fieldDelimiter, ignoreSurroundingSpaces, trim, useVectorApi, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param useVectorApi Whether to scan the input with the Vector API, if this JVM supports it. See
+     *        {@link io.deephaven.csv.CsvSpecs.Builder#vectorizedTokenizer}.
+     * @param initialPhysicalRowNum The physical row number of the input as of the start of {@code inputStream}. This is
+     *        nonzero when the stream starts partway through a file.
+     */
+    public DelimitedCellGrabber(
+            final InputStream inputStream,
+            final byte quoteChar,
+            final byte fieldDelimiter,
+            final boolean ignoreSurroundingSpaces,
+            final boolean trim,
+            final boolean useVectorApi,
+            final int initialPhysicalRowNum) {
+        this(inputStream, new byte[BUFFER_SIZE], 0, quoteChar, fieldDelimiter, ignoreSurroundingSpaces, trim,
+                useVectorApi, initialPhysicalRowNum);
+    }
+
+    /**
+     * Constructor for input that is already in memory. The cells are grabbed straight out of {@code text}: the slices
+     * returned by {@link #grabNext} point into it, except for a cell that has to be rewritten (as when it contains an
+     * escaped quote) or that runs up to the end of the input.
+     *
+     * @param text The input. The grabber holds on to this array, but never writes to it.
+     * @param textSize The number of bytes of input at the start of {@code text}.
+     * @param useVectorApi Whether to scan the input with the Vector API, if this JVM supports it. See
+     *        {@link io.deephaven.csv.CsvSpecs.Builder#vectorizedTokenizer}.
+     * @param initialPhysicalRowNum The physical row number of the input as of the start of {@code text}.
+     */
+    public DelimitedCellGrabber(
+            final byte[] text,
+            final int textSize,
+            final byte quoteChar,
+            final byte fieldDelimiter,
+            final boolean ignoreSurroundingSpaces,
+            final boolean trim,
+            final boolean useVectorApi,
+            final int initialPhysicalRowNum) {
+        this(null, text, textSize, quoteChar, fieldDelimiter, ignoreSurroundingSpaces, trim, useVectorApi,
+                initialPhysicalRowNum);
+    }
+
+    private DelimitedCellGrabber(
+            final InputStream inputStream,
+            final byte[] buffer,
+            final int size,
+            final byte quoteChar,
+            final byte fieldDelimiter,
+            final boolean ignoreSurroundingSpaces,
+            final boolean trim,
+            final boolean useVectorApi,
+            final int initialPhysicalRowNum) {
         this.inputStream = inputStream;
         this.quoteChar = quoteChar;
         this.fieldDelimiter = fieldDelimiter;
         this.ignoreSurroundingSpaces = ignoreSurroundingSpaces;
         this.trim = trim;
-        this.buffer = new byte[BUFFER_SIZE];
-        this.size = 0;
+        this.buffer = buffer;
+        this.size = size;
         this.offset = 0;
+        this.bufferStartPosition = 0;
         this.startOffset = 0;
         this.spillBuffer = new GrowableByteBuffer();
-        this.physicalRowNum = 0;
+        this.unquotedScanner =
+                VectorSupport.makeScanner(useVectorApi, buffer, fieldDelimiter, (byte) '\n', (byte) '\r');
+        this.quotedScanner = VectorSupport.makeScanner(useVectorApi, buffer, quoteChar, (byte) '\n', (byte) '\r');
+        this.physicalRowNum = initialPhysicalRowNum;
+    }
+
+    /**
+     * Whether the {@code useVectorApi} constructor argument has any effect in this JVM. It doesn't unless the JVM is
+     * JDK 17 or later, has the {@code jdk.incubator.vector} module added, and has vectors wider than eight bytes;
+     * otherwise the word-at-a-time scanner is used regardless.
+     */
+    public static boolean vectorApiAvailable() {
+        return VectorSupport.isAvailable();
     }
 
     @Override
@@ -96,6 +188,112 @@ public final class DelimitedCellGrabber implements CellGrabber {
         }
     }
 
+    @Override
+    public boolean skipRow() throws CsvReaderException {
+        // We don't care about the contents of the cells, so we never want to spill anything. Keeping startOffset
+        // equal to offset whenever we might refill the buffer achieves that.
+        spillBuffer.clear();
+        startOffset = offset;
+        if (!tryEnsureMore()) {
+            return false;
+        }
+
+        // Fast path: if the rest of the row is in the buffer and has no quote characters at all, then a single scan
+        // for the line terminator is all we need. Field delimiters don't matter.
+        final int next = quotedScanner.indexOfAny(offset, size);
+        if (next != size && buffer[next] != quoteChar) {
+            offset = next;
+            skipLineTerminator();
+            return true;
+        }
+
+        // Slow path: go cell by cell, because a quote only has special meaning at the start of a cell.
+        while (true) {
+            startOffset = offset;
+            if (ignoreSurroundingSpaces) {
+                skipWhitespace();
+                startOffset = offset;
+            }
+            if (tryEnsureMore() && buffer[offset] == quoteChar) {
+                ++offset;
+                skipQuotedText();
+            }
+            // Skip the (rest of the) cell up to the next field or line delimiter.
+            while (true) {
+                startOffset = offset;
+                if (!tryEnsureMore()) {
+                    // End of input also ends the row.
+                    return true;
+                }
+                offset = unquotedScanner.indexOfAny(offset, size);
+                if (offset != size) {
+                    break;
+                }
+            }
+            if (buffer[offset] != fieldDelimiter) {
+                skipLineTerminator();
+                return true;
+            }
+            ++offset;
+        }
+    }
+
+    /**
+     * Skip the text of a quoted cell, up to and including the closing quote. Like {@link #processQuotedMode} but
+     * without collecting the text.
+     */
+    private void skipQuotedText() throws CsvReaderException {
+        boolean prevCharWasCarriageReturn = false;
+        while (true) {
+            startOffset = offset;
+            if (offset == size) {
+                if (!tryEnsureMore()) {
+                    throw new CsvReaderException("Cell did not have closing quote character");
+                }
+            }
+            final int nextInteresting = quotedScanner.indexOfAny(offset, size);
+            if (nextInteresting != offset) {
+                offset = nextInteresting;
+                prevCharWasCarriageReturn = false;
+                continue;
+            }
+            final byte ch = buffer[offset++];
+            if (ch == '\r') {
+                ++physicalRowNum;
+                prevCharWasCarriageReturn = true;
+            } else {
+                if (ch == '\n' && !prevCharWasCarriageReturn) {
+                    ++physicalRowNum;
+                }
+                prevCharWasCarriageReturn = false;
+            }
+            if (ch != quoteChar) {
+                continue;
+            }
+            startOffset = offset;
+            if (!tryEnsureMore() || buffer[offset] != quoteChar) {
+                // End of input, or a closing quote.
+                return;
+            }
+            // An escaped quote. Skip the second quotation mark and keep going.
+            ++offset;
+        }
+    }
+
+    /**
+     * Consume the line terminator at {@link #offset}, which is either '\n', '\r', or '\r\n'.
+     */
+    private void skipLineTerminator() throws CsvReaderException {
+        final byte ch = buffer[offset++];
+        ++physicalRowNum;
+        if (ch == '\r') {
+            startOffset = offset;
+            if (tryEnsureMore() && buffer[offset] == '\n') {
+                ++offset;
+            }
+        }
+    }
+
     /**
      * Process characters in "quoted mode". This involves some trickery to deal with quoted quotes and the end quote.
      *
@@ -112,6 +310,13 @@ public final class DelimitedCellGrabber implements CellGrabber {
                     throw new CsvReaderException("Cell did not have closing quote character");
                 }
             }
+            // Skip over any run of ordinary characters, a word at a time.
+            final int nextInteresting = quotedScanner.indexOfAny(offset, size);
+            if (nextInteresting != offset) {
+                offset = nextInteresting;
+                prevCharWasCarriageReturn = false;
+                continue;
+            }
             final byte ch = buffer[offset++];
             // Maintain a correct row number. This is somehat tricky.
             if (ch == '\r') {
@@ -210,6 +415,12 @@ public final class DelimitedCellGrabber implements CellGrabber {
                 endOfInput.setValue(true);
                 return;
             }
+            // Skip over any run of ordinary characters, a word at a time. If we run out of buffer, go around again
+            // to refill it.
+            offset = unquotedScanner.indexOfAny(offset, size);
+            if (offset == size) {
+                continue;
+            }
             final byte ch = buffer[offset];
             if (ch == fieldDelimiter) {
                 finish(dest);
@@ -246,7 +457,7 @@ public final class DelimitedCellGrabber implements CellGrabber {
                 ++physicalRowNum;
                 return;
             }
-            ++offset;
+            throw new RuntimeException("Logic error: scanner stopped on an uninteresting character");
         }
     }
 
@@ -273,8 +484,14 @@ public final class DelimitedCellGrabber implements CellGrabber {
 
     /** Get another chunk of data from the Reader. */
     private void refillBuffer() throws CsvReaderException {
+        bufferStartPosition += size;
         offset = 0;
         startOffset = 0;
+        if (inputStream == null) {
+            // All the input was in the buffer to begin with.
+            size = 0;
+            return;
+        }
         try {
             final int bytesRead = inputStream.read(buffer, 0, buffer.length);
             if (bytesRead < 0) {
@@ -307,4 +524,12 @@ public final class DelimitedCellGrabber implements CellGrabber {
     public int physicalRowNum() {
         return physicalRowNum;
     }
+
+    /**
+     * Returns the number of bytes of the input that have been consumed by the cells grabbed so far. After the last cell
+     * of a row has been grabbed, this is the offset of the first byte of the next row.
+     */
+    public long bytesConsumed() {
+        return bufferStartPosition + offset;
+    }
 }
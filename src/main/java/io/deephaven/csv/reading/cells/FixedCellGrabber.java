@@ -21,7 +21,7 @@ public class FixedCellGrabber implements CellGrabber {
      * @param stream The underlying stream.
      * @return The "line grabber"
      */
-    public static CellGrabber makeLineGrabber(InputStream stream) {
+    public static DelimitedCellGrabber makeLineGrabber(InputStream stream) {
         final byte IllegalUtf8 = (byte) 0xff;
         return new DelimitedCellGrabber(stream, IllegalUtf8, IllegalUtf8, true, false);
     }
@@ -31,6 +31,11 @@ public class FixedCellGrabber implements CellGrabber {
     private final boolean ignoreSurroundingSpaces;
     private final boolean utf32CountingMode;
     private final ByteSlice rowText;
+    /**
+     * Whether {@link #rowText} is entirely 7-bit ASCII. If so, every byte is one character under either counting
+     * convention, and we can slice cells without decoding anything.
+     */
+    private boolean rowIsAscii;
     private boolean needsUnderlyingRefresh;
     private int colIndex;
     private final MutableBoolean dummy1;
@@ -60,17 +65,23 @@ public class FixedCellGrabber implements CellGrabber {
             if (endOfInput.booleanValue()) {
                 // Set dest to the empty string, and leave 'endOfInput' set to true.
                 dest.reset(rowText.data(), rowText.end(), rowText.end());
+                lastInRow.setValue(true);
                 return;
             }
 
             needsUnderlyingRefresh = false;
+            rowIsAscii = isAscii(rowText);
             colIndex = 0;
         }
 
         // There is data to return. Count off N characters. The final column gets all remaining characters.
         final boolean lastCol = colIndex == columnWidths.length - 1;
         final int numCharsToTake = lastCol ? Integer.MAX_VALUE : columnWidths[colIndex];
-        takeNCharactersInCharset(rowText, dest, numCharsToTake, utf32CountingMode, dummy2);
+        if (rowIsAscii) {
+            takeNBytes(rowText, dest, numCharsToTake);
+        } else {
+            takeNCharactersInCharset(rowText, dest, numCharsToTake, utf32CountingMode, dummy2);
+        }
         ++colIndex;
         needsUnderlyingRefresh = lastCol || dest.size() == 0;
         lastInRow.setValue(needsUnderlyingRefresh);
@@ -81,6 +92,36 @@ public class FixedCellGrabber implements CellGrabber {
         }
     }
 
+    @Override
+    public boolean skipRow() throws CsvReaderException {
+        if (!needsUnderlyingRefresh) {
+            throw new RuntimeException("Logic error: skipRow called in the middle of a row");
+        }
+        return lineGrabber.skipRow();
+    }
+
+    /**
+     * Whether the text in {@code slice} is entirely 7-bit ASCII. This is written as a branch-free reduction so that the
+     * JIT can vectorize it.
+     */
+    private static boolean isAscii(final ByteSlice slice) {
+        final byte[] data = slice.data();
+        int accumulated = 0;
+        for (int ii = slice.begin(); ii != slice.end(); ++ii) {
+            accumulated |= data[ii];
+        }
+        // Bytes with the high bit set are negative, and they stay negative when widened and OR'ed together.
+        return accumulated >= 0;
+    }
+
+    /** Like {@link #takeNCharactersInCharset}, but for text that is known to be 7-bit ASCII. */
+    private static void takeNBytes(ByteSlice src, ByteSlice dest, int numBytesToTake) {
+        final int cellBegin = src.begin();
+        final int cellEnd = cellBegin + Math.min(numBytesToTake, src.size());
+        dest.reset(src.data(), cellBegin, cellEnd);
+        src.reset(src.data(), cellEnd, src.end());
+    }
+
     private static void takeNCharactersInCharset(ByteSlice src, ByteSlice dest, int numCharsToTake,
             boolean utf32CountingMode, MutableInt tempInt) {
         final byte[] data = src.data();
@@ -110,4 +151,9 @@ public class FixedCellGrabber implements CellGrabber {
     public int physicalRowNum() {
         return lineGrabber.physicalRowNum();
     }
+
+    @Override
+    public long bytesConsumed() {
+        return lineGrabber.bytesConsumed();
+    }
 }
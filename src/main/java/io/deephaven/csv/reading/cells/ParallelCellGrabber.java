@@ -0,0 +1,496 @@
+package io.deephaven.csv.reading.cells;
+
+import io.deephaven.csv.containers.ByteSlice;
+import io.deephaven.csv.containers.GrowableByteBuffer;
+import io.deephaven.csv.util.CsvReaderException;
+import io.deephaven.csv.util.MutableBoolean;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link CellGrabber} that tokenizes a region of a delimited file on several threads at once. The region is divided
+ * into chunks of (nominally) {@code chunkSize} bytes. Each chunk is handed to a worker, which reads the chunk's text
+ * into an array, runs an ordinary {@link DelimitedCellGrabber} over the array, and records where the resulting cells
+ * are in it. The caller then consumes the cells in order via {@link #grabNext}, exactly as if a single
+ * {@link DelimitedCellGrabber} had been run over the whole region. The workers run on a caller-supplied executor, and
+ * a chunk that no worker has started by the time the caller needs it is tokenized by the caller itself, so the
+ * executor may be small or busy with other work.
+ *
+ * <p>
+ * The difficulty is that a worker does not know the quoting state at the start of its chunk. We resolve this
+ * speculatively: a worker assumes that its chunk starts just after the first line terminator at or after the nominal
+ * chunk boundary, and it keeps tokenizing until it finishes a row at or beyond the speculative start of the following
+ * chunk. The first chunk starts at a known row boundary, so when chunks are consumed in order we can validate each
+ * speculation: chunk k+1 was tokenized correctly if and only if it started exactly where chunk k ended. If it did not
+ * (typically because the nominal boundary fell inside a quoted cell containing a newline), we simply tokenize that
+ * chunk again, serially, from the correct starting point. Since such cells are rare, this almost never happens. If
+ * the caller knows where some rows start (e.g. from a {@link io.deephaven.csv.reading.CsvRowIndex}), chunks start at
+ * those offsets instead, and no speculation is needed.
+ *
+ * <p>
+ * The same machinery serves fixed-width input, which has no quoting, so that every speculative start is correct. There
+ * the {@link DelimitedCellGrabber} is configured as a line grabber and each worker runs a {@link FixedCellGrabber} over
+ * it, so that the lines are sliced into cells on the worker threads too.
+ */
+public final class ParallelCellGrabber implements CellGrabber, AutoCloseable {
+    /** Size of the buffer used when searching for the end of a line. */
+    private static final int SCAN_BUFFER_SIZE = 4096;
+    /**
+     * How far past its target we first read a chunk's text, for the row that straddles the target. If that row is
+     * longer, we read more and tokenize the chunk again.
+     */
+    private static final int ROW_SLACK = 1 << 16;
+    /** The largest chunk text we will read. */
+    private static final int MAX_TEXT_SIZE = Integer.MAX_VALUE - 8;
+    private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+
+    private final FileChannel channel;
+    /** The file offset of the first byte of the region, which must be at the start of a row. */
+    private final long begin;
+    /** The file offset one past the last byte of the region. */
+    private final long end;
+    private final byte quoteChar;
+    private final byte fieldDelimiter;
+    private final boolean ignoreSurroundingSpaces;
+    private final boolean trim;
+    private final boolean useVectorApi;
+    private final int chunkSize;
+    /** File offsets known to be at the start of a row, in increasing order, or null if none are known. */
+    private final long[] knownRowStarts;
+    /** If not null, wraps the {@link DelimitedCellGrabber} that each worker runs over its chunk. */
+    private final UnaryOperator<CellGrabber> decorator;
+    /** The number of chunks the region is divided into. */
+    private final long numChunks;
+    /** The maximum number of chunks that may be tokenized (or awaiting consumption) at once. */
+    private final int maxChunksInFlight;
+    /** Runs the workers. Not owned by this object. */
+    private final Executor executor;
+    /** The chunks that have been submitted to the executor but not consumed yet, in order. */
+    private final ArrayDeque<FutureTask<Chunk>> pending;
+    /** The index of the next chunk to submit to the executor. */
+    private long nextChunkToSubmit;
+    /** The index of the next chunk to consume. */
+    private long nextChunkToConsume;
+    /** The file offset where the next chunk to be consumed must begin in order to be valid. */
+    private long expectedBegin;
+    /** The chunk whose cells we are currently handing out, or null if none. */
+    private Chunk current;
+    /** The index of the next cell in {@link #current} to hand out. */
+    private int nextCell;
+    /** The physical row number of the input as of the start of {@link #current}. */
+    private int physicalRowBase;
+    /** The physical row number of the input as of the last cell handed out. */
+    private int physicalRowNum;
+    /** Scratch space for {@link #skipRow}. */
+    private final ByteSlice skipSlice;
+    private final MutableBoolean skipLastInRow;
+    private final MutableBoolean skipEndOfInput;
+
+    /**
+     * Constructor.
+     *
+     * @param channel The channel to read from. Not owned by this object.
+     * @param begin The file offset of the first byte to tokenize. This must be at the start of a row.
+     * @param end The file offset one past the last byte to tokenize.
+     * @param initialPhysicalRowNum The physical row number of the input as of {@code begin}.
+     * @param quoteChar The configured quote character.
+     * @param fieldDelimiter The configured field delimiter.
+     * @param ignoreSurroundingSpaces Whether to trim leading and trailing blanks from non-quoted values.
+     * @param trim Whether to trim leading and trailing blanks from inside quoted values.
+     * @param useVectorApi Whether to scan the input with the Vector API, if this JVM supports it.
+     * @param executor Runs the workers. Not owned by this object.
+     * @param numThreads The number of workers to keep busy.
+     * @param chunkSize The nominal size, in bytes, of each chunk.
+     * @param knownRowStarts If not null, file offsets known to be at the start of a row, in increasing order. Each
+     *        chunk starts at the first of these at or after its nominal start, rather than at a speculative one.
+     * @param decorator If not null, applied to the {@link DelimitedCellGrabber} each worker runs over its chunk, to
+     *        produce the {@link CellGrabber} the worker actually takes its cells from. For example, fixed-width input
+     *        is handled by wrapping a line grabber in a {@link FixedCellGrabber}.
+     */
+    public ParallelCellGrabber(
+            final FileChannel channel,
+            final long begin,
+            final long end,
+            final int initialPhysicalRowNum,
+            final byte quoteChar,
+            final byte fieldDelimiter,
+            final boolean ignoreSurroundingSpaces,
+            final boolean trim,
+            final boolean useVectorApi,
+            final Executor executor,
+            final int numThreads,
+            final int chunkSize,
+            final long[] knownRowStarts,
+            final UnaryOperator<CellGrabber> decorator) {
+        this.channel = channel;
+        this.begin = begin;
+        this.end = end;
+        this.quoteChar = quoteChar;
+        this.fieldDelimiter = fieldDelimiter;
+        this.ignoreSurroundingSpaces = ignoreSurroundingSpaces;
+        this.trim = trim;
+        this.useVectorApi = useVectorApi;
+        this.chunkSize = chunkSize;
+        this.knownRowStarts = knownRowStarts;
+        this.decorator = decorator;
+        this.numChunks = Math.max(1, (end - begin + chunkSize - 1) / chunkSize);
+        this.maxChunksInFlight = 2 * numThreads;
+        this.executor = executor;
+        this.pending = new ArrayDeque<>();
+        this.nextChunkToSubmit = 0;
+        this.nextChunkToConsume = 0;
+        this.expectedBegin = begin;
+        this.current = null;
+        this.nextCell = 0;
+        this.physicalRowBase = initialPhysicalRowNum;
+        this.physicalRowNum = initialPhysicalRowNum;
+        this.skipSlice = new ByteSlice();
+        this.skipLastInRow = new MutableBoolean();
+        this.skipEndOfInput = new MutableBoolean();
+    }
+
+    @Override
+    public void grabNext(final ByteSlice dest, final MutableBoolean lastInRow,
+            final MutableBoolean endOfInput) throws CsvReaderException {
+        while (current == null || nextCell == current.numCells) {
+            if (current != null && current.error != null) {
+                rethrow(current.error);
+            }
+            if (!advance()) {
+                // Behave like DelimitedCellGrabber does at the end of input.
+                dest.reset(EMPTY_BYTE_ARRAY, 0, 0);
+                lastInRow.setValue(true);
+                endOfInput.setValue(true);
+                return;
+            }
+        }
+        final Chunk chunk = current;
+        final int info = chunk.cellInfos[nextCell];
+        final byte[] data = (info & Chunk.REWRITTEN) != 0 ? chunk.rewritten.data() : chunk.text;
+        dest.reset(data, chunk.cellBegins[nextCell], chunk.cellEnds[nextCell]);
+        lastInRow.setValue((info & Chunk.LAST_IN_ROW) != 0);
+        endOfInput.setValue((info & Chunk.END_OF_INPUT) != 0);
+        physicalRowNum = physicalRowBase + (info >>> Chunk.ROW_SHIFT);
+        ++nextCell;
+    }
+
+    @Override
+    public boolean skipRow() throws CsvReaderException {
+        // The cells have already been materialized by the workers, so there is nothing to be gained by being clever.
+        grabNext(skipSlice, skipLastInRow, skipEndOfInput);
+        if (skipLastInRow.booleanValue() && skipEndOfInput.booleanValue() && skipSlice.size() == 0) {
+            return false;
+        }
+        while (!skipLastInRow.booleanValue()) {
+            grabNext(skipSlice, skipLastInRow, skipEndOfInput);
+        }
+        return true;
+    }
+
+    @Override
+    public int physicalRowNum() {
+        return physicalRowNum;
+    }
+
+    /**
+     * Returns the number of bytes from {@code begin} up to the start of the chunk whose cells are being grabbed, or to
+     * its end once they have all been grabbed.
+     */
+    @Override
+    public long bytesConsumed() {
+        if (current == null) {
+            return 0;
+        }
+        return (nextCell == current.numCells ? current.end : current.begin) - begin;
+    }
+
+    @Override
+    public void close() {
+        // The chunks not yet consumed are no longer of interest. Workers that have started on one finish it, which
+        // takes no longer than tokenizing a chunk does.
+        for (final FutureTask<Chunk> task : pending) {
+            task.cancel(false);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Make the next chunk current, re-tokenizing it if its speculative start turned out to be wrong.
+     *
+     * @return true if there is a next chunk, false if the input is exhausted.
+     */
+    private boolean advance() throws CsvReaderException {
+        if (current != null) {
+            physicalRowBase += current.numPhysicalRows;
+            current = null;
+        }
+        if (nextChunkToConsume == numChunks || expectedBegin == end) {
+            return false;
+        }
+        while (nextChunkToSubmit < numChunks && pending.size() < maxChunksInFlight) {
+            final long chunkIndex = nextChunkToSubmit++;
+            final FutureTask<Chunk> task = new FutureTask<>(() -> tokenizeChunk(chunkIndex));
+            pending.add(task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // We will tokenize it ourselves when we get to it.
+            }
+        }
+        Chunk chunk;
+        try {
+            final FutureTask<Chunk> task = pending.remove();
+            // If no worker has started on the chunk yet, tokenize it here rather than wait for one.
+            task.run();
+            chunk = task.get();
+        } catch (InterruptedException e) {
+            throw new CsvReaderException("Interrupted while waiting for tokenizer", e);
+        } catch (ExecutionException e) {
+            throw new CsvReaderException("Caught exception", e.getCause());
+        }
+        ++nextChunkToConsume;
+        if (chunk.begin != expectedBegin || chunk.text == null) {
+            // The speculation was wrong, or the worker gave up on the chunk. Tokenize it from the right place, reading
+            // as much text as that takes.
+            chunk = tokenize(expectedBegin, chunk.target);
+        }
+        current = chunk;
+        nextCell = 0;
+        expectedBegin = chunk.end;
+        return true;
+    }
+
+    private Chunk tokenizeChunk(final long chunkIndex) throws CsvReaderException {
+        final long chunkBegin = speculativeStart(chunkIndex);
+        final long target = speculativeStart(chunkIndex + 1);
+        if (chunkBegin >= target) {
+            return tokenize(chunkBegin, target);
+        }
+        // If the row that straddles the target is longer than the slack, we leave the chunk to the caller rather than
+        // read on, as our start may be wrong, in which case we might read to the end of the input before giving up.
+        final Chunk chunk = tokenize(chunkBegin, target, readText(chunkBegin, firstTextEnd(chunkBegin, target)));
+        return chunk != null ? chunk : new Chunk(chunkBegin, target, null);
+    }
+
+    /**
+     * Tokenize rows starting at {@code chunkBegin}, stopping after the first row that ends at or beyond
+     * {@code target} (or at the end of input). If {@code chunkBegin} is already at or beyond {@code target}, the
+     * resulting chunk is empty. Errors are not thrown but are instead recorded in the chunk, because if the chunk turns
+     * out to have started in the wrong place, the error is meaningless.
+     */
+    private Chunk tokenize(final long chunkBegin, final long target) throws CsvReaderException {
+        if (chunkBegin >= target) {
+            final Chunk chunk = new Chunk(chunkBegin, target, EMPTY_BYTE_ARRAY);
+            chunk.end = chunkBegin;
+            return chunk;
+        }
+        long textEnd = firstTextEnd(chunkBegin, target);
+        while (true) {
+            final Chunk chunk = tokenize(chunkBegin, target, readText(chunkBegin, textEnd));
+            if (chunk != null) {
+                return chunk;
+            }
+            // The row that straddles the target runs past the text we read.
+            if (textEnd - chunkBegin == MAX_TEXT_SIZE) {
+                throw new CsvReaderException(String.format(
+                        "The row at file offset %d is too long to tokenize in parallel", target));
+            }
+            textEnd = Math.min(end, chunkBegin + Math.min(MAX_TEXT_SIZE, 2 * (textEnd - chunkBegin)));
+        }
+    }
+
+    /** The end of the text we first read for a chunk: its target, plus {@link #ROW_SLACK}. */
+    private long firstTextEnd(final long chunkBegin, final long target) {
+        return Math.min(end, Math.min(target + ROW_SLACK, chunkBegin + MAX_TEXT_SIZE));
+    }
+
+    /**
+     * Tokenize {@code text}, the input from {@code chunkBegin} on, as described above.
+     *
+     * @return The chunk, or null if {@code text} ended before the row that straddles {@code target} did.
+     */
+    private Chunk tokenize(final long chunkBegin, final long target, final byte[] text) {
+        final Chunk chunk = new Chunk(chunkBegin, target, text);
+        final DelimitedCellGrabber grabber = new DelimitedCellGrabber(text, text.length, quoteChar, fieldDelimiter,
+                ignoreSurroundingSpaces, trim, useVectorApi, 0);
+        final CellGrabber cells = decorator != null ? decorator.apply(grabber) : grabber;
+        final ByteSlice slice = new ByteSlice();
+        final MutableBoolean lastInRow = new MutableBoolean();
+        final MutableBoolean endOfInput = new MutableBoolean();
+        try {
+            while (true) {
+                cells.grabNext(slice, lastInRow, endOfInput);
+                chunk.append(slice, lastInRow.booleanValue(), endOfInput.booleanValue(), cells.physicalRowNum());
+                if (lastInRow.booleanValue()
+                        && (endOfInput.booleanValue() || chunkBegin + grabber.bytesConsumed() >= target)) {
+                    break;
+                }
+            }
+        } catch (CsvReaderException | RuntimeException e) {
+            // A chunk that started in the wrong place can fail in all sorts of ways, including tripping the "logic
+            // error" checks in DelimitedCellGrabber. So we capture RuntimeExceptions too.
+            chunk.error = e;
+        }
+        if (chunkBegin + text.length < end && grabber.bytesConsumed() == text.length
+                && (chunk.error != null || endOfInput.booleanValue())) {
+            // What looked like the end of the input (or an error there, such as an unterminated quote) is only the
+            // end of the text.
+            return null;
+        }
+        chunk.end = chunkBegin + grabber.bytesConsumed();
+        chunk.numPhysicalRows = grabber.physicalRowNum();
+        return chunk;
+    }
+
+    /** Read the half-open interval [{@code textBegin}, {@code textEnd}) of the file. */
+    private byte[] readText(final long textBegin, final long textEnd) throws CsvReaderException {
+        final byte[] text = new byte[(int) (textEnd - textBegin)];
+        final ByteBuffer bb = ByteBuffer.wrap(text);
+        try {
+            while (bb.hasRemaining()) {
+                if (channel.read(bb, textBegin + bb.position()) < 0) {
+                    throw new CsvReaderException("The file was truncated while it was being read");
+                }
+            }
+        } catch (IOException e) {
+            throw new CsvReaderException("Caught exception", e);
+        }
+        return text;
+    }
+
+    private static void rethrow(final Exception e) throws CsvReaderException {
+        if (e instanceof CsvReaderException) {
+            throw (CsvReaderException) e;
+        }
+        throw (RuntimeException) e;
+    }
+
+    /**
+     * The speculative start of a chunk: the first chunk starts at {@link #begin}; a chunk past the last one starts at
+     * {@link #end}; otherwise the chunk starts at the first known row start at or after its nominal start, if we have
+     * {@link #knownRowStarts}, or else just after the first line terminator at or after its nominal start.
+     */
+    private long speculativeStart(final long chunkIndex) throws CsvReaderException {
+        if (chunkIndex == 0) {
+            return begin;
+        }
+        if (chunkIndex >= numChunks) {
+            return end;
+        }
+        long position = begin + chunkIndex * chunkSize;
+        if (knownRowStarts != null) {
+            int index = Arrays.binarySearch(knownRowStarts, position);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < knownRowStarts.length ? Math.min(knownRowStarts[index], end) : end;
+        }
+        final ByteBuffer bb = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        boolean sawCarriageReturn = false;
+        try {
+            while (position < end) {
+                bb.clear();
+                final int bytesRead = channel.read(bb, position);
+                if (bytesRead <= 0) {
+                    break;
+                }
+                for (int ii = 0; ii < bytesRead; ++ii) {
+                    final byte ch = bb.get(ii);
+                    if (sawCarriageReturn) {
+                        // A \r ends the line, but if it is immediately followed by \n we want to skip that too.
+                        return ch == '\n' ? position + ii + 1 : position + ii;
+                    }
+                    if (ch == '\n') {
+                        return position + ii + 1;
+                    }
+                    sawCarriageReturn = ch == '\r';
+                }
+                position += bytesRead;
+            }
+        } catch (IOException e) {
+            throw new CsvReaderException("Caught exception", e);
+        }
+        return end;
+    }
+
+    /** The cells tokenized from one chunk of the input. */
+    private static final class Chunk {
+        private static final int LAST_IN_ROW = 1;
+        private static final int END_OF_INPUT = 2;
+        /** Set if the cell is in {@link #rewritten} rather than {@link #text}. */
+        private static final int REWRITTEN = 4;
+        private static final int ROW_SHIFT = 3;
+
+        /** The file offset where tokenization started. */
+        final long begin;
+        /** The file offset where tokenization was supposed to stop (at the end of the row containing this offset). */
+        final long target;
+        /** The file offset one past the last byte consumed. */
+        long end;
+        /**
+         * The input from {@link #begin} on. Most cells are slices of this. Null if the worker gave up on the chunk
+         * without tokenizing it (see {@link #tokenizeChunk}).
+         */
+        final byte[] text;
+        /**
+         * The text of the cells that aren't slices of {@link #text}, concatenated. These are the cells that
+         * {@link DelimitedCellGrabber} had to rewrite, such as those with escaped quotes.
+         */
+        final GrowableByteBuffer rewritten;
+        /** The begin offset of each cell, in {@link #text} or {@link #rewritten}. */
+        int[] cellBegins;
+        /** The end offset of each cell, in {@link #text} or {@link #rewritten}. */
+        int[] cellEnds;
+        /** The flags of each cell, plus the (chunk-relative) physical row number after it, shifted by ROW_SHIFT. */
+        int[] cellInfos;
+        int numCells;
+        /** The number of physical rows consumed by this chunk. */
+        int numPhysicalRows;
+        /**
+         * If not null, the error that tokenization stopped with after the cells above. Either a
+         * {@link CsvReaderException} or a {@link RuntimeException}.
+         */
+        Exception error;
+
+        Chunk(final long begin, final long target, final byte[] text) {
+            this.begin = begin;
+            this.target = target;
+            this.text = text;
+            this.rewritten = new GrowableByteBuffer();
+            this.cellBegins = new int[16];
+            this.cellEnds = new int[16];
+            this.cellInfos = new int[16];
+            this.numCells = 0;
+        }
+
+        void append(final ByteSlice slice, final boolean lastInRow, final boolean endOfInput,
+                final int physicalRowNum) {
+            if (numCells == cellEnds.length) {
+                cellBegins = Arrays.copyOf(cellBegins, numCells * 2);
+                cellEnds = Arrays.copyOf(cellEnds, numCells * 2);
+                cellInfos = Arrays.copyOf(cellInfos, numCells * 2);
+            }
+            int flags = (lastInRow ? LAST_IN_ROW : 0) | (endOfInput ? END_OF_INPUT : 0);
+            if (slice.data() == text) {
+                cellBegins[numCells] = slice.begin();
+                cellEnds[numCells] = slice.end();
+            } else {
+                cellBegins[numCells] = rewritten.size();
+                rewritten.append(slice.data(), slice.begin(), slice.size());
+                cellEnds[numCells] = rewritten.size();
+                flags |= REWRITTEN;
+            }
+            cellInfos[numCells] = (physicalRowNum << ROW_SHIFT) | flags;
+            ++numCells;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.deephaven.csv.reading.cells;
+
+/**
+ * Factory for the {@link ByteScanner} used by {@link DelimitedCellGrabber}. This is the Java 8 version of this class,
+ * which always provides the word-at-a-time scanner. The jar also contains a Java 17 version of this class (under
+ * META-INF/versions/17) which, when the {@code jdk.incubator.vector} module is present, can provide a scanner that
+ * uses the Vector API.
+ */
+final class VectorSupport {
+    /**
+     * Utility class. Do not instantiate.
+     */
+    private VectorSupport() {}
+
+    /**
+     * Whether {@link #makeScanner} can provide a Vector API scanner. Never, in this version of the class.
+     */
+    static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * Make a {@link ByteScanner} for the specified arguments.
+     *
+     * @param useVectorApi Whether the caller would like a Vector API scanner. Ignored in this version of the class.
+     */
+    static ByteScanner makeScanner(final boolean useVectorApi, final byte[] buffer, final byte b0, final byte b1,
+            final byte b2) {
+        return new ByteScanner(buffer, b0, b1, b2);
+    }
+}
@@ -0,0 +1,93 @@
+package io.deephaven.csv.reading.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@link InputStream} over a region of a file, read with positional reads of a {@link FileChannel}. Because these
+ * reads don't move the channel's position, the same channel can be read by other threads at the same time, as the
+ * workers of a {@link io.deephaven.csv.reading.cells.ParallelCellGrabber} do.
+ *
+ * <p>
+ * This class does not take ownership of the {@link FileChannel}.
+ */
+public final class FileRegionInputStream extends InputStream {
+    /** The channel we are reading from. */
+    private final FileChannel channel;
+    /** The (exclusive) end of the region of the file that this stream covers. */
+    private final long end;
+    /** The file offset of the next byte that will be returned by this stream. */
+    private long position;
+
+    /**
+     * Constructor. Covers the whole file.
+     *
+     * @param channel The channel to read. Not owned by this object.
+     */
+    public FileRegionInputStream(final FileChannel channel) throws IOException {
+        this(channel, 0, channel.size());
+    }
+
+    /**
+     * Constructor. Covers the half-open interval [{@code begin}, {@code end}) of the file.
+     *
+     * @param channel The channel to read. Not owned by this object.
+     * @param begin The file offset of the first byte to return.
+     * @param end The file offset one past the last byte to return.
+     */
+    public FileRegionInputStream(final FileChannel channel, final long begin, final long end) {
+        if (begin < 0 || begin > end) {
+            throw new IllegalArgumentException(String.format("Invalid region [%d, %d)", begin, end));
+        }
+        this.channel = channel;
+        this.end = end;
+        this.position = begin;
+    }
+
+    /** The file offset of the next byte that will be returned by this stream. */
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == end) {
+            return -1;
+        }
+        final int sizeToUse = (int) Math.min(len, end - position);
+        final int bytesRead = channel.read(ByteBuffer.wrap(b, off, sizeToUse), position);
+        if (bytesRead < 0) {
+            // The file has been truncated.
+            return -1;
+        }
+        position += bytesRead;
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(final long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        final long newPosition = Math.min(end, position + n);
+        final long skipped = newPosition - position;
+        position = newPosition;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+}
@@ -0,0 +1,485 @@
+package io.deephaven.csv.reading.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An {@link InputStream} that decompresses gzip (RFC 1952) input on a separate pipeline thread, so that inflation
+ * overlaps with the consumer's processing. Multi-member files (such as those produced by concatenating gzip files) are
+ * supported.
+ *
+ * <p>
+ * Members that carry their own compressed size, as BGZF blocks do via the "BC" extra subfield, can be located without
+ * inflating their predecessors. Such members are read whole by the pipeline thread and inflated concurrently on a
+ * caller-supplied executor; their output is still delivered in order. A member that no thread of the executor has got
+ * to by the time the consumer needs it is inflated by the consumer itself, so the executor may be small or busy with
+ * other work. Other members are inflated incrementally by the pipeline thread itself, because the end of an ordinary
+ * deflate stream can only be found by inflating it.
+ *
+ * <p>
+ * As with {@link java.util.zip.GZIPInputStream}, trailing bytes after the last member that do not begin a new member
+ * are ignored. This class takes ownership of the wrapped stream, which must not be read from by anyone else.
+ * {@link #close} closes it, which is also how a pipeline thread that is blocked reading it is made to stop, so
+ * {@link #close} doesn't have to wait for that read to finish.
+ */
+public final class ParallelGzipInputStream extends InputStream {
+    private static final int ID1 = 0x1f;
+    private static final int ID2 = 0x8b;
+    private static final int CM_DEFLATE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    /** The size of the fixed part of the member header. */
+    private static final int HEADER_SIZE = 10;
+    /** The size of the member trailer (CRC32 and ISIZE). */
+    private static final int TRAILER_SIZE = 8;
+    /** The size of the blocks of output produced when inflating incrementally. */
+    private static final int OUTPUT_BLOCK_SIZE = 1 << 16;
+    /** The size of the buffer used to read the compressed input. */
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
+    /** The most data a BGZF block may hold, compressed or not. */
+    private static final int MAX_BGZF_BLOCK_SIZE = 1 << 16;
+
+    /** The compressed input. Only the pipeline thread reads from it. */
+    private final InputStream inner;
+    /** Inflates self-delimiting members concurrently. Null to inflate them on the pipeline thread. */
+    private final Executor inflaters;
+    /**
+     * Decompressed blocks, in order, as tasks that are either done or yet to inflate a self-delimiting member. A task
+     * yielding null marks the end of the input.
+     */
+    private final BlockingQueue<RunnableFuture<byte[]>> blocks;
+    /** The pipeline thread, once it has started, so that {@link #close} can interrupt it. */
+    private volatile Thread thread;
+    /** Set by {@link #close}. Once the pipeline thread sees it, it doesn't touch the wrapped stream again. */
+    private volatile boolean closed;
+
+    /** Pipeline thread state: a buffer of compressed input, of which [inPos, inLimit) is unconsumed. */
+    private byte[] inBuf;
+    private int inPos;
+    private int inLimit;
+    /** The offset in the compressed input corresponding to the start of {@link #inBuf}. */
+    private long inBufStart;
+
+    /** Consumer state: the block we are currently reading, or null if we need a new one. */
+    private byte[] current;
+    /** The offset of the next unconsumed byte in {@link #current}. */
+    private int currentOffset;
+    /** Set once the consumer has reached the end of the input. */
+    private boolean endOfInput;
+
+    /**
+     * Constructor. Starts the pipeline thread.
+     *
+     * @param inner The compressed input. Owned by this object.
+     * @param numThreads The number of self-delimiting (e.g. BGZF) members to aim to inflate at once. If 1, all
+     *        inflation happens on the pipeline thread.
+     * @param inflaters Where to inflate self-delimiting members when {@code numThreads} is more than 1. Not owned by
+     *        this object.
+     * @param threadStarter Runs the body of the pipeline thread on a thread of its own. The thread is interrupted when
+     *        this object is closed.
+     */
+    public ParallelGzipInputStream(final InputStream inner, final int numThreads, final Executor inflaters,
+            final Executor threadStarter) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("numThreads must be positive, but is " + numThreads);
+        }
+        this.inner = inner;
+        this.inflaters = numThreads == 1 ? null : inflaters;
+        // Enough blocks in flight to keep all the inflaters busy, plus some slack.
+        this.blocks = new ArrayBlockingQueue<>(2 * numThreads + 2);
+        this.inBuf = new byte[INPUT_BUFFER_SIZE];
+        this.inPos = 0;
+        this.inLimit = 0;
+        this.inBufStart = 0;
+        this.current = null;
+        this.currentOffset = 0;
+        this.endOfInput = false;
+        this.closed = false;
+        threadStarter.execute(this::pipelineLoop);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureCurrent()) {
+            return -1;
+        }
+        return current[currentOffset++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureCurrent()) {
+            return -1;
+        }
+        final int sizeToUse = Math.min(len, current.length - currentOffset);
+        System.arraycopy(current, currentOffset, b, off, sizeToUse);
+        currentOffset += sizeToUse;
+        return sizeToUse;
+    }
+
+    /**
+     * Tells the pipeline thread to stop, cancels the inflation of any members still waiting for the executor, and
+     * closes the wrapped stream. Doesn't wait for the pipeline thread: if it is blocked reading the wrapped stream,
+     * closing the stream makes that read fail (or, for a stream that ignores this, the thread stops once the read
+     * returns). Either way the thread doesn't touch the stream again.
+     *
+     * @throws IOException If closing the wrapped stream fails.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        final Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+        }
+        RunnableFuture<byte[]> block;
+        while ((block = blocks.poll()) != null) {
+            block.cancel(false);
+        }
+        inner.close();
+    }
+
+    /**
+     * Make sure {@link #current} has at least one unconsumed byte, waiting for the pipeline if necessary.
+     *
+     * @return true if there is more data, false if we are at the end of the input.
+     */
+    private boolean ensureCurrent() throws IOException {
+        while (!endOfInput && (current == null || currentOffset == current.length)) {
+            try {
+                final RunnableFuture<byte[]> block = blocks.take();
+                // If the member is still waiting for a thread of the executor, inflate it here rather than wait too.
+                block.run();
+                current = block.get();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while waiting for decompressed input", e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                // Errors are rethrown as they are, as PrefetchingInputStream does.
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException("Caught exception decompressing input", cause);
+            }
+            currentOffset = 0;
+            if (current == null) {
+                endOfInput = true;
+            }
+        }
+        return !endOfInput;
+    }
+
+    /** The body of the pipeline thread. */
+    private void pipelineLoop() {
+        thread = Thread.currentThread();
+        try {
+            if (closed) {
+                // We were closed before we published our thread, so no one interrupted us.
+                return;
+            }
+            if (!fill(1)) {
+                throw new IOException("Input is empty; expected gzip data");
+            }
+            do {
+                processMember();
+            } while (atMemberStart());
+            blocks.put(completed(null));
+        } catch (InterruptedException e) {
+            // We have been closed. Just exit.
+        } catch (Throwable t) {
+            if (closed) {
+                // Nobody is listening any more.
+                return;
+            }
+            // Whatever went wrong (and even if it was an Error), the consumer must hear about it rather than wait
+            // forever.
+            try {
+                blocks.put(new Failed(t));
+            } catch (InterruptedException ie) {
+                // We have been closed. Just exit.
+            }
+        }
+    }
+
+    /**
+     * Read one member (header, compressed data, and trailer) and enqueue its decompressed output.
+     */
+    private void processMember() throws IOException, DataFormatException, InterruptedException {
+        final long memberStart = inBufStart + inPos;
+        requireBytes(HEADER_SIZE);
+        if ((inBuf[inPos] & 0xff) != ID1 || (inBuf[inPos + 1] & 0xff) != ID2) {
+            throw new IOException("Not in gzip format");
+        }
+        if (inBuf[inPos + 2] != CM_DEFLATE) {
+            throw new IOException("Unsupported gzip compression method " + inBuf[inPos + 2]);
+        }
+        final int flags = inBuf[inPos + 3];
+        inPos += HEADER_SIZE;
+        // In BGZF, the size of the whole member, minus 1.
+        int bsize = -1;
+        if ((flags & FEXTRA) != 0) {
+            requireBytes(2);
+            final int xlen = readUInt16(inPos);
+            inPos += 2;
+            requireBytes(xlen);
+            bsize = findBgzfBlockSize(inPos, xlen);
+            inPos += xlen;
+        }
+        if ((flags & FNAME) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FCOMMENT) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FHCRC) != 0) {
+            requireBytes(2);
+            inPos += 2;
+        }
+
+        if (bsize < 0) {
+            inflateIncrementally();
+            return;
+        }
+
+        // The member is self-delimiting. Grab the rest of it and inflate it independently.
+        final long headerSize = inBufStart + inPos - memberStart;
+        final int remaining = (int) (bsize + 1 - headerSize);
+        if (remaining < TRAILER_SIZE) {
+            throw new IOException("Invalid BGZF block size " + bsize);
+        }
+        requireBytes(remaining);
+        final byte[] member = new byte[remaining];
+        System.arraycopy(inBuf, inPos, member, 0, remaining);
+        inPos += remaining;
+        if (inflaters == null) {
+            blocks.put(completed(inflateWhole(member)));
+            return;
+        }
+        final FutureTask<byte[]> task = new FutureTask<>(() -> inflateWhole(member));
+        blocks.put(task);
+        try {
+            inflaters.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The consumer will inflate it when it gets to it.
+        }
+    }
+
+    /**
+     * Inflate a self-delimiting member consisting of raw deflate data followed by the trailer.
+     */
+    private static byte[] inflateWhole(final byte[] member) throws IOException, DataFormatException {
+        final int dataSize = member.length - TRAILER_SIZE;
+        final long expectedCrc = readUInt32(member, dataSize);
+        final long isize = readUInt32(member, dataSize + 4);
+        // Check this before we trust it with an allocation.
+        if (isize > MAX_BGZF_BLOCK_SIZE) {
+            throw new IOException("Invalid BGZF block: inflated size " + isize + " is larger than "
+                    + MAX_BGZF_BLOCK_SIZE);
+        }
+        final byte[] result = new byte[(int) isize];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, 0, dataSize);
+            int size = 0;
+            while (size < result.length && !inflater.finished()) {
+                final int n = inflater.inflate(result, size, result.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += n;
+            }
+            if (size != result.length || !inflater.finished() && !inflateIsFinished(inflater)) {
+                throw new IOException("Gzip member is corrupt: size does not match trailer");
+            }
+        } finally {
+            inflater.end();
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(result, 0, result.length);
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("Gzip member is corrupt: CRC does not match trailer");
+        }
+        return result;
+    }
+
+    /**
+     * When the output buffer is exactly the size of the decompressed data, the inflater may not have noticed the end
+     * of the deflate stream yet. Give it room for one more byte, which it should not use.
+     */
+    private static boolean inflateIsFinished(final Inflater inflater) throws DataFormatException {
+        final int extra = inflater.inflate(new byte[1]);
+        return extra == 0 && inflater.finished();
+    }
+
+    /**
+     * Inflate a member whose extent is not known in advance, enqueueing its output in blocks as it is produced. On
+     * return, the member (including its trailer) has been consumed.
+     */
+    private void inflateIncrementally() throws IOException, DataFormatException, InterruptedException {
+        final Inflater inflater = new Inflater(true);
+        final CRC32 crc = new CRC32();
+        long totalSize = 0;
+        try {
+            byte[] out = new byte[OUTPUT_BLOCK_SIZE];
+            int outSize = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (inPos == inLimit && !fill(1)) {
+                        throw new IOException("Unexpected end of gzip input");
+                    }
+                    inflater.setInput(inBuf, inPos, inLimit - inPos);
+                    // The inflater now owns these bytes; we find out how many it didn't use via getRemaining().
+                    inPos = inLimit;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Gzip data requires a preset dictionary");
+                }
+                outSize += inflater.inflate(out, outSize, out.length - outSize);
+                if (outSize == out.length) {
+                    crc.update(out, 0, outSize);
+                    totalSize += outSize;
+                    blocks.put(completed(out));
+                    out = new byte[OUTPUT_BLOCK_SIZE];
+                    outSize = 0;
+                }
+            }
+            if (outSize != 0) {
+                crc.update(out, 0, outSize);
+                totalSize += outSize;
+                final byte[] lastBlock = new byte[outSize];
+                System.arraycopy(out, 0, lastBlock, 0, outSize);
+                blocks.put(completed(lastBlock));
+            }
+            // Give back the bytes the inflater didn't consume.
+            inPos -= inflater.getRemaining();
+        } finally {
+            inflater.end();
+        }
+        requireBytes(TRAILER_SIZE);
+        final long expectedCrc = readUInt32(inBuf, inPos);
+        final long isize = readUInt32(inBuf, inPos + 4);
+        inPos += TRAILER_SIZE;
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("Gzip member is corrupt: CRC does not match trailer");
+        }
+        if ((totalSize & 0xffffffffL) != isize) {
+            throw new IOException("Gzip member is corrupt: size does not match trailer");
+        }
+    }
+
+    /**
+     * @return true if the input is positioned at the start of another member, false if at the end of the input (or at
+     *         trailing bytes that do not look like a member, which we ignore).
+     */
+    private boolean atMemberStart() throws IOException {
+        if (!fill(2)) {
+            return false;
+        }
+        return (inBuf[inPos] & 0xff) == ID1 && (inBuf[inPos + 1] & 0xff) == ID2;
+    }
+
+    /**
+     * Look for the BGZF "BC" subfield in the extra field at [offset, offset + xlen).
+     *
+     * @return The BSIZE value (the size of the whole member minus 1), or -1 if there is no such subfield.
+     */
+    private int findBgzfBlockSize(final int offset, final int xlen) {
+        int pos = offset;
+        final int end = offset + xlen;
+        while (pos + 4 <= end) {
+            final int slen = readUInt16(pos + 2);
+            if (inBuf[pos] == 'B' && inBuf[pos + 1] == 'C' && slen == 2 && pos + 6 <= end) {
+                return readUInt16(pos + 4);
+            }
+            pos += 4 + slen;
+        }
+        return -1;
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        while (true) {
+            requireBytes(1);
+            if (inBuf[inPos++] == 0) {
+                return;
+            }
+        }
+    }
+
+    /** Make sure there are at least {@code count} unconsumed bytes in the input buffer, or throw. */
+    private void requireBytes(final int count) throws IOException {
+        if (!fill(count)) {
+            throw new IOException("Unexpected end of gzip input");
+        }
+    }
+
+    /**
+     * Try to make sure there are at least {@code count} unconsumed bytes in the input buffer, compacting and growing
+     * it as necessary.
+     *
+     * @return true if successful, false if the input ended first.
+     */
+    private boolean fill(final int count) throws IOException {
+        if (inLimit - inPos >= count) {
+            return true;
+        }
+        if (inBuf.length - inPos < count) {
+            // Not enough room after inPos. Slide the unconsumed bytes down to the start, growing if necessary.
+            final byte[] newBuf = count > inBuf.length ? new byte[Math.max(count, 2 * inBuf.length)] : inBuf;
+            System.arraycopy(inBuf, inPos, newBuf, 0, inLimit - inPos);
+            inBufStart += inPos;
+            inLimit -= inPos;
+            inPos = 0;
+            inBuf = newBuf;
+        }
+        while (inLimit - inPos < count) {
+            final int bytesRead = inner.read(inBuf, inLimit, inBuf.length - inLimit);
+            if (closed) {
+                throw new IOException("Closed");
+            }
+            if (bytesRead < 0) {
+                return false;
+            }
+            inLimit += bytesRead;
+        }
+        return true;
+    }
+
+    /** A block that is already decompressed (or, if null, the end of the input). */
+    private static RunnableFuture<byte[]> completed(final byte[] block) {
+        final FutureTask<byte[]> task = new FutureTask<>(() -> block);
+        task.run();
+        return task;
+    }
+
+    /** A block standing for a failure of the pipeline, which the consumer rethrows. */
+    private static final class Failed extends FutureTask<byte[]> {
+        Failed(final Throwable failure) {
+            super(() -> null);
+            setException(failure);
+        }
+    }
+
+    private int readUInt16(final int offset) {
+        return (inBuf[offset] & 0xff) | ((inBuf[offset + 1] & 0xff) << 8);
+    }
+
+    private static long readUInt32(final byte[] buf, final int offset) {
+        return (buf[offset] & 0xffL) | ((buf[offset + 1] & 0xffL) << 8) | ((buf[offset + 2] & 0xffL) << 16)
+                | ((buf[offset + 3] & 0xffL) << 24);
+    }
+}
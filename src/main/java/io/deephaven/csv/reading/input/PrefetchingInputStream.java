@@ -0,0 +1,197 @@
+package io.deephaven.csv.reading.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link InputStream} that reads ahead of its consumer. A background thread reads from the wrapped stream into a
+ * ring of buffers while the consumer works on the buffers previously filled, so that I/O latency (e.g. from a network
+ * filesystem or a decompressing stream) overlaps with the consumer's processing rather than stalling it.
+ *
+ * <p>
+ * This class takes ownership of the wrapped stream, which must not be read from by anyone else. {@link #close} closes
+ * it, which is also how a background thread that is blocked reading it is made to stop, so {@link #close} doesn't have
+ * to wait for that read to finish.
+ */
+public final class PrefetchingInputStream extends InputStream {
+    /** The wrapped stream. Only the background thread reads from it. */
+    private final InputStream inner;
+    /** Buffers that are available to be filled by the background thread. */
+    private final BlockingQueue<byte[]> emptyBuffers;
+    /** Buffers that have been filled by the background thread, in order, followed by a terminal block. */
+    private final BlockingQueue<Block> filledBlocks;
+    /** The background thread, once it has started, so that {@link #close} can interrupt it. */
+    private volatile Thread thread;
+    /** Set by {@link #close}. Once the background thread sees it, it doesn't touch the wrapped stream again. */
+    private volatile boolean closed;
+    /** The block we are currently consuming, or null if we need a new one. */
+    private Block current;
+    /** The offset of the next unconsumed byte in {@link #current}. */
+    private int currentOffset;
+
+    /**
+     * Constructor. Starts the background thread.
+     *
+     * @param inner The stream to read ahead on. Owned by this object.
+     * @param numBuffers The number of buffers in the ring. Must be at least 2.
+     * @param bufferSize The size of each buffer.
+     * @param threadStarter Runs the body of the background thread on a thread of its own. The thread is interrupted
+     *        when this object is closed.
+     */
+    public PrefetchingInputStream(final InputStream inner, final int numBuffers, final int bufferSize,
+            final Executor threadStarter) {
+        if (numBuffers < 2) {
+            throw new IllegalArgumentException("numBuffers must be at least 2, but is " + numBuffers);
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive, but is " + bufferSize);
+        }
+        this.inner = inner;
+        this.emptyBuffers = new ArrayBlockingQueue<>(numBuffers);
+        // One extra slot for the terminal block.
+        this.filledBlocks = new ArrayBlockingQueue<>(numBuffers + 1);
+        for (int ii = 0; ii < numBuffers; ++ii) {
+            emptyBuffers.add(new byte[bufferSize]);
+        }
+        this.current = null;
+        this.currentOffset = 0;
+        this.closed = false;
+        threadStarter.execute(this::fillLoop);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureCurrent()) {
+            return -1;
+        }
+        return current.data[currentOffset++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureCurrent()) {
+            return -1;
+        }
+        final int sizeToUse = Math.min(len, current.size - currentOffset);
+        System.arraycopy(current.data, currentOffset, b, off, sizeToUse);
+        currentOffset += sizeToUse;
+        return sizeToUse;
+    }
+
+    /**
+     * Tells the background thread to stop, and closes the wrapped stream. Doesn't wait for the background thread: if it
+     * is blocked reading the wrapped stream, closing the stream makes that read fail (or, for a stream that ignores
+     * this, the thread stops once the read returns). Either way the thread doesn't touch the stream again.
+     *
+     * @throws IOException If closing the wrapped stream fails.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        final Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+        }
+        inner.close();
+    }
+
+    /**
+     * Make sure {@link #current} has at least one unconsumed byte, waiting for the background thread if necessary.
+     *
+     * @return true if there is more data, false if we are at the end of the input.
+     */
+    private boolean ensureCurrent() throws IOException {
+        while (current == null || currentOffset == current.size) {
+            if (current != null) {
+                if (current.isTerminal()) {
+                    return current.rethrow();
+                }
+                // Hand the buffer back to the background thread to be refilled.
+                emptyBuffers.add(current.data);
+            }
+            try {
+                current = filledBlocks.take();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while waiting for input", e);
+            }
+            currentOffset = 0;
+        }
+        return true;
+    }
+
+    /** The body of the background thread. */
+    private void fillLoop() {
+        thread = Thread.currentThread();
+        try {
+            // If we were closed before we published our thread, no one will interrupt us, so check for ourselves.
+            while (!closed) {
+                final byte[] buffer = emptyBuffers.take();
+                int size = 0;
+                int bytesRead = 0;
+                // Fill the buffer completely (or until end of input) so that the consumer gets large blocks.
+                while (size != buffer.length && (bytesRead = inner.read(buffer, size, buffer.length - size)) >= 0) {
+                    size += bytesRead;
+                    if (closed) {
+                        return;
+                    }
+                }
+                if (size != 0) {
+                    filledBlocks.put(new Block(buffer, size, null));
+                }
+                if (bytesRead < 0) {
+                    filledBlocks.put(new Block(null, 0, null));
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // We have been closed. Just exit.
+        } catch (Throwable t) {
+            if (closed) {
+                // Most likely the failure of a read that close() aborted, which no one is waiting to hear about.
+                return;
+            }
+            // Whatever went wrong (and even if it was unchecked), the consumer must hear about it rather than wait
+            // forever. There is always room for the terminal block.
+            filledBlocks.add(new Block(null, 0, t));
+        }
+    }
+
+    /**
+     * A filled buffer, or a terminal block (having null data) indicating end of input or an error.
+     */
+    private static final class Block {
+        final byte[] data;
+        final int size;
+        final Throwable error;
+
+        Block(final byte[] data, final int size, final Throwable error) {
+            this.data = data;
+            this.size = size;
+            this.error = error;
+        }
+
+        boolean isTerminal() {
+            return data == null;
+        }
+
+        /**
+         * For a terminal block: throw the error if there is one, otherwise return false (meaning end of input). Errors
+         * are rethrown as they are; anything else is reported as an {@link IOException}.
+         */
+        boolean rethrow() throws IOException {
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+            if (error != null) {
+                throw new IOException("Caught exception reading input", error);
+            }
+            return false;
+        }
+    }
+}
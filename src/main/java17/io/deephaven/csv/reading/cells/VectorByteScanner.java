@@ -0,0 +1,42 @@
+package io.deephaven.csv.reading.cells;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link ByteScanner} that uses the Vector API to test a whole vector's worth of bytes (typically 32 or 64) against
+ * the three interesting bytes at once, and returns the first match. This is a drop-in replacement for the superclass's
+ * search, one call at a time: it builds no bitmap of the structural characters to be reused across calls, and no mask
+ * of the quoted regions, so the scalar state machine in {@link DelimitedCellGrabber} still deals with every match. The
+ * tail of the range that does not fill a vector is handled by the word-at-a-time scanner in the superclass.
+ */
+final class VectorByteScanner extends ByteScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    VectorByteScanner(final byte[] buffer, final byte b0, final byte b1, final byte b2) {
+        super(buffer, b0, b1, b2);
+    }
+
+    /**
+     * Whether vectors on this platform are wider than the eight bytes that the superclass handles in a word.
+     */
+    static boolean isUseful() {
+        return SPECIES.length() > Long.BYTES;
+    }
+
+    @Override
+    int indexOfAny(final int begin, final int end) {
+        final int vectorLength = SPECIES.length();
+        int current = begin;
+        while (current + vectorLength <= end) {
+            final ByteVector v = ByteVector.fromArray(SPECIES, buffer, current);
+            final VectorMask<Byte> matches = v.eq(b0).or(v.eq(b1)).or(v.eq(b2));
+            if (matches.anyTrue()) {
+                return current + matches.firstTrue();
+            }
+            current += vectorLength;
+        }
+        return super.indexOfAny(current, end);
+    }
+}
@@ -0,0 +1,53 @@
+package io.deephaven.csv.reading.cells;
+
+import java.util.Optional;
+
+/**
+ * Factory for the {@link ByteScanner} used by {@link DelimitedCellGrabber}. This is the Java 17 version of this class,
+ * which provides a {@link VectorByteScanner} when requested, provided that the {@code jdk.incubator.vector} module
+ * has been added to the JVM (e.g. with {@code --add-modules jdk.incubator.vector}). Otherwise it falls back to the
+ * word-at-a-time scanner, like the Java 8 version of this class.
+ */
+final class VectorSupport {
+    private static final boolean AVAILABLE = probe();
+
+    /**
+     * Utility class. Do not instantiate.
+     */
+    private VectorSupport() {}
+
+    /**
+     * Whether {@link #makeScanner} can provide a {@link VectorByteScanner}: that is, whether the module is present and
+     * vectors on this platform are wide enough to be worth it.
+     */
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Make a {@link ByteScanner} for the specified arguments.
+     *
+     * @param useVectorApi Whether the caller would like a Vector API scanner.
+     */
+    static ByteScanner makeScanner(final boolean useVectorApi, final byte[] buffer, final byte b0, final byte b1,
+            final byte b2) {
+        if (useVectorApi && AVAILABLE) {
+            return new VectorByteScanner(buffer, b0, b1, b2);
+        }
+        return new ByteScanner(buffer, b0, b1, b2);
+    }
+
+    private static boolean probe() {
+        // Take care not to touch VectorByteScanner (and therefore the jdk.incubator.vector classes) unless the module
+        // is actually there.
+        final Optional<Module> module = ModuleLayer.boot().findModule("jdk.incubator.vector");
+        if (module.isEmpty()) {
+            return false;
+        }
+        try {
+            return VectorByteScanner.isUseful();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
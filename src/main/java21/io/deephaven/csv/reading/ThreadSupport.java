@@ -0,0 +1,43 @@
+package io.deephaven.csv.reading;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Factory for the threads that {@link CsvReader} runs a read on. This is the Java 21 version of this class, which
+ * provides virtual threads when requested, and otherwise platform threads, like the Java 8 version of this class.
+ */
+final class ThreadSupport {
+    /**
+     * Utility class. Do not instantiate.
+     */
+    private ThreadSupport() {}
+
+    /**
+     * Make a thread pool for a read.
+     *
+     * @param numThreads The number of tasks the read will run at once.
+     * @param useVirtualThreads Whether the caller would like virtual threads.
+     */
+    static ExecutorService newThreadPool(final int numThreads, final boolean useVirtualThreads) {
+        if (useVirtualThreads) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(numThreads);
+    }
+
+    /**
+     * Start a thread of its own for {@code task}.
+     *
+     * @param task The task to run.
+     * @param name The name of the thread.
+     * @param useVirtualThread Whether the caller would like a virtual thread.
+     */
+    static void startThread(final Runnable task, final String name, final boolean useVirtualThread) {
+        if (useVirtualThread) {
+            Thread.ofVirtual().name(name).start(task);
+            return;
+        }
+        new Thread(task, name).start();
+    }
+}
@@ -7,19 +7,26 @@ import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.list.array.TShortArrayList;
 import io.deephaven.csv.containers.ByteSlice;
+import io.deephaven.csv.densestorage.Block;
+import io.deephaven.csv.densestorage.DenseStorageAllocator;
 import io.deephaven.csv.densestorage.DenseStorageConstants;
+import io.deephaven.csv.parsers.ChunkPool;
 import io.deephaven.csv.parsers.DataType;
 import io.deephaven.csv.parsers.IteratorHolder;
 import io.deephaven.csv.parsers.Parser;
 import io.deephaven.csv.parsers.Parsers;
 import io.deephaven.csv.reading.CsvReader;
+import io.deephaven.csv.reading.CsvReaderSession;
+import io.deephaven.csv.reading.CsvRowIndex;
 import io.deephaven.csv.reading.cells.DelimitedCellGrabber;
+import io.deephaven.csv.reading.input.FileRegionInputStream;
 import io.deephaven.csv.sinks.Sink;
 import io.deephaven.csv.sinks.SinkFactory;
 import io.deephaven.csv.sinks.Source;
 import io.deephaven.csv.tokenization.RangeTests;
 import io.deephaven.csv.tokenization.Tokenizer;
 import io.deephaven.csv.util.CsvReaderException;
+import io.deephaven.csv.util.MutableObject;
 import io.deephaven.csv.util.Renderer;
 import org.apache.commons.io.input.ReaderInputStream;
 import org.assertj.core.api.Assertions;
@@ -33,13 +40,27 @@ import org.junit.jupiter.params.provider.ValueSource;
 import java.io.*;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -285,6 +306,19 @@ public class CsvReaderTest {
                 .hasMessage(lengthyMessage);
     }
 
+    @Test
+    public void validatesTokenizerAndReadAheadParameters() {
+        final String lengthyMessage = "CsvSpecs failed validation for the following reasons: "
+                + "tokenizerThreads is set to 0, but is required to be positive, "
+                + "tokenizerChunkSize is set to -1, but is required to be positive, "
+                + "readAheadBuffers is set to 1, but is required to be 0 (disabled) or at least 2, "
+                + "readAheadBufferSize is set to 0, but is required to be positive";
+        Assertions
+                .assertThatThrownBy(() -> CsvSpecs.builder().tokenizerThreads(0).tokenizerChunkSize(-1)
+                        .readAheadBuffers(1).readAheadBufferSize(0).build())
+                .hasMessage(lengthyMessage);
+    }
+
     @Test
     public void validatesHeaderRowConsistency() {
         final String lengthyMessage = "CsvSpecs failed validation for the following reasons: "
@@ -294,6 +328,17 @@ public class CsvReaderTest {
                 .hasMessage(lengthyMessage);
     }
 
+    @Test
+    public void validatesDenseStorageGeometry() {
+        final String lengthyMessage = "CsvSpecs failed validation for the following reasons: "
+                + "denseStorageMaxUnobservedBlocks is set to 0, but is required to be positive, "
+                + "denseStorageLargeThreshold (2048) is larger than denseStoragePackedBlockSize (1024)";
+        Assertions
+                .assertThatThrownBy(() -> CsvSpecs.builder().denseStoragePackedBlockSize(1024)
+                        .denseStorageLargeThreshold(2048).denseStorageMaxUnobservedBlocks(0).build())
+                .hasMessage(lengthyMessage);
+    }
+
     @Test
     public void countsAreCorrect() throws CsvReaderException {
         final String input = "" + "Values\n" + "1\n" + "\n" + "3\n";
@@ -675,6 +720,38 @@ public class CsvReaderTest {
         invokeTest(defaultCsvBuilder().skipRows(3).build(), SKIPPED_INPUT, expected);
     }
 
+    private static final String SKIPPED_TRICKY_INPUT = ""
+            + "Key,Text\n"
+            + "1,\"spans\ntwo lines\"\n"
+            + "2,   \"leading spaces, then quote\"\r\n"
+            + "3,mid\"cell\"quotes\r"
+            + "4,\"escaped \"\"\nquote\"\" across lines\",too,many,columns\n"
+            + "\n"
+            + "6,\"\"\n"
+            + "7,plain\n"
+            + "8,last\n";
+
+    /**
+     * Skipping rows must respect quoting and all the line terminator conventions, and it counts physical rows
+     * correctly for later error messages. Skipped rows are not validated, so the row with too many columns is fine.
+     */
+    @ParameterizedTest
+    @CsvSource({"5,6", "6,7", "7,8"})
+    public void skippedTrickyRows(int skipRows, int firstKey) throws CsvReaderException {
+        final CsvSpecs specs = defaultCsvBuilder().skipRows(skipRows).build();
+        final CsvReader.Result result = parse(specs, toInputStream(SKIPPED_TRICKY_INPUT));
+        Assertions.assertThat(result.numRows()).isEqualTo(9 - firstKey);
+        Assertions.assertThat(result.columns()[0].data()).isInstanceOf(int[].class);
+        Assertions.assertThat(((int[]) result.columns()[0].data())[0]).isEqualTo(firstKey);
+    }
+
+    @Test
+    public void skippedRowsKeepPhysicalRowNumbers() {
+        final String input = SKIPPED_TRICKY_INPUT + "9,too,many\n";
+        Assertions.assertThatThrownBy(() -> parse(defaultCsvBuilder().skipRows(6).build(), toInputStream(input)))
+                .hasRootCauseMessage("Row 12 has too many columns (expected 2)");
+    }
+
     private static final String SKIPPED_HEADER_ROW_INPUT = ""
             + "Abitrary,input,data\n"
             + "\n"
@@ -2233,6 +2310,615 @@ public class CsvReaderTest {
         invokeTest(specs, input, expected);
     }
 
+    /**
+     * Reading fixed-width input in parallel gives the same answer as reading it serially, for rows that are pure ASCII
+     * and rows that are not, under both counting conventions.
+     */
+    @ParameterizedTest
+    @CsvSource({"false,1", "false,7", "false,30", "true,1", "true,7", "true,30"})
+    public void parallelFixedWidthMatchesSerial(boolean utf32CountingConvention, int chunkSize)
+            throws CsvReaderException {
+        final String input =
+                ""
+                        + "Sym Type  Price\n"
+                        + "AB  Div   0.25\n"
+                        + "éé  Cpn   1.5\r\n"
+                        + "T   Div   0.15\r"
+                        + "😻  Cpn   9.75\n"
+                        + "🥰🧡Div   2.0\n"
+                        + "ZZ  Cpn   3\n";
+        final CsvSpecs.Builder builder =
+                defaultCsvBuilder().hasFixedWidthColumns(true).useUtf32CountingConvention(utf32CountingConvention);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+        assertSameColumns(expected,
+                parseFile(builder.tokenizerThreads(4).tokenizerChunkSize(chunkSize).build(), input));
+    }
+
+    /**
+     * Reads a multi-block input (see {@link #makeDenseStorageTestInput}) using allocators whose blocks are not backed
+     * by arrays. The results should match the default heap allocator, and every block should have been freed by the end
+     * of the read.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void denseStorageAllocatorsMatchHeap(boolean concurrent) throws CsvReaderException {
+        final String input = makeDenseStorageTestInput();
+
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+
+        final CountingAllocator counting = new CountingAllocator();
+        assertSameColumns(expected, parse(builder.denseStorageAllocator(counting).build(), toInputStream(input)));
+        Assertions.assertThat(counting.numAllocated.get()).isGreaterThan(0);
+        Assertions.assertThat(counting.numFreed.get()).isEqualTo(counting.numAllocated.get());
+
+        assertSameColumns(expected, parse(
+                builder.denseStorageAllocator(DenseStorageAllocator.offHeap(16 << 20)).build(), toInputStream(input)));
+
+        // A pool shared across reads hands the second read blocks that the first one used.
+        final CsvSpecs pooledSpecs =
+                builder.denseStorageAllocator(DenseStorageAllocator.pooledHeap(64 << 20)).build();
+        for (int ii = 0; ii != 2; ++ii) {
+            assertSameColumns(expected, parse(pooledSpecs, toInputStream(input)));
+        }
+    }
+
+    /**
+     * Reads with a memory budget far smaller than the input, so that the text held for the second pass of type
+     * inference must be spilled to disk and read back.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void denseStorageSpillsToDisk(boolean concurrent) throws CsvReaderException, IOException {
+        final String input = makeDenseStorageTestInput();
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent);
+        final CsvReader.Result expectedResult = parse(builder.build(), toInputStream(input));
+        final String expected = columnsOf(expectedResult);
+
+        final java.nio.file.Path spillDirectory = Files.createTempDirectory("spillTest");
+        try {
+            final CountingAllocator counting = new CountingAllocator();
+            final CsvSpecs specs = builder.denseStorageAllocator(counting)
+                    .denseStorageMemoryBudget(DenseStorageConstants.PACKED_QUEUE_SIZE)
+                    .spillDirectory(spillDirectory)
+                    .build();
+            final CsvReader.Result actualResult = assertSameColumns(expected, parse(specs, toInputStream(input)));
+            Assertions.assertThat(actualResult.denseStorageBytesSpilled()).isGreaterThan(0);
+            Assertions.assertThat(expectedResult.denseStorageBytesSpilled()).isEqualTo(0);
+            Assertions.assertThat(counting.numFreed.get()).isEqualTo(counting.numAllocated.get());
+            if (!concurrent) {
+                // All the tokenizing happens before any parsing, so without spilling, every block would be in
+                // memory at once.
+                Assertions.assertThat(counting.maxOutstanding).isLessThan(counting.numAllocated.get());
+                Assertions.assertThat(actualResult.peakDenseStorageBytes())
+                        .isLessThan(expectedResult.peakDenseStorageBytes());
+            }
+            // Spilling blocks that are backed by heap arrays works too.
+            final CsvReader.Result heapResult = assertSameColumns(expected,
+                    parse(builder.denseStorageAllocator(DenseStorageAllocator.heap()).build(), toInputStream(input)));
+            Assertions.assertThat(heapResult.denseStorageBytesSpilled()).isGreaterThan(0);
+            try (final Stream<java.nio.file.Path> leftovers = Files.list(spillDirectory)) {
+                Assertions.assertThat(leftovers.count()).isEqualTo(0);
+            }
+        } finally {
+            Files.delete(spillDirectory);
+        }
+    }
+
+    /**
+     * Reads concurrently with a small limit on the data in flight between the tokenizer and the parsers, so that the
+     * tokenizer frequently has to wait for the parsers.
+     */
+    @Test
+    public void denseStorageInFlightLimit() throws CsvReaderException {
+        final String input = makeDenseStorageTestInput();
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(true);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+        final CsvReader.Result result = assertSameColumns(expected,
+                parse(builder.denseStorageInFlightLimit(DenseStorageConstants.LARGE_THRESHOLD).build(),
+                        toInputStream(input)));
+        Assertions.assertThat(result.peakDenseStorageBytes()).isGreaterThan(0);
+    }
+
+    /**
+     * Reads with compression of retained text, and checks that it doesn't change the result. The "Mixed" column turns
+     * from single-digit ints to letters halfway through, so its first half is kept for a second pass while the char
+     * parser reads the second half. When the parsers keep up with the tokenizer, that first half is compressed while
+     * the read is still going, so less memory is needed. Compressed blocks can also be spilled.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void denseStorageCompression(boolean concurrent) throws CsvReaderException, IOException {
+        final int numRows = DenseStorageConstants.CONTROL_QUEUE_SIZE * 2 + 17;
+        final StringBuilder sb = new StringBuilder("Ints,Mixed\n");
+        for (int ii = 0; ii != numRows; ++ii) {
+            sb.append(ii).append(',').append(ii < numRows / 2 ? Integer.toString(ii % 10) : "x").append('\n');
+        }
+        final String input = sb.toString();
+        // Small blocks, so that the first half of the column fills many of them.
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent)
+                .denseStorageControlBlockSize(1024).denseStoragePackedBlockSize(4096).denseStorageLargeThreshold(1024);
+        final CsvReader.Result expectedResult = parse(builder.build(), toInputStream(input));
+        final String expected = columnsOf(expectedResult);
+
+        final CountingAllocator counting = new CountingAllocator();
+        final CsvReader.Result actualResult = assertSameColumns(expected, parse(
+                builder.compressRetainedDenseStorage(true).denseStorageAllocator(counting).build(),
+                toInputStream(input)));
+        Assertions.assertThat(counting.numFreed.get()).isEqualTo(counting.numAllocated.get());
+        if (concurrent) {
+            Assertions.assertThat(actualResult.peakDenseStorageBytes())
+                    .isLessThan(expectedResult.peakDenseStorageBytes());
+        }
+
+        final java.nio.file.Path spillDirectory = Files.createTempDirectory("spillTest");
+        try {
+            // A budget small enough that even the compressed text doesn't fit.
+            final CsvSpecs spillingSpecs = builder.denseStorageAllocator(DenseStorageAllocator.heap())
+                    .denseStorageMemoryBudget(16 * 1024)
+                    .spillDirectory(spillDirectory)
+                    .build();
+            final CsvReader.Result spillingResult =
+                    assertSameColumns(expected, parse(spillingSpecs, toInputStream(input)));
+            Assertions.assertThat(spillingResult.denseStorageBytesSpilled()).isGreaterThan(0);
+        } finally {
+            Files.delete(spillDirectory);
+        }
+    }
+
+    /**
+     * Reads with tiny blocks (so that there are many of them, and the large-cell path is taken often), and in adaptive
+     * mode, and checks that the geometry doesn't change the result.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void denseStorageGeometry(boolean concurrent) throws CsvReaderException {
+        final String input = makeDenseStorageTestInput();
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+
+        final CountingAllocator defaultCounting = new CountingAllocator();
+        assertSameColumns(expected,
+                parse(builder.denseStorageAllocator(defaultCounting).build(), toInputStream(input)));
+
+        final CountingAllocator tinyCounting = new CountingAllocator();
+        final CsvSpecs tinySpecs = builder.denseStorageAllocator(tinyCounting)
+                .denseStorageControlBlockSize(7)
+                .denseStoragePackedBlockSize(64)
+                .denseStorageLargeThreshold(16)
+                .denseStorageMaxUnobservedBlocks(1)
+                .build();
+        assertSameColumns(expected, parse(tinySpecs, toInputStream(input)));
+        Assertions.assertThat(tinyCounting.numAllocated.get()).isGreaterThan(defaultCounting.numAllocated.get() * 100);
+        Assertions.assertThat(tinyCounting.numFreed.get()).isEqualTo(tinyCounting.numAllocated.get());
+
+        final CsvSpecs adaptiveSpecs = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent)
+                .adaptiveDenseStorage(true).build();
+        assertSameColumns(expected, parse(adaptiveSpecs, toInputStream(input)));
+    }
+
+    /**
+     * In adaptive mode, a file with a thousand columns should need an order of magnitude less memory for its blocks
+     * than the default block sizes would give it.
+     */
+    @Test
+    public void adaptiveDenseStorageShrinksWideFiles() throws CsvReaderException {
+        final int numCols = 1000;
+        final StringBuilder sb = new StringBuilder();
+        for (int row = 0; row != 3; ++row) {
+            for (int col = 0; col != numCols; ++col) {
+                if (col != 0) {
+                    sb.append(',');
+                }
+                sb.append(row == 0 ? "C" + col : Integer.toString(row * col));
+            }
+            sb.append('\n');
+        }
+        final CsvSpecs specs = defaultCsvBuilder().parsers(Parsers.DEFAULT).adaptiveDenseStorage(true).build();
+        final CsvReader.Result result = parse(specs, toInputStream(sb.toString()));
+        Assertions.assertThat(result.numCols()).isEqualTo(numCols);
+        final long defaultBytes = (long) numCols
+                * (DenseStorageConstants.CONTROL_QUEUE_SIZE * Integer.BYTES + DenseStorageConstants.PACKED_QUEUE_SIZE);
+        Assertions.assertThat(result.peakDenseStorageBytes()).isGreaterThan(0);
+        Assertions.assertThat(result.peakDenseStorageBytes() * 10).isLessThan(defaultBytes);
+    }
+
+    /**
+     * Several reads at once on a shared executor with fewer threads than the files have columns, and with small limits
+     * on the data in flight, should neither deadlock nor change the results.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3})
+    public void sharedBoundedExecutor(int numThreads) throws Exception {
+        final String input = makeDenseStorageTestInput();
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(true);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(numThreads, task -> new Thread(task, "sharedBoundedExecutor"));
+        final ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            final CsvSpecs specs = builder.executor(executor)
+                    .denseStorageInFlightLimit(DenseStorageConstants.LARGE_THRESHOLD)
+                    .denseStorageMaxUnobservedBlocks(1)
+                    .build();
+            final ThreadRecordingSinkFactory sinkFactory = new ThreadRecordingSinkFactory(makeMySinkFactory());
+            final List<Future<CsvReader.Result>> results = new ArrayList<>();
+            for (int ii = 0; ii != 4; ++ii) {
+                results.add(callers.submit(() -> parse(specs, toInputStream(input), sinkFactory)));
+            }
+            for (final Future<CsvReader.Result> result : results) {
+                assertSameColumns(expected, result.get());
+            }
+            // The columns of all four reads were parsed on the executor's threads.
+            Assertions.assertThat(sinkFactory.threads).hasSizeLessThanOrEqualTo(numThreads)
+                    .allMatch(thread -> thread.getName().equals("sharedBoundedExecutor"));
+        } finally {
+            callers.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * On an executor with a single thread, shared by the tokenizer and all the columns of a wide file, the columns
+     * still read their text as it is written: a column gives up the thread once it has caught up, and the tokenizer
+     * parses the columns that are waiting for the thread rather than wait for them. So nothing is held for a column,
+     * and the memory the read needs stays bounded, however long the file. This holds both for a read on the caller's
+     * thread and for one started by {@link CsvReader#readAsync} on the executor's thread.
+     */
+    @Test
+    public void boundedExecutorKeepsColumnsDraining() throws Exception {
+        final int numCols = 64;
+        final int numRows = 40_000;
+        final StringBuilder sb = new StringBuilder();
+        for (int col = 0; col != numCols; ++col) {
+            sb.append(col == 0 ? "" : ",").append("Col").append(col);
+        }
+        sb.append('\n');
+        for (int row = 0; row != numRows; ++row) {
+            for (int col = 0; col != numCols; ++col) {
+                sb.append(col == 0 ? "" : ",").append(row + col);
+            }
+            sb.append('\n');
+        }
+        final String input = sb.toString();
+        // Small blocks, so that the blocks being written at any one time take up little memory. And a single parser, so
+        // that type inference keeps no text for a second pass.
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Collections.singletonList(Parsers.INT))
+                .concurrent(true).denseStorageControlBlockSize(1024).denseStoragePackedBlockSize(4096)
+                .denseStorageLargeThreshold(1024);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CsvSpecs specs = builder.executor(executor).denseStorageInFlightLimit(64 * 1024).build();
+            final CsvReader.Result onCaller = parse(specs, toInputStream(input));
+            final CsvReader.Result onExecutor =
+                    CsvReader.readAsync(specs, toInputStream(input), makeMySinkFactory()).get();
+            for (final CsvReader.Result result : Arrays.asList(onCaller, onExecutor)) {
+                assertSameColumns(expected, result);
+                Assertions.assertThat(result.peakDenseStorageBytes() * 4).isLessThan(input.length());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads a wide file on virtual threads (on JDK 21+; on earlier JDKs the option is ignored), with spilling and a
+     * limit on the data in flight so that the threads block on the governor and the spill file's locks as well as on
+     * the queues. The results should be the same as on platform threads, and the columns should have been parsed on
+     * virtual threads exactly when the JDK has them.
+     */
+    @Test
+    public void virtualThreads() throws CsvReaderException {
+        final int numCols = 500;
+        final StringBuilder sb = new StringBuilder();
+        for (int col = 0; col != numCols; ++col) {
+            sb.append(col == 0 ? "" : ",").append("Col").append(col);
+        }
+        sb.append('\n');
+        for (int row = 0; row != 50; ++row) {
+            for (int col = 0; col != numCols; ++col) {
+                sb.append(col == 0 ? "" : ",").append(col % 3 == 0 ? "x" + row : Integer.toString(row * col));
+            }
+            sb.append('\n');
+        }
+        final String input = sb.toString();
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(true);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+
+        final CsvSpecs specs = builder.virtualThreads(true)
+                .denseStorageMemoryBudget(64 * 1024)
+                .denseStorageInFlightLimit(DenseStorageConstants.LARGE_THRESHOLD)
+                .build();
+        final ThreadRecordingSinkFactory sinkFactory = new ThreadRecordingSinkFactory(makeMySinkFactory());
+        assertSameColumns(expected, parse(specs, toInputStream(input), sinkFactory));
+        Assertions.assertThat(sinkFactory.threads).isNotEmpty()
+                .allMatch(thread -> isVirtual(thread) == (javaVersion() >= 21));
+    }
+
+    /** The major version of the running JDK. */
+    private static int javaVersion() {
+        final String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+
+    /** Thread.isVirtual(), which the tests can't call directly because they are compiled for Java 8. */
+    private static boolean isVirtual(final Thread thread) {
+        try {
+            return (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (NoSuchMethodException e) {
+            return false;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads with the smallest parser chunks, so that type inference (widening numerics, falling back to char and
+     * String, and reparsing) keeps crossing chunk boundaries. The results should be the same as with full-size chunks.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void smallParserChunks(boolean concurrent) throws CsvReaderException {
+        final int numCols = 40;
+        final int numRows = 5000;
+        final StringBuilder sb = new StringBuilder();
+        for (int col = 0; col != numCols; ++col) {
+            sb.append(col == 0 ? "" : ",").append("Col").append(col);
+        }
+        sb.append('\n');
+        for (int row = 0; row != numRows; ++row) {
+            for (int col = 0; col != numCols; ++col) {
+                final String cell;
+                switch (col % 5) {
+                    case 0:
+                        cell = row == 3000 ? "1.5" : Long.toString(row < 1500 ? row % 100 : (long) row * row * col);
+                        break;
+                    case 1:
+                        cell = row == numRows - 1 ? "abc" : Integer.toString(row);
+                        break;
+                    case 2:
+                        cell = row == 2500 ? "two chars" : Character.toString((char) ('a' + row % 26));
+                        break;
+                    case 3:
+                        cell = row % 3 == 0 ? "" : Boolean.toString(row % 2 == 0);
+                        break;
+                    default:
+                        cell = row % 7 == 0 ? "" : Long.toString(Long.MAX_VALUE - row);
+                        break;
+                }
+                sb.append(col == 0 ? "" : ",").append(cell);
+            }
+            sb.append('\n');
+        }
+        final String input = sb.toString();
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+
+        // The chunks come back to a pool at the end of each column, so its contents show how large they were.
+        final ChunkPool fullChunks = new ChunkPool(Long.MAX_VALUE);
+        assertSameColumns(expected, parse(builder.parserChunkPool(fullChunks).build(), toInputStream(input)));
+        final ChunkPool smallChunks = new ChunkPool(Long.MAX_VALUE);
+        final CsvSpecs specs = builder.parserChunkPool(smallChunks).parserChunkMemoryBudget(1).build();
+        assertSameColumns(expected, parse(specs, toInputStream(input)));
+        Assertions.assertThat(smallChunks.cachedBytes()).isGreaterThan(0);
+        Assertions.assertThat(smallChunks.cachedBytes() * 10).isLessThan(fullChunks.cachedBytes());
+    }
+
+    /**
+     * Reads a file with a few wide columns and many narrow ones with fewer parser threads than columns, which the
+     * columns share, each giving up its thread whenever it has caught up with the tokenizer. The results should be the
+     * same as with a thread for every column, and only the parser threads should have written to the sinks.
+     */
+    @ParameterizedTest
+    @CsvSource({"1,5000", "3,5000", "3,10"})
+    public void parserThreads(int parserThreads, int numRows) throws CsvReaderException {
+        final int numCols = 30;
+        final StringBuilder sb = new StringBuilder();
+        for (int col = 0; col != numCols; ++col) {
+            sb.append(col == 0 ? "" : ",").append("Col").append(col);
+        }
+        sb.append('\n');
+        for (int row = 0; row != numRows; ++row) {
+            for (int col = 0; col != numCols; ++col) {
+                final String cell;
+                if (col % 10 == 7) {
+                    cell = "some rather wide text for row " + row + " of column " + col;
+                } else if (col % 10 == 2) {
+                    cell = row == numRows - 1 ? "1.5" : Integer.toString(row);
+                } else {
+                    cell = row % 5 == 0 ? "" : Boolean.toString((row + col) % 3 == 0);
+                }
+                sb.append(col == 0 ? "" : ",").append(cell);
+            }
+            sb.append('\n');
+        }
+        final String input = sb.toString();
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(true);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+
+        final CsvSpecs specs = builder.parserThreads(parserThreads)
+                .denseStorageInFlightLimit(DenseStorageConstants.LARGE_THRESHOLD)
+                .build();
+        final ThreadRecordingSinkFactory sinkFactory = new ThreadRecordingSinkFactory(makeMySinkFactory());
+        assertSameColumns(expected, parse(specs, toInputStream(input), sinkFactory));
+        Assertions.assertThat(sinkFactory.threads).isNotEmpty().hasSizeLessThanOrEqualTo(parserThreads);
+    }
+
+    /**
+     * Alternates reads of two different inputs through one session, so that each read works with threads, blocks and
+     * chunks (holding whatever the previous read left in them) from the one before. The results should be the same as
+     * without a session.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void readerSessionReusesResources(boolean concurrent) throws CsvReaderException {
+        final String[] inputs = {
+                makeDenseStorageTestInput(),
+                "Strings,Ints,Doubles,Chars\nhello,1,1.5,a\n,2,,b\nworld,,3.25,\n"
+        };
+        final CsvSpecs specs = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent).build();
+        final String[] expected = new String[inputs.length];
+        for (int ii = 0; ii != inputs.length; ++ii) {
+            expected[ii] = columnsOf(parse(specs, toInputStream(inputs[ii])));
+        }
+
+        try (final CsvReaderSession session = new CsvReaderSession()) {
+            for (int ii = 0; ii != 3 * inputs.length; ++ii) {
+                final String input = inputs[ii % inputs.length];
+                final CsvReader.Result result = session.read(specs, toInputStream(input), makeMySinkFactory());
+                assertSameColumns(expected[ii % inputs.length], result);
+                Assertions.assertThat(session.chunkPool().cachedBytes()).isGreaterThan(0);
+            }
+        }
+    }
+
+    /**
+     * Reads asynchronously through a session. The read (and, if concurrent, its tokenizer and parsers) should run on
+     * the session's worker threads rather than on threads of their own.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void readerSessionReadsAsync(boolean concurrent) throws Exception {
+        final String input = makeDenseStorageTestInput();
+        final CsvSpecs specs = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent).build();
+        final String expected = columnsOf(parse(specs, toInputStream(input)));
+
+        try (final CsvReaderSession session = new CsvReaderSession()) {
+            final ThreadRecordingSinkFactory sinkFactory = new ThreadRecordingSinkFactory(makeMySinkFactory());
+            assertSameColumns(expected, session.readAsync(specs, toInputStream(input), sinkFactory).get());
+            Assertions.assertThat(sinkFactory.threads).isNotEmpty()
+                    .allMatch(thread -> thread.getName().equals("CsvReaderSession-worker"));
+        }
+    }
+
+    /**
+     * Reads asynchronously with a progress listener. The result should be the same as that of a synchronous read, and
+     * the listener should have been told about the rows as they went by, and finally about all of the input.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void readAsyncReportsProgress(boolean concurrent) throws Exception {
+        final String header = "Col1,Col2\n";
+        final String body = "1,2.2\n";
+        final int numRows = 20_000;
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent);
+        final String expected = toColumnSet(parse(builder.build(), new RepeatingInputStream(header, body, numRows)),
+                null).toString();
+
+        final List<long[]> reports = Collections.synchronizedList(new ArrayList<>());
+        final CsvSpecs specs = builder.progressListener((bytes, rows) -> reports.add(new long[] {bytes, rows})).build();
+        assertSameColumns(expected, CsvReader.readAsync(specs, new RepeatingInputStream(header, body, numRows),
+                makeMySinkFactory()).get());
+        Assertions.assertThat(reports.size()).isGreaterThan(1);
+        for (int ii = 1; ii != reports.size(); ++ii) {
+            Assertions.assertThat(reports.get(ii)[1]).isGreaterThanOrEqualTo(reports.get(ii - 1)[1]);
+        }
+        final long[] last = reports.get(reports.size() - 1);
+        Assertions.assertThat(last[0]).isEqualTo((long) header.length() + (long) body.length() * numRows);
+        Assertions.assertThat(last[1]).isEqualTo((long) numRows);
+    }
+
+    /**
+     * Reads endless input with a timeout. The read should give up once the time is up.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @Timeout(value = 30)
+    public void readTimesOut(boolean concurrent) {
+        final CsvSpecs specs = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent)
+                .timeout(Duration.ofMillis(200))
+                .build();
+        Assertions.assertThatThrownBy(() -> CsvReader.read(specs,
+                new RepeatingInputStream("Col1,Col2\n", "1,2.2\n", Integer.MAX_VALUE), makeMySinkFactory()))
+                .isInstanceOf(CsvReaderException.class)
+                .hasMessageContaining("Read timed out")
+                .hasCauseInstanceOf(TimeoutException.class);
+    }
+
+    /**
+     * Cancels an asynchronous read of endless input once it is under way. The read's tasks should then finish, so
+     * that its executor can shut down.
+     */
+    @Test
+    @Timeout(value = 30)
+    public void cancelReadAsync() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CsvSpecs specs = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(true)
+                    .executor(executor)
+                    .progressListener((bytes, rows) -> started.countDown())
+                    .build();
+            final CompletableFuture<CsvReader.Result> future = CsvReader.readAsync(specs,
+                    new RepeatingInputStream("Col1,Col2\n", "1,2.2\n", Integer.MAX_VALUE), makeMySinkFactory());
+            started.await();
+            Assertions.assertThat(future.cancel(true)).isTrue();
+            executor.shutdown();
+            Assertions.assertThat(executor.awaitTermination(20, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads with dictionary encoding, with low-cardinality columns (which keep their dictionaries, one of them needing
+     * a second pass) alongside the usual test columns (which give them up), and with tiny blocks so that the
+     * dictionary entries straddle block boundaries. The String parser should decode each distinct value only once.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void denseStorageDictionaryEncoding(boolean concurrent) throws CsvReaderException {
+        final String[] categories = {"red", "green", "blue", "a considerably longer category name"};
+        final String denseInput = makeDenseStorageTestInput();
+        final StringBuilder sb = new StringBuilder("Category,SmallInts,");
+        final String[] lines = denseInput.split("\n");
+        sb.append(lines[0]).append('\n');
+        for (int ii = 1; ii != lines.length; ++ii) {
+            final boolean last = ii == lines.length - 1;
+            sb.append(categories[ii % categories.length]).append(',')
+                    .append(last ? "0.5" : Integer.toString(ii % 7)).append(',')
+                    .append(lines[ii]).append('\n');
+        }
+        final String input = sb.toString();
+        final CsvSpecs.Builder builder = defaultCsvBuilder().parsers(Parsers.DEFAULT).concurrent(concurrent);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(input)));
+
+        final CsvReader.Result result = assertSameColumns(expected,
+                parse(builder.dictionaryEncodeDenseStorage(true).build(), toInputStream(input)));
+        final String[] col = (String[]) result.columns()[0].data();
+        Assertions.assertThat(col[categories.length + 1] == col[1]).isTrue();
+
+        final CsvSpecs tinySpecs = builder.denseStorageControlBlockSize(7)
+                .denseStoragePackedBlockSize(64)
+                .denseStorageLargeThreshold(16)
+                .denseStorageMaxUnobservedBlocks(1)
+                .build();
+        assertSameColumns(expected, parse(tinySpecs, toInputStream(input)));
+    }
+
+    /**
+     * A multi-block input whose columns exercise the various ways a column can be parsed: one pass, two passes, numeric
+     * unification, all nulls, and large cells.
+     */
+    private static String makeDenseStorageTestInput() {
+        final int numRows = DenseStorageConstants.CONTROL_QUEUE_SIZE * 2 + 17;
+        final StringBuilder sb = new StringBuilder("Ints,Doubles,Strings,Nulls,Large\n");
+        final char[] largeCell = new char[DenseStorageConstants.LARGE_THRESHOLD];
+        Arrays.fill(largeCell, 'L');
+        for (int ii = 0; ii != numRows; ++ii) {
+            final boolean last = ii == numRows - 1;
+            sb.append(ii).append(',')
+                    .append(last ? "1.5" : Integer.toString(ii)).append(',')
+                    .append(last ? "hello" : Integer.toString(ii)).append(',')
+                    .append(',')
+                    .append(ii % 1000 == 0 ? new String(largeCell) : "x").append('\n');
+        }
+        return sb.toString();
+    }
+
     /**
      * Test all the parameters incompatible with delimited mode, all at the same time.
      */
@@ -2452,6 +3138,505 @@ public class CsvReaderTest {
         invokeTest(specs, input, expected);
     }
 
+    /**
+     * Reading from a {@link java.nio.file.Path} memory-maps the file and should produce the same results as reading
+     * from a stream.
+     */
+    @Test
+    public void readFromMappedFile() throws CsvReaderException {
+        final String input =
+                ""
+                        + "Values,Names\n"
+                        + "-3,\"hello, world\"\n"
+                        + "5,\"multi\nline\"\n"
+                        + "12,🥰😻\n";
+
+        final ColumnSet expected =
+                ColumnSet.of(
+                        Column.ofValues("Values", -3, 5, 12),
+                        Column.ofRefs("Names", "hello, world", "multi\nline", "🥰😻"));
+
+        assertSameColumns(expected.toString(), parseFile(defaultCsvBuilder().build(), input));
+    }
+
+    /**
+     * A {@link FileRegionInputStream} returns only the bytes of its region of the file, even when a cell (here one
+     * with a multibyte character and an escaped quote) runs right up to the end of the region.
+     */
+    @Test
+    public void fileRegionBoundaries() throws CsvReaderException, IOException {
+        final String prefix = "junk,before\n";
+        final String input =
+                ""
+                        + "Values,Names\n"
+                        + "1000000,\"say \"\"hi\"\"\"\n"
+                        + "2000000,🧡💓";
+        final String suffix = "3000000,after\n";
+
+        final ColumnSet expected =
+                ColumnSet.of(
+                        Column.ofValues("Values", 1000000, 2000000),
+                        Column.ofRefs("Names", "say \"hi\"", "🧡💓"));
+
+        final java.nio.file.Path path = Files.createTempFile("csvReaderTest", ".csv");
+        try {
+            Files.write(path, (prefix + input + suffix).getBytes(StandardCharsets.UTF_8));
+            final long begin = prefix.getBytes(StandardCharsets.UTF_8).length;
+            final long end = begin + input.getBytes(StandardCharsets.UTF_8).length;
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final InputStream stream = new FileRegionInputStream(channel, begin, end);
+                invokeTest(defaultCsvBuilder().build(), stream, expected, makeMySinkFactory(), null);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * The tokenizer skips over ordinary characters a word (or, with the Vector API, a vector) at a time. Make sure that
+     * delimiters, line terminators, and quotes are found at every possible position within a word or vector, including
+     * next to multibyte characters.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "0,false", "1,false", "2,false", "3,false", "4,false", "5,false", "6,false", "7,false", "8,false",
+            "9,false", "15,false", "16,false", "17,false",
+            "0,true", "1,true", "7,true", "8,true", "15,true", "16,true", "17,true", "31,true", "32,true", "33,true",
+            "63,true", "64,true", "65,true"})
+    public void delimitersAtEveryWordOffset(int padding, boolean vectorizedTokenizer) throws CsvReaderException {
+        final String pad = String.join("", Collections.nCopies(padding, "x"));
+        final String input =
+                ""
+                        + "A,B,C\n"
+                        + pad + ",é" + pad + ",\"" + pad + "\"\"" + pad + "\"\r\n"
+                        + pad + "1," + pad + "é,\"" + pad + "\r\n" + pad + "\"\r"
+                        + pad + "2,\"\"," + pad + "\n";
+
+        final ColumnSet expected =
+                ColumnSet.of(
+                        Column.ofRefs("A", pad, pad + "1", pad + "2"),
+                        Column.ofRefs("B", "é" + pad, pad + "é", ""),
+                        Column.ofRefs("C", pad + "\"" + pad, pad + "\r\n" + pad, pad));
+
+        final CsvSpecs specs = defaultCsvBuilder().parsers(Collections.singletonList(Parsers.STRING))
+                .nullValueLiterals(Collections.emptyList()).vectorizedTokenizer(vectorizedTokenizer).build();
+        invokeTest(specs, input, expected);
+    }
+
+    private static final String PARALLEL_TOKENIZER_INPUT =
+            ""
+                    + "Key,Text,Value\n"
+                    + "1,plain,1.5\n"
+                    + "2,\"quoted, with comma\",2.5\n"
+                    + "3,\"spans\nthree\r\nlines\",3.5\r\n"
+                    + "4,\"\"\"escaped\"\" quotes\",4.5\r"
+                    + "\n"
+                    + "5,\"a,\nb,\nc,\n\",5.5\n"
+                    + "6,   padded   ,6.5\n"
+                    + "7,\"\",7.5\n"
+                    + "8,\"🥰😻\n🧡💓\",8.5\n"
+                    + "9,last,9.5";
+
+    /**
+     * Tokenizing in parallel must give exactly the same answer as tokenizing serially, regardless of where the chunk
+     * boundaries fall. Tiny chunk sizes force boundaries inside quoted cells spanning lines, which exercises the
+     * re-tokenization of chunks whose speculative start was wrong.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 5, 8, 13, 21, 34, 1000})
+    public void parallelTokenizationMatchesSerial(int chunkSize) throws CsvReaderException {
+        final CsvSpecs serialSpecs = defaultCsvBuilder().build();
+        final CsvSpecs parallelSpecs = defaultCsvBuilder().tokenizerThreads(4).tokenizerChunkSize(chunkSize).build();
+        final String expected = columnsOf(parse(serialSpecs, toInputStream(PARALLEL_TOKENIZER_INPUT)));
+        assertSameColumns(expected, parseFile(parallelSpecs, PARALLEL_TOKENIZER_INPUT));
+    }
+
+    /**
+     * Parallel tokenization of rows much longer than the chunks, on an executor with a single thread. The workers read
+     * only a little past the end of their chunk, so the rows that straddle the chunk boundaries are left to the reader.
+     */
+    @Test
+    public void parallelTokenizationHandlesLongRowsOnExecutor() throws CsvReaderException {
+        final StringBuilder longCell = new StringBuilder();
+        for (int ii = 0; ii < 10_000; ++ii) {
+            longCell.append("line ").append(ii).append(ii % 10 == 0 ? "\"\"\n" : " ");
+        }
+        final StringBuilder input = new StringBuilder("A,B,C\n");
+        for (int ii = 0; ii < 20; ++ii) {
+            input.append(ii).append(",\"").append(longCell).append(ii).append("\",").append(ii * 0.5).append('\n');
+        }
+        final String expected = columnsOf(parse(defaultCsvBuilder().build(), toInputStream(input.toString())));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CsvSpecs specs = defaultCsvBuilder().concurrent(true).executor(executor).tokenizerThreads(4)
+                    .tokenizerChunkSize(1000).build();
+            assertSameColumns(expected, parseFile(specs, input.toString()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Parallel tokenization with skipRows, numRows, and no header row.
+     */
+    @Test
+    public void parallelTokenizationRespectsRowLimits() throws CsvReaderException {
+        final CsvSpecs.Builder builder =
+                defaultCsvBuilder().hasHeaderRow(false).skipRows(2).numRows(5).ignoreEmptyLines(true);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(PARALLEL_TOKENIZER_INPUT)));
+        assertSameColumns(expected,
+                parseFile(builder.tokenizerThreads(3).tokenizerChunkSize(7).build(), PARALLEL_TOKENIZER_INPUT));
+    }
+
+    /**
+     * Errors detected while tokenizing in parallel report the same (physical) row number as a serial read would.
+     */
+    @Test
+    public void parallelTokenizationReportsCorrectRow() {
+        final String input =
+                ""
+                        + "A,B\n"
+                        + "1,\"x\ny\"\n"
+                        + "2,\"x\ny\"\n"
+                        + "3,\"x\ny\"\n"
+                        + "4,z,extra\n"
+                        + "5,w\n";
+        Assertions.assertThatThrownBy(
+                () -> parseFile(defaultCsvBuilder().tokenizerThreads(4).tokenizerChunkSize(4).build(), input))
+                .hasRootCauseMessage("Row 8 has too many columns (expected 2)");
+    }
+
+    /**
+     * Reading ahead on a background thread, with small buffers so that cells straddle buffer boundaries. The caller's
+     * thread should never read the input itself.
+     */
+    @ParameterizedTest
+    @CsvSource({"2,1", "2,7", "3,5", "8,64", "4,1048576"})
+    public void readAhead(int numBuffers, int bufferSize) throws CsvReaderException {
+        final CsvSpecs specs =
+                defaultCsvBuilder().readAheadBuffers(numBuffers).readAheadBufferSize(bufferSize).build();
+        final String expected = columnsOf(parse(defaultCsvBuilder().build(), toInputStream(PARALLEL_TOKENIZER_INPUT)));
+        final Set<Thread> readingThreads = ConcurrentHashMap.newKeySet();
+        final InputStream input = new FilterInputStream(toInputStream(PARALLEL_TOKENIZER_INPUT)) {
+            @Override
+            public int read() throws IOException {
+                readingThreads.add(Thread.currentThread());
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                readingThreads.add(Thread.currentThread());
+                return super.read(b, off, len);
+            }
+        };
+        assertSameColumns(expected, parse(specs, input));
+        // The input was read on the read-ahead thread only.
+        Assertions.assertThat(readingThreads).isNotEmpty().doesNotContain(Thread.currentThread());
+    }
+
+    /**
+     * An I/O error encountered by the read-ahead thread is reported to the caller.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 2})
+    public void readAheadPropagatesErrors(int numBuffers) {
+        final InputStream failingStream = new SequenceInputStream(toInputStream("A,B\n1,2\n3,4\n"),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("synthetic error for testing: read failed");
+                    }
+                });
+        final CsvSpecs specs = defaultCsvBuilder().readAheadBuffers(numBuffers).readAheadBufferSize(4).build();
+        Assertions.assertThatThrownBy(() -> parse(specs, failingStream))
+                .hasRootCauseMessage("synthetic error for testing: read failed");
+    }
+
+    /**
+     * An unchecked exception thrown by the wrapped stream on the read-ahead thread is reported to the caller too,
+     * rather than leaving it waiting for input that will never come.
+     */
+    @Test
+    public void readAheadPropagatesUncheckedErrors() {
+        final InputStream failingStream = new SequenceInputStream(toInputStream("A,B\n1,2\n3,4\n"),
+                new InputStream() {
+                    @Override
+                    public int read() {
+                        throw new IllegalStateException("synthetic error for testing: read failed");
+                    }
+                });
+        final CsvSpecs specs = defaultCsvBuilder().readAheadBuffers(2).readAheadBufferSize(4).build();
+        Assertions.assertThatThrownBy(() -> parse(specs, failingStream))
+                .hasRootCauseMessage("synthetic error for testing: read failed");
+    }
+
+    /**
+     * Gzip-compressed input, as a single member, as several concatenated members, and as BGZF blocks (which can be
+     * inflated in parallel), both with and without the decompression pipeline.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "single,false,1", "single,true,1", "single,true,4",
+            "multi,false,1", "multi,true,1", "multi,true,4",
+            "bgzf,false,1", "bgzf,true,1", "bgzf,true,4"})
+    public void gzipInput(String format, boolean concurrent, int decompressionThreads)
+            throws CsvReaderException, IOException {
+        final byte[] data = PARALLEL_TOKENIZER_INPUT.getBytes(StandardCharsets.UTF_8);
+        final byte[] compressed;
+        switch (format) {
+            case "single":
+                compressed = gzip(data, 0, data.length);
+                break;
+            case "multi":
+                compressed = gzipMembers(data, 17, false);
+                break;
+            case "bgzf":
+                compressed = gzipMembers(data, 11, true);
+                break;
+            default:
+                throw new IllegalArgumentException(format);
+        }
+        final CsvSpecs specs = defaultCsvBuilder().gzipInput(true).concurrent(concurrent)
+                .decompressionThreads(decompressionThreads).build();
+        final String expected = columnsOf(parse(defaultCsvBuilder().build(), new ByteArrayInputStream(data)));
+        assertSameColumns(expected, parse(specs, new ByteArrayInputStream(compressed)));
+    }
+
+    /**
+     * A corrupted gzip member is reported as an error.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void gzipInputDetectsCorruption(int decompressionThreads) throws IOException {
+        final byte[] data = PARALLEL_TOKENIZER_INPUT.getBytes(StandardCharsets.UTF_8);
+        final byte[] compressed = gzipMembers(data, 11, true);
+        // Flip a bit in the CRC of the last member before the empty terminating block.
+        compressed[compressed.length - BGZF_EOF_BLOCK.length - 8] ^= 1;
+        final CsvSpecs specs = defaultCsvBuilder().gzipInput(true).decompressionThreads(decompressionThreads).build();
+        Assertions.assertThatThrownBy(() -> parse(specs, new ByteArrayInputStream(compressed)))
+                .hasRootCauseMessage("Gzip member is corrupt: CRC does not match trailer");
+    }
+
+    /**
+     * A BGZF member whose trailer claims more data than a BGZF block can hold is rejected before anything is allocated
+     * for it.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void gzipInputRejectsOversizedBgzfBlock(int decompressionThreads) throws IOException {
+        final byte[] data = PARALLEL_TOKENIZER_INPUT.getBytes(StandardCharsets.UTF_8);
+        final byte[] compressed = gzipMembers(data, 11, true);
+        // Set the ISIZE of the last member before the empty terminating block to 2^31 - 1.
+        final int isizeOffset = compressed.length - BGZF_EOF_BLOCK.length - 4;
+        compressed[isizeOffset] = (byte) 0xff;
+        compressed[isizeOffset + 1] = (byte) 0xff;
+        compressed[isizeOffset + 2] = (byte) 0xff;
+        compressed[isizeOffset + 3] = 0x7f;
+        final CsvSpecs specs = defaultCsvBuilder().gzipInput(true).decompressionThreads(decompressionThreads).build();
+        Assertions.assertThatThrownBy(() -> parse(specs, new ByteArrayInputStream(compressed)))
+                .hasRootCauseMessage("Invalid BGZF block: inflated size 2147483647 is larger than 65536");
+    }
+
+    /**
+     * With an executor, BGZF members are inflated on its threads, even when it has only one thread and the read itself
+     * is running on it.
+     */
+    @Test
+    public void gzipInputInflatesOnExecutor() throws Exception {
+        final byte[] data = PARALLEL_TOKENIZER_INPUT.getBytes(StandardCharsets.UTF_8);
+        final byte[] compressed = gzipMembers(data, 11, true);
+        final String expected = columnsOf(parse(defaultCsvBuilder().build(), new ByteArrayInputStream(data)));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CsvSpecs specs = defaultCsvBuilder().gzipInput(true).concurrent(true).decompressionThreads(4)
+                    .executor(executor).build();
+            assertSameColumns(expected, parse(specs, new ByteArrayInputStream(compressed)));
+            assertSameColumns(expected,
+                    CsvReader.readAsync(specs, new ByteArrayInputStream(compressed), makeMySinkFactory()).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] gzip(final byte[] data, final int offset, final int length) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final java.util.zip.GZIPOutputStream gzos = new java.util.zip.GZIPOutputStream(baos)) {
+            gzos.write(data, offset, length);
+        }
+        return baos.toByteArray();
+    }
+
+    /** The empty BGZF block that conventionally terminates a BGZF file. */
+    private static final byte[] BGZF_EOF_BLOCK = {
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0,
+            0, 0, 0};
+
+    /**
+     * Compress {@code data} as a sequence of gzip members of at most {@code memberSize} input bytes each. If
+     * {@code bgzf} is set, each member carries the BGZF "BC" extra subfield giving its size, and the sequence is
+     * terminated with the standard empty BGZF block.
+     */
+    private static byte[] gzipMembers(final byte[] data, final int memberSize, final boolean bgzf)
+            throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int offset = 0; offset < data.length; offset += memberSize) {
+            final int length = Math.min(memberSize, data.length - offset);
+            if (!bgzf) {
+                baos.write(gzip(data, offset, length));
+                continue;
+            }
+            final java.util.zip.Deflater deflater = new java.util.zip.Deflater(
+                    java.util.zip.Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            final byte[] deflated = new byte[length + 64];
+            final int deflatedSize = deflater.deflate(deflated);
+            deflater.end();
+            final java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+            crc.update(data, offset, length);
+            final int bsize = 18 + deflatedSize + 8 - 1;
+            baos.write(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                    (byte) bsize, (byte) (bsize >>> 8)});
+            baos.write(deflated, 0, deflatedSize);
+            writeIntLittleEndian(baos, (int) crc.getValue());
+            writeIntLittleEndian(baos, length);
+        }
+        if (bgzf) {
+            baos.write(BGZF_EOF_BLOCK);
+        }
+        return baos.toByteArray();
+    }
+
+    private static void writeIntLittleEndian(final OutputStream os, final int value) throws IOException {
+        os.write(value);
+        os.write(value >>> 8);
+        os.write(value >>> 16);
+        os.write(value >>> 24);
+    }
+
+    private static final String INCLUDED_COLUMNS_INPUT =
+            ""
+                    + "A,B,C,D\n"
+                    + "1,x,2.5,y\n"
+                    + "3,\"not, a\nnumber\",4.5,\n"
+                    + "5,w\n";
+
+    /**
+     * Only the selected columns are read, in file order, whether selected by name or by index. Unselected columns may
+     * contain anything, and short rows are not padded for them.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void includedColumns(int tokenizerThreads) throws CsvReaderException {
+        final CsvSpecs specs = defaultCsvBuilder().includedColumnNames(Collections.singletonList("C"))
+                .includedColumnIndices(Collections.singletonList(0)).putNullValueLiteralsForName("D",
+                        Collections.emptyList())
+                .tokenizerThreads(tokenizerThreads).tokenizerChunkSize(5).build();
+        final ColumnSet expected =
+                ColumnSet.of(
+                        Column.ofValues("A", 1, 3, 5),
+                        Column.ofValues("C", 2.5, 4.5, Sentinels.NULL_DOUBLE));
+        invokeTest(specs, INCLUDED_COLUMNS_INPUT, expected);
+        assertSameColumns(expected.toString(), parseFile(specs, INCLUDED_COLUMNS_INPUT));
+    }
+
+    /**
+     * The sinks for the selected columns are created with their original column index.
+     */
+    @Test
+    public void includedColumnsKeepOriginalIndex() throws CsvReaderException {
+        final CsvSpecs specs = defaultCsvBuilder().includedColumnIndices(Arrays.asList(3, 1)).build();
+        final CsvReader.Result result =
+                parse(specs, toInputStream(INCLUDED_COLUMNS_INPUT), makeBlackholeSinkFactory());
+        Assertions.assertThat(result.numCols()).isEqualTo(2);
+        Assertions.assertThat(result.columns()[0].name()).isEqualTo("B");
+        Assertions.assertThat(result.columns()[0].data()).isEqualTo(1);
+        Assertions.assertThat(result.columns()[1].name()).isEqualTo("D");
+        Assertions.assertThat(result.columns()[1].data()).isEqualTo(3);
+    }
+
+    @Test
+    public void includedColumnsMustExist() {
+        final CsvSpecs specs = defaultCsvBuilder().includedColumnNames(Arrays.asList("A", "E", "F"))
+                .includedColumnIndices(Collections.singletonList(4)).build();
+        Assertions.assertThatThrownBy(() -> parse(specs, toInputStream(INCLUDED_COLUMNS_INPUT)))
+                .hasMessage("Some included columns do not exist. Unknown names: E, F "
+                        + "Indices out of range (there are 4 columns): 4");
+        Assertions.assertThatThrownBy(
+                () -> CsvSpecs.builder().includedColumnIndices(Collections.singletonList(-1)).build())
+                .hasMessage("CsvSpecs failed validation for the following reasons: "
+                        + "Included column index -1 is invalid");
+    }
+
+    /**
+     * Reading with a row index (saved to and loaded from a sidecar file) gives the same answer as reading without one,
+     * for any window of rows, serially and in parallel.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "true,0,100,1,1", "true,3,2,1,1", "true,3,2,2,1", "true,4,3,3,4", "true,7,1,2,4", "true,9,5,1,4",
+            "true,20,5,2,1", "true,0,4,3,4", "false,0,3,1,1", "false,1,3,1,4", "false,5,2,2,1", "false,5,20,4,4"})
+    public void rowIndexSeeksToRows(boolean hasHeaderRow, long skipRows, long numRows, int rowsPerEntry,
+            int tokenizerThreads) throws CsvReaderException, IOException {
+        final CsvSpecs.Builder builder =
+                defaultCsvBuilder().hasHeaderRow(hasHeaderRow).skipRows(skipRows).numRows(numRows);
+        final String expected = columnsOf(parse(builder.build(), toInputStream(PARALLEL_TOKENIZER_INPUT)));
+        final CsvSpecs specs = builder.tokenizerThreads(tokenizerThreads).tokenizerChunkSize(5).build();
+        final java.nio.file.Path path = Files.createTempFile("csvReaderTest", ".csv");
+        final java.nio.file.Path sidecar = CsvRowIndex.sidecarPathFor(path);
+        try {
+            Files.write(path, PARALLEL_TOKENIZER_INPUT.getBytes(StandardCharsets.UTF_8));
+            CsvRowIndex.build(specs, path, rowsPerEntry).write(sidecar);
+            final CsvRowIndex rowIndex = CsvRowIndex.read(sidecar);
+            Assertions.assertThat(rowIndex.numRows()).isEqualTo(10);
+            assertSameColumns(expected, CsvReader.read(specs, path, rowIndex, makeMySinkFactory()));
+        } finally {
+            Files.deleteIfExists(sidecar);
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * After seeking, errors still report the physical row number within the whole file.
+     */
+    @Test
+    public void rowIndexReportsCorrectRow() throws CsvReaderException, IOException {
+        final String input =
+                ""
+                        + "A,B\n"
+                        + "1,\"x\ny\"\n"
+                        + "2,\"x\ny\"\n"
+                        + "3,\"x\ny\"\n"
+                        + "4,z,extra\n"
+                        + "5,w\n";
+        final CsvSpecs specs = defaultCsvBuilder().skipRows(2).build();
+        final java.nio.file.Path path = Files.createTempFile("csvReaderTest", ".csv");
+        try {
+            Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+            final CsvRowIndex rowIndex = CsvRowIndex.build(specs, path, 1);
+            Assertions.assertThatThrownBy(() -> CsvReader.read(specs, path, rowIndex, makeMySinkFactory()))
+                    .hasRootCauseMessage("Row 8 has too many columns (expected 2)");
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void rowIndexDetectsStaleFile() throws CsvReaderException, IOException {
+        final java.nio.file.Path path = Files.createTempFile("csvReaderTest", ".csv");
+        try {
+            Files.write(path, PARALLEL_TOKENIZER_INPUT.getBytes(StandardCharsets.UTF_8));
+            final CsvRowIndex rowIndex = CsvRowIndex.build(defaultCsvSpecs(), path, 2);
+            Files.write(path, "\n10,more,10.5".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            Assertions.assertThatThrownBy(() -> CsvReader.read(defaultCsvSpecs(), path, rowIndex,
+                    makeMySinkFactory()))
+                    .hasMessageContaining("Row index is stale");
+        } finally {
+            Files.delete(path);
+        }
+    }
+
     private static final class RepeatingInputStream extends InputStream {
         private byte[] data;
         private final byte[] body;
@@ -2793,6 +3978,104 @@ public class CsvReaderTest {
         return CsvReader.read(specs, inputStream, sinkFactory);
     }
 
+    /**
+     * Writes {@code input} to a temporary file and parses it via {@link CsvReader#read(CsvSpecs, java.nio.file.Path,
+     * SinkFactory)}.
+     */
+    private static CsvReader.Result parseFile(final CsvSpecs specs, final String input) throws CsvReaderException {
+        java.nio.file.Path path = null;
+        try {
+            path = Files.createTempFile("csvReaderTest", ".csv");
+            Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+            return CsvReader.read(specs, path, makeMySinkFactory());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (path != null) {
+                path.toFile().delete();
+            }
+        }
+    }
+
+    /** The columns of {@code result}, rendered as a string so that the results of two reads can be compared. */
+    private static String columnsOf(final CsvReader.Result result) {
+        return toColumnSet(result, null).toString();
+    }
+
+    /**
+     * Checks that {@code result} has the columns {@code expected} (as rendered by {@link #columnsOf}), and returns it
+     * so that the caller can go on to check what else the read did.
+     */
+    private static CsvReader.Result assertSameColumns(final String expected, final CsvReader.Result result) {
+        Assertions.assertThat(columnsOf(result)).isEqualTo(expected);
+        return result;
+    }
+
+    /**
+     * An allocator whose blocks hide their arrays (so the queues have to copy data in and out) and which counts how
+     * many blocks have been allocated and freed.
+     */
+    private static final class CountingAllocator implements DenseStorageAllocator {
+        final AtomicInteger numAllocated = new AtomicInteger();
+        final AtomicInteger numFreed = new AtomicInteger();
+        /** The most blocks that have been allocated but not yet freed at any one time. */
+        volatile int maxOutstanding = 0;
+
+        @Override
+        public Block<byte[]> allocateBytes(int capacity) {
+            return new CountingBlock<>(new byte[capacity], capacity);
+        }
+
+        @Override
+        public Block<int[]> allocateInts(int capacity) {
+            return new CountingBlock<>(new int[capacity], capacity);
+        }
+
+        @Override
+        public Block<byte[][]> allocateByteArrays(int capacity) {
+            return new CountingBlock<>(new byte[capacity][], capacity);
+        }
+
+        private final class CountingBlock<TARRAY> extends Block<TARRAY> {
+            private final TARRAY hidden;
+            private final int capacity;
+
+            CountingBlock(TARRAY hidden, int capacity) {
+                this.hidden = hidden;
+                this.capacity = capacity;
+                final int outstanding = numAllocated.incrementAndGet() - numFreed.get();
+                synchronized (CountingAllocator.this) {
+                    maxOutstanding = Math.max(maxOutstanding, outstanding);
+                }
+            }
+
+            @Override
+            public int capacity() {
+                return capacity;
+            }
+
+            @Override
+            public TARRAY array() {
+                return null;
+            }
+
+            @Override
+            public void put(int offset, TARRAY src, int srcOffset, int length) {
+                System.arraycopy(src, srcOffset, hidden, offset, length);
+            }
+
+            @Override
+            public void get(int offset, TARRAY dest, int destOffset, int length) {
+                System.arraycopy(hidden, offset, dest, destOffset, length);
+            }
+
+            @Override
+            protected void free() {
+                numFreed.incrementAndGet();
+            }
+        }
+    }
+
     /** Convert String to InputStream */
     private static InputStream toInputStream(final String input) {
         final StringReader reader = new StringReader(input);
@@ -2871,6 +4154,136 @@ public class CsvReaderTest {
                 Sentinels.NULL_TIMESTAMP_AS_LONG);
     }
 
+    /** A {@link SinkFactory} that records the threads that asked it for sinks. */
+    private static final class ThreadRecordingSinkFactory implements SinkFactory {
+        private final SinkFactory inner;
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        ThreadRecordingSinkFactory(final SinkFactory inner) {
+            this.inner = inner;
+        }
+
+        private void record() {
+            threads.add(Thread.currentThread());
+        }
+
+        @Override
+        public Sink<byte[]> forByte(int colNum, MutableObject<Source<byte[]>> source) {
+            record();
+            return inner.forByte(colNum, source);
+        }
+
+        @Override
+        public Byte reservedByte() {
+            return inner.reservedByte();
+        }
+
+        @Override
+        public Sink<short[]> forShort(int colNum, MutableObject<Source<short[]>> source) {
+            record();
+            return inner.forShort(colNum, source);
+        }
+
+        @Override
+        public Short reservedShort() {
+            return inner.reservedShort();
+        }
+
+        @Override
+        public Sink<int[]> forInt(int colNum, MutableObject<Source<int[]>> source) {
+            record();
+            return inner.forInt(colNum, source);
+        }
+
+        @Override
+        public Integer reservedInt() {
+            return inner.reservedInt();
+        }
+
+        @Override
+        public Sink<long[]> forLong(int colNum, MutableObject<Source<long[]>> source) {
+            record();
+            return inner.forLong(colNum, source);
+        }
+
+        @Override
+        public Long reservedLong() {
+            return inner.reservedLong();
+        }
+
+        @Override
+        public Sink<float[]> forFloat(int colNum) {
+            record();
+            return inner.forFloat(colNum);
+        }
+
+        @Override
+        public Float reservedFloat() {
+            return inner.reservedFloat();
+        }
+
+        @Override
+        public Sink<double[]> forDouble(int colNum) {
+            record();
+            return inner.forDouble(colNum);
+        }
+
+        @Override
+        public Double reservedDouble() {
+            return inner.reservedDouble();
+        }
+
+        @Override
+        public Sink<byte[]> forBooleanAsByte(int colNum) {
+            record();
+            return inner.forBooleanAsByte(colNum);
+        }
+
+        @Override
+        public Sink<char[]> forChar(int colNum) {
+            record();
+            return inner.forChar(colNum);
+        }
+
+        @Override
+        public Character reservedChar() {
+            return inner.reservedChar();
+        }
+
+        @Override
+        public Sink<String[]> forString(int colNum) {
+            record();
+            return inner.forString(colNum);
+        }
+
+        @Override
+        public String reservedString() {
+            return inner.reservedString();
+        }
+
+        @Override
+        public Sink<long[]> forDateTimeAsLong(int colNum) {
+            record();
+            return inner.forDateTimeAsLong(colNum);
+        }
+
+        @Override
+        public Long reservedDateTimeAsLong() {
+            return inner.reservedDateTimeAsLong();
+        }
+
+        @Override
+        public Sink<long[]> forTimestampAsLong(int colNum) {
+            record();
+            return inner.forTimestampAsLong(colNum);
+        }
+
+        @Override
+        public Long reservedTimestampAsLong() {
+            return inner.reservedTimestampAsLong();
+        }
+    }
+
     private static SinkFactory makeBlackholeSinkFactory() {
         return SinkFactory.of(
                 Blackhole::new,